@@ -115,6 +115,129 @@ declare module "opentok-react-native" {
     jsonArrayOfReports: string,
   }
 
+  interface PixelatedFaceProfile {
+    /**
+     * "fast" favors speed over accuracy. The default is "accurate".
+     */
+    performanceMode?: "fast" | "accurate";
+
+    /**
+     * The smallest face to detect, as a ratio of the head width to the image width. The default is 0.1.
+     */
+    minFaceSize?: number;
+
+    /**
+     * Whether to track faces across frames, which keeps the pixelated area on moving faces.
+     */
+    tracking?: boolean;
+  }
+
+  interface CaptureTierChangedEvent {
+    /**
+     * The capture tier now in use, from the full capture settings down: "high", "medium", "low" or "minimum".
+     */
+    tier: 'high' | 'medium' | 'low' | 'minimum';
+
+    previousTier: 'high' | 'medium' | 'low' | 'minimum';
+
+    /**
+     * Why the tier changed: "latency" or "droppedFrames" when the video filters can't keep up, "headroom" when they can again.
+     */
+    reason: 'latency' | 'droppedFrames' | 'headroom';
+
+    /**
+     * The resolution and frame rate asked of the camera. The camera uses the closest ones it supports.
+     */
+    width: number;
+    height: number;
+    frameRate: number;
+  }
+
+  interface VideoFilterStageStats {
+    /**
+     * Number of frames timed by the stage.
+     */
+    count: number;
+
+    /**
+     * Number of frames the stage dropped because a newer frame was waiting.
+     */
+    dropped: number;
+
+    /**
+     * Latencies in milliseconds: the last one, the largest one, and percentiles over the most recent frames.
+     */
+    last: number;
+    max: number;
+    p50: number;
+    p90: number;
+    p99: number;
+  }
+
+  interface VideoFilterStats {
+    /**
+     * Latencies keyed by stage name (capture, convert, detect, composite, faceOverlay, backgroundOverlay, gpuFilters,
+     * output and total). warmUp times filters being turned on to their first results, and transition a toggle to its
+     * crossfade being complete. firstFrame times the capture being started to its first frame.
+     */
+    stages: Record<string, VideoFilterStageStats>;
+
+    framePool: {
+      /**
+       * Per-frame buffers the filters reused, and the ones that had to be allocated because none was free.
+       */
+      hits: number;
+      misses: number;
+
+      /**
+       * Idle buffers dropped, because the frame size changed or the pool kept too many sizes.
+       */
+      evictions: number;
+    };
+  }
+
+  interface AudioDeviceStats {
+    capture: {
+      /**
+       * Rate the microphone is captured at, in Hz.
+       */
+      sampleRate: number;
+
+      /**
+       * Recorded chunks dropped because the audio engine fell behind.
+       */
+      overruns: number;
+
+      /**
+       * Microphone reads, and chunks handed to the audio engine, that took longer than the 10 ms capture cadence allows.
+       */
+      missedReads: number;
+      missedDeliveries: number;
+    };
+
+    render: {
+      sampleRate: number;
+      framesPerBuffer: number;
+
+      /**
+       * Whether playback got the low latency output, see the lowLatencyAudio session option.
+       */
+      lowLatency: boolean;
+
+      /**
+       * Times playback ran out of audio, on Android 7.0 and later.
+       */
+      underruns: number;
+    };
+
+    /**
+     * Durations in milliseconds, keyed by captureRead, captureWrite, captureQueue, captureJitter, captureDelay,
+     * renderRead, renderWrite, renderJitter and renderDelay. Jitter is how far apart consecutive reads or writes
+     * were off their cadence; delays are the estimates reported to the audio engine.
+     */
+    histograms: Record<string, VideoFilterStageStats>;
+  }
+
   interface SignalEvent {
     sessionId: string;
     connectionId: string;
@@ -212,6 +335,12 @@ declare module "opentok-react-native" {
      * Enable Stereo output
      */
     enableStereoOutput?: boolean;
+
+    /**
+     * Android only - default is false. With enableStereoOutput, plays audio through a low
+     * latency output on Android 8.0 and later.
+     */
+    lowLatencyAudio?: boolean;
     /**
      * Ice Config. Please check https://tokbox.com/developer/guides/configurable-turn-servers/
      */
@@ -257,6 +386,11 @@ declare module "opentok-react-native" {
      */
     muteForced?: CallbackWithParam<MuteForcedEvent, any>;
 
+    /**
+     * Android only. Sent every 5 seconds while connected with enableStereoOutput, with the timings and glitch counters of the audio driver.
+     */
+    audioDeviceStats?: CallbackWithParam<AudioDeviceStats>;
+
     /**
      * Sent if there is an error with the communication between the native session instance and the JS component.
      */
@@ -307,6 +441,12 @@ declare module "opentok-react-native" {
    * https://tokbox.com/developer/sdks/react-native/reference/OTSession.html
    */
   export class OTSession extends React.Component<OTSessionProps, unknown> {
+    /**
+     * Gets the timings and glitch counters of the audio driver used with enableStereoOutput.
+     * Android only; resolves to an empty object on other platforms or without enableStereoOutput.
+     */
+    getAudioDeviceStats: () => Promise<AudioDeviceStats | {}>;
+
     /**
      * Used to get capabilities of the client
      */
@@ -441,13 +581,33 @@ declare module "opentok-react-native" {
     backgroundBlur?: boolean;
 
     /**
-     * Whether to obscure faces on video.
+     * Whether to obscure faces on video. In Android, this can also be a face detector profile,
+     * which enables the filter with the given detector settings.
      */
-    pixelatedFace?: boolean;
+    pixelatedFace?: boolean | PixelatedFaceProfile;
+
+    /**
+     * Android only. The uri of an image that replaces the background, such as an http(s),
+     * content or file uri, or the uri of a bundled image from Image.resolveAssetSource. The
+     * background is blurred until the image is loaded. An empty string turns replacement off.
+     */
+    backgroundReplacement?: string;
+
+    /**
+     * Android only. Keeps the camera open and paused while the publisher doesn't capture, and for
+     * a short while after it is destroyed, so that the next publisher starts without reopening it.
+     * Read when the publisher is created.
+     */
+    cameraStandby?: boolean;
 
   }
 
   interface OTPublisherEventHandlers {
+    /**
+     * Android only. Sent when the capture resolution and frame rate are stepped down because the video filters can't keep up with the camera, or back up once they can.
+     */
+    captureTierChanged?: CallbackWithParam<CaptureTierChangedEvent>;
+
     /**
      * The audio level, from 0 to 1.0. Adjust this value logarithmically for use in adjusting a user interface element, such as a volume meter. Use a moving average to smooth the data.
      */
@@ -527,6 +687,13 @@ declare module "opentok-react-native" {
      */
     getRtcStatsReport: () => void;
 
+    /**
+     * Gets the per-stage latencies of the background blur and pixelated face filters, and how often
+     * their frame buffers were reused.
+     * Android only; resolves to an empty object on other platforms.
+     */
+    getVideoFilterStats: () => Promise<VideoFilterStats | {}>;
+
     /**
      * Sets video transformers for the publisher (or clears them if passed an empty array).
      */
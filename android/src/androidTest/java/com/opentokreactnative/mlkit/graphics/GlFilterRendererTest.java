@@ -0,0 +1,162 @@
+package com.opentokreactnative.mlkit.graphics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.opentokreactnative.mlkit.utils.FramePool;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the GPU filters with the CPU compositor. Runs on any GLES 2.0 implementation, the
+ * emulator's SwiftShader included, so it needs no GPU on the test machine.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GlFilterRendererTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    // Shaders run at mediump, so a pixelated block may round differently from the integer mean.
+    private static final int PIXELATION_TOLERANCE = 3;
+    // Both blurs are close to the same Gaussian, on a smooth frame they agree within a few steps.
+    private static final int BLUR_TOLERANCE = 6;
+
+    private Bitmap bitmap;
+    private VideoOverlay cpu;
+    private VideoOverlay gpu;
+
+    @Before
+    public void setUp() {
+        // Fails rather than letting the GPU overlay quietly fall back to the CPU.
+        new GlFilterRenderer().release();
+
+        cpu = new VideoOverlay(new FramePool(), new PipelineStats());
+        gpu = new VideoOverlay(new FramePool(), new PipelineStats());
+        cpu.setBackend(VideoOverlay.Backend.CPU);
+        gpu.setBackend(VideoOverlay.Backend.GPU);
+    }
+
+    @After
+    public void tearDown() {
+        gpu.release();
+        if (bitmap != null) {
+            bitmap.recycle();
+        }
+    }
+
+    @Test
+    public void pixelatedFacesMatchCpu() {
+        bitmap = checkerboard();
+        float[] mask = filledMask(1f);
+        List<Rect> faces = Arrays.asList(
+                new Rect(20, 30, 90, 110), new Rect(150, 40, 230, 130), new Rect(260, 150, 310, 230));
+
+        int[] expected = render(cpu, faces, mask);
+        int[] actual = render(gpu, faces, mask);
+
+        assertWithin(expected, actual, PIXELATION_TOLERANCE);
+        assertFalse("No face was pixelated", Arrays.equals(pixels(bitmap), actual));
+    }
+
+    @Test
+    public void moreFacesThanTheShaderTakesAreAllPixelated() {
+        bitmap = checkerboard();
+        float[] mask = filledMask(1f);
+        List<Rect> faces = new ArrayList<>();
+        for (int i = 0; i < GlFilterRenderer.MAX_FACES + 2; i++) {
+            int left = (i % 5) * 60 + 5;
+            int top = (i / 5) * 110 + 10;
+            faces.add(new Rect(left, top, left + 40, top + 50));
+        }
+
+        int[] expected = render(cpu, faces, mask);
+        int[] actual = render(gpu, faces, mask);
+
+        // The frame falls back to the CPU, so the last faces are pixelated just the same.
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void blurredBackgroundMatchesCpu() {
+        bitmap = gradient();
+        float[] mask = filledMask(0f);
+
+        int[] expected = render(cpu, null, mask);
+        int[] actual = render(gpu, null, mask);
+
+        assertWithin(expected, actual, BLUR_TOLERANCE);
+    }
+
+    private int[] render(VideoOverlay overlay, List<Rect> faces, float[] mask) {
+        overlay.setBitmap(bitmap);
+        overlay.setFaces(faces);
+        overlay.setSegmentationMask(mask, WIDTH / 2, HEIGHT / 2);
+        int[] frame = overlay.getFrame();
+        return Arrays.copyOf(frame, frame.length);
+    }
+
+    private static void assertWithin(int[] expected, int[] actual, int tolerance) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int difference = Math.abs(((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff));
+                if (difference > tolerance) {
+                    throw new AssertionError(String.format(
+                            "Pixel (%d, %d) channel %d: expected %08x, got %08x",
+                            i % WIDTH, i / WIDTH, shift / 8, expected[i], actual[i]));
+                }
+            }
+        }
+    }
+
+    private static float[] filledMask(float confidence) {
+        float[] mask = new float[(WIDTH / 2) * (HEIGHT / 2)];
+        Arrays.fill(mask, confidence);
+        return mask;
+    }
+
+    private static int[] pixels(Bitmap bitmap) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        bitmap.getPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        return pixels;
+    }
+
+    /** High contrast blocks, so a wrong block average or a missed face shows. */
+    private static Bitmap checkerboard() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean dark = ((x / 4) + (y / 4)) % 2 == 0;
+                pixels[y * WIDTH + x] = dark ? 0xff202040 : 0xffe0c0a0;
+            }
+        }
+        return Bitmap.createBitmap(pixels, WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    }
+
+    /** Smooth frame, which both blurs leave nearly as it is. */
+    private static Bitmap gradient() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int red = x * 255 / (WIDTH - 1);
+                int green = y * 255 / (HEIGHT - 1);
+                pixels[y * WIDTH + x] = 0xff000000 | (red << 16) | (green << 8) | 0x80;
+            }
+        }
+        return Bitmap.createBitmap(pixels, WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+    }
+}
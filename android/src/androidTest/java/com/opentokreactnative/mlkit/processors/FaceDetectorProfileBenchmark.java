@@ -0,0 +1,84 @@
+package com.opentokreactnative.mlkit.processors;
+
+import static org.junit.Assume.assumeTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Records the per-frame detection latency of each face detector profile on the device. Only runs
+ * when asked for, with {@code -Pandroid.testInstrumentationRunnerArguments.benchmark=true}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FaceDetectorProfileBenchmark {
+
+    private static final String TAG = "FaceDetectorBenchmark";
+    private static final int WARM_UP_FRAMES = 10;
+    private static final int FRAMES = 100;
+
+    private static final FaceDetectorProfile[] PROFILES = {
+            new FaceDetectorProfile(false, FaceDetectorProfile.DEFAULT_MIN_FACE_SIZE, false),
+            new FaceDetectorProfile(true, FaceDetectorProfile.DEFAULT_MIN_FACE_SIZE, false),
+            new FaceDetectorProfile(true, FaceDetectorProfile.DEFAULT_MIN_FACE_SIZE, true),
+            new FaceDetectorProfile(true, 0.25f, true),
+    };
+
+    @Test
+    public void detectionLatencyPerProfile() throws Exception {
+        assumeTrue(Boolean.parseBoolean(
+                InstrumentationRegistry.getArguments().getString("benchmark", "false")));
+
+        InputImage image = InputImage.fromBitmap(faceLikeFrame(640, 480), 0);
+        for (FaceDetectorProfile profile : PROFILES) {
+            FaceDetector detector = FaceDetection.getClient(profile.toOptions());
+            LatencyHistogram latency = new LatencyHistogram();
+            try {
+                for (int i = 0; i < WARM_UP_FRAMES; i++) {
+                    Tasks.await(detector.process(image));
+                }
+                for (int i = 0; i < FRAMES; i++) {
+                    long startNanos = SystemClock.elapsedRealtimeNanos();
+                    Tasks.await(detector.process(image));
+                    latency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+                }
+            } finally {
+                detector.close();
+            }
+            long[] percentiles = latency.getPercentilesMicros(50, 90, 99);
+            Log.i(TAG, profile + ": p50 " + percentiles[0] / 1000.0 + " ms, p90 "
+                    + percentiles[1] / 1000.0 + " ms, p99 " + percentiles[2] / 1000.0 + " ms");
+        }
+    }
+
+    /** A plain face sketch, enough to give the detector some work on every frame. */
+    private static Bitmap faceLikeFrame(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.rgb(90, 110, 140));
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(Color.rgb(230, 190, 160));
+        canvas.drawOval(new RectF(width * 0.35f, height * 0.2f, width * 0.65f, height * 0.8f), paint);
+        paint.setColor(Color.rgb(40, 30, 30));
+        canvas.drawCircle(width * 0.45f, height * 0.42f, width * 0.02f, paint);
+        canvas.drawCircle(width * 0.55f, height * 0.42f, width * 0.02f, paint);
+        canvas.drawRect(width * 0.45f, height * 0.62f, width * 0.55f, height * 0.64f, paint);
+        return bitmap;
+    }
+}
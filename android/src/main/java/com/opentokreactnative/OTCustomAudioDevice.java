@@ -1,5 +1,6 @@
 package com.opentokreactnative;
 
+import android.Manifest;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothHeadset;
@@ -8,9 +9,12 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.media.AudioAttributes;
 import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioRecord;
+import android.media.AudioTimestamp;
 import android.media.AudioTrack;
 import android.media.MediaRecorder.AudioSource;
 import android.media.audiofx.AcousticEchoCanceler;
@@ -21,12 +25,21 @@ import android.telephony.PhoneStateListener;
 import android.telephony.TelephonyManager;
 import android.util.Log;
 
+import androidx.annotation.RequiresApi;
+
 import com.opentok.android.BaseAudioDevice;
+import com.opentokreactnative.utils.AudioChunkRing;
+import com.opentokreactnative.utils.AudioDeviceStats;
+import com.opentokreactnative.utils.AudioLatencyRecorder;
 
 import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 class OTCustomAudioDriver extends BaseAudioDevice {
@@ -36,6 +49,8 @@ class OTCustomAudioDriver extends BaseAudioDevice {
     private static final int NUM_CHANNELS_RENDERING = 2;
     private static final int STEREO_CHANNELS = 2;
     private static final int DEFAULT_SAMPLE_RATE = 44100;
+    // Highest capture rate handed to the AudioBus.
+    private static final int MAX_CAPTURE_SAMPLE_RATE = 48000;
     private static final int SAMPLE_SIZE_IN_BYTES = 2;
     private static final int DEFAULT_SAMPLES_PER_BUFFER = (DEFAULT_SAMPLE_RATE / 1000) * 10; // 10ms
     private static final int DEFAULT_BUFFER_SIZE =
@@ -44,26 +59,52 @@ class OTCustomAudioDriver extends BaseAudioDevice {
     private static final int DEFAULT_START_RENDERER_AND_CAPTURER_DELAY = 5 * 1000;
     private static final int DEFAULT_BLUETOOTH_SCO_START_DELAY = 2000;
 
+    // Capture thread states, also used to index the capture counters.
+    static final int CAPTURE_STOPPED = 0;
+    static final int CAPTURE_RUNNING = 1;
+    static final int CAPTURE_SHUTDOWN = 2;
+    static final int CAPTURE_STATE_COUNT = 3;
+    // 80 ms of recorded audio can wait for the AudioBus before chunks get dropped.
+    private static final int CAPTURE_RING_CHUNKS = 8;
+    private static final long CAPTURE_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // A chunk is late once it took half a period more than expected.
+    private static final long CAPTURE_DEADLINE_NANOS = CAPTURE_PERIOD_NANOS * 3 / 2;
+    // The low latency track starts two output bursts deep and grows by a burst on each underrun,
+    // up to its capacity.
+    private static final int LOW_LATENCY_START_BURSTS = 2;
+    private static final int LOW_LATENCY_MAX_BURSTS = 8;
+
     private Context context;
 
     private AudioTrack audioTrack;
-    private AudioRecord audioRecord;
+    private volatile AudioRecord audioRecord;
 
     // Capture & render buffers
     private ByteBuffer playBuffer;
-    private ByteBuffer recBuffer;
+    // Only used before Android 5.0, which can't write a ByteBuffer to an AudioTrack.
     private byte[] tempBufPlay;
-    private byte[] tempBufRec;
 
     private final ReentrantLock rendererLock = new ReentrantLock(true);
     private final Condition renderEvent = rendererLock.newCondition();
     private volatile boolean isRendering = false;
     private volatile boolean shutdownRenderThread = false;
 
-    private final ReentrantLock captureLock = new ReentrantLock(true);
-    private final Condition captureEvent = captureLock.newCondition();
-    private volatile boolean isCapturing = false;
-    private volatile boolean shutdownCaptureThread = false;
+    // Recorded chunks go from the capture thread to the delivery thread through the ring, and
+    // neither thread takes a lock: they wait for state changes and chunks with park/unpark.
+    private final AtomicInteger captureState = new AtomicInteger(CAPTURE_SHUTDOWN);
+    private final AudioChunkRing captureRing;
+    // Where the capture thread reads a chunk the ring has no room for.
+    private final ByteBuffer droppedCaptureChunk;
+    private volatile Thread captureReadThread;
+    private volatile Thread captureDeliveryThread;
+
+    // Time callers spent moving the capturer into each state, and chunks read or delivered late
+    // in each state. Written by the capture threads and callers, read by the stats.
+    private final AtomicLongArray captureTransitions = new AtomicLongArray(CAPTURE_STATE_COUNT);
+    private final AtomicLongArray captureTransitionTotalNanos = new AtomicLongArray(CAPTURE_STATE_COUNT);
+    private final AtomicLongArray captureTransitionMaxNanos = new AtomicLongArray(CAPTURE_STATE_COUNT);
+    private final AtomicLongArray captureMissedReads = new AtomicLongArray(CAPTURE_STATE_COUNT);
+    private final AtomicLongArray captureMissedDeliveries = new AtomicLongArray(CAPTURE_STATE_COUNT);
 
     private AudioSettings captureSettings;
     private AudioSettings rendererSettings;
@@ -77,6 +118,27 @@ class OTCustomAudioDriver extends BaseAudioDevice {
     private int bufferedPlaySamples = 0;
     private int playPosition = 0;
     private int estimatedRenderDelay = 0;
+    // Frames handed to the track since it last started, and where the track says it is playing.
+    private long framesWritten = 0;
+    // Only on Android 4.4 and later.
+    private AudioTimestamp renderTimestamp;
+
+    // Low latency render path: a fast AudioTrack whose buffer is sized in output bursts.
+    private final boolean lowLatencyRender;
+    private boolean lowLatencyTrack = false;
+    private int lastUnderrunCount = 0;
+
+    // Telemetry. The audio threads keep their histograms rather than look them up.
+    private final AudioDeviceStats stats = new AudioDeviceStats();
+    private final AudioLatencyRecorder captureReadTimes = stats.histogram(AudioDeviceStats.CAPTURE_READ);
+    private final AudioLatencyRecorder captureWriteTimes = stats.histogram(AudioDeviceStats.CAPTURE_WRITE);
+    private final AudioLatencyRecorder captureQueueTimes = stats.histogram(AudioDeviceStats.CAPTURE_QUEUE);
+    private final AudioLatencyRecorder captureJitter = stats.histogram(AudioDeviceStats.CAPTURE_JITTER);
+    private final AudioLatencyRecorder captureDelays = stats.histogram(AudioDeviceStats.CAPTURE_DELAY);
+    private final AudioLatencyRecorder renderReadTimes = stats.histogram(AudioDeviceStats.RENDER_READ);
+    private final AudioLatencyRecorder renderWriteTimes = stats.histogram(AudioDeviceStats.RENDER_WRITE);
+    private final AudioLatencyRecorder renderJitter = stats.histogram(AudioDeviceStats.RENDER_JITTER);
+    private final AudioLatencyRecorder renderDelays = stats.histogram(AudioDeviceStats.RENDER_DELAY);
 
     private AudioManager audioManager;
     private AudioManagerMode audioManagerMode = new AudioManagerMode();
@@ -351,7 +413,7 @@ class OTCustomAudioDriver extends BaseAudioDevice {
             wasRendering = true;
         }
 
-        if (isCapturing) {
+        if (captureState.get() == CAPTURE_RUNNING) {
             stopCapturer();
             wasCapturing = true;
         }
@@ -416,14 +478,16 @@ class OTCustomAudioDriver extends BaseAudioDevice {
     }
 
     public OTCustomAudioDriver(Context context) {
-        this.context = context;
+        this(context, false);
+    }
 
-        try {
-            recBuffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
-        } catch (Exception e) {
-            Log.e(TAG, e.getMessage());
-        }
-        tempBufRec = new byte[DEFAULT_BUFFER_SIZE];
+    /**
+     * @param lowLatencyRender render through a low latency AudioTrack on Android 8.0 and later
+     */
+    public OTCustomAudioDriver(Context context, boolean lowLatencyRender) {
+        this.context = context;
+        this.lowLatencyRender = lowLatencyRender
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
 
         audioManager = (AudioManager)context.getSystemService(Context.AUDIO_SERVICE);
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
@@ -462,10 +526,23 @@ class OTCustomAudioDriver extends BaseAudioDevice {
             Log.e(TAG, e.getMessage());
         }
 
-        tempBufPlay = new byte[outputBufferSize];
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            tempBufPlay = new byte[outputBufferSize];
+        }
+
+        captureSamplingRate = findCaptureSampleRate();
+        // Each ring slot holds exactly one 10 ms chunk, read into it by AudioRecord.
+        int captureChunkSize = (captureSamplingRate / 100) * SAMPLE_SIZE_IN_BYTES * NUM_CHANNELS_CAPTURING;
+        captureRing = new AudioChunkRing(CAPTURE_RING_CHUNKS, captureChunkSize);
+        droppedCaptureChunk = ByteBuffer.allocateDirect(captureChunkSize);
 
         captureSettings = new AudioSettings(captureSamplingRate, NUM_CHANNELS_CAPTURING);
+        stats.setCaptureFormat(captureSamplingRate);
+        stats.setRenderFormat(outputSamplingRate, samplesPerBuffer, false);
         rendererSettings = new AudioSettings(outputSamplingRate, NUM_CHANNELS_RENDERING);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            renderTimestamp = new AudioTimestamp();
+        }
 
         try {
             telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
@@ -481,6 +558,57 @@ class OTCustomAudioDriver extends BaseAudioDevice {
 
     }
 
+    /**
+     * Returns the rate to capture at, which is reported to the AudioBus as is. Android doesn't
+     * expose the native input rate, but the primary input runs at the output rate on nearly every
+     * device, so that rate comes first: opening AudioRecord at any other rate makes the system
+     * resample, adding latency. Rates a probe record can't be opened at are skipped.
+     */
+    private int findCaptureSampleRate() {
+        int[] candidates = {outputSamplingRate, MAX_CAPTURE_SAMPLE_RATE, DEFAULT_SAMPLE_RATE};
+        int channelConfig = NUM_CHANNELS_CAPTURING == 1 ? AudioFormat.CHANNEL_IN_MONO : AudioFormat.CHANNEL_IN_STEREO;
+        // Without the permission every probe fails, so only the format can be checked.
+        boolean canProbe = context.checkPermission(Manifest.permission.RECORD_AUDIO,
+                android.os.Process.myPid(), android.os.Process.myUid())
+                == PackageManager.PERMISSION_GRANTED;
+        for (int rate : candidates) {
+            if (rate > MAX_CAPTURE_SAMPLE_RATE) {
+                continue;
+            }
+            if (canRecordAt(rate, channelConfig, canProbe)) {
+                return rate;
+            }
+        }
+        return DEFAULT_SAMPLE_RATE;
+    }
+
+    /**
+     * A positive minimum buffer size only says the format is valid, some devices still fail to
+     * open the record at that rate. So a probe record is opened and released right away.
+     */
+    private static boolean canRecordAt(int rate, int channelConfig, boolean probe) {
+        int minBufferSize = AudioRecord.getMinBufferSize(rate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferSize <= 0) {
+            return false;
+        }
+        if (!probe) {
+            return true;
+        }
+        AudioRecord record = null;
+        try {
+            record = new AudioRecord(AudioSource.VOICE_COMMUNICATION, rate, channelConfig,
+                    AudioFormat.ENCODING_PCM_16BIT, minBufferSize);
+            return record.getState() == AudioRecord.STATE_INITIALIZED;
+        } catch (Exception e) {
+            Log.w(TAG, "Audio capture can't be opened at " + rate + " Hz: " + e.getMessage());
+            return false;
+        } finally {
+            if (record != null) {
+                record.release();
+            }
+        }
+    }
+
     @Override
     public boolean initCapturer() {
         // get the minimum buffer size that can be used
@@ -504,6 +632,7 @@ class OTCustomAudioDriver extends BaseAudioDevice {
             echoCanceler = null;
         }
 
+        shutdownCaptureThreads();
         if (audioRecord != null) {
             audioRecord.release();
             audioRecord = null;
@@ -546,14 +675,19 @@ class OTCustomAudioDriver extends BaseAudioDevice {
 
         registerPhoneStateListener();
 
-        shutdownCaptureThread = false;
-        new Thread(captureThread).start();
+        captureState.set(CAPTURE_STOPPED);
+        captureReadThread = new Thread(captureThread, "OTAudioCapture");
+        captureDeliveryThread = new Thread(captureDelivery, "OTAudioCaptureDelivery");
+        captureReadThread.start();
+        captureDeliveryThread.start();
         return true;
     }
 
     @Override
     public boolean destroyCapturer() {
-        captureLock.lock();
+        long startNanos = System.nanoTime();
+        // The capture thread must be out of AudioRecord.read() before the record is released.
+        shutdownCaptureThreads();
 
         // release the object
         if (null != echoCanceler) {
@@ -568,10 +702,7 @@ class OTCustomAudioDriver extends BaseAudioDevice {
 
         audioRecord.release();
         audioRecord = null;
-        shutdownCaptureThread = true;
-        captureEvent.signal();
-
-        captureLock.unlock();
+        recordCaptureTransition(CAPTURE_SHUTDOWN, startNanos);
 
         unRegisterPhoneStateListener();
         wasCapturing = false;
@@ -588,6 +719,7 @@ class OTCustomAudioDriver extends BaseAudioDevice {
             throw new IllegalStateException("startCapturer(): startRecording() called on an "
                     + "uninitialized AudioRecord");
         }
+        long startNanos = System.nanoTime();
         try {
             audioRecord.startRecording();
 
@@ -595,10 +727,10 @@ class OTCustomAudioDriver extends BaseAudioDevice {
             throw new RuntimeException(e.getMessage());
         }
 
-        captureLock.lock();
-        isCapturing = true;
-        captureEvent.signal();
-        captureLock.unlock();
+        if (captureState.compareAndSet(CAPTURE_STOPPED, CAPTURE_RUNNING)) {
+            LockSupport.unpark(captureReadThread);
+        }
+        recordCaptureTransition(CAPTURE_RUNNING, startNanos);
         return true;
     }
 
@@ -608,7 +740,10 @@ class OTCustomAudioDriver extends BaseAudioDevice {
         if (audioRecord == null) {
             throw new IllegalStateException("stopCapturer(): stop() called on an uninitialized AudioRecord");
         }
-        captureLock.lock();
+        long startNanos = System.nanoTime();
+        // Flip the state first, so that the capture thread takes a read cut short by stop() for
+        // what it is rather than an error.
+        captureState.compareAndSet(CAPTURE_RUNNING, CAPTURE_STOPPED);
         try {
             // Only stop if we are recording.
             if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
@@ -616,17 +751,115 @@ class OTCustomAudioDriver extends BaseAudioDevice {
             }
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage());
-        } finally {
-            // Ensure we always unlock
-            isCapturing = false;
-            captureLock.unlock();
         }
+        recordCaptureTransition(CAPTURE_STOPPED, startNanos);
         return true;
     }
 
+    private void shutdownCaptureThreads() {
+        captureState.set(CAPTURE_SHUTDOWN);
+        // A read blocked in AudioRecord.read() only returns once the record is stopped, and the
+        // record can't be released before it does.
+        AudioRecord record = audioRecord;
+        if (record != null && record.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+            try {
+                record.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "shutdownCaptureThreads(): " + e.getMessage());
+            }
+        }
+        joinCaptureThread(captureReadThread);
+        joinCaptureThread(captureDeliveryThread);
+        captureReadThread = null;
+        captureDeliveryThread = null;
+    }
+
+    private void joinCaptureThread(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                // The record must not be released under a running read, so keep waiting.
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void recordCaptureTransition(int state, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        captureTransitions.incrementAndGet(state);
+        captureTransitionTotalNanos.addAndGet(state, elapsed);
+        long max;
+        while (elapsed > (max = captureTransitionMaxNanos.get(state))
+                && !captureTransitionMaxNanos.compareAndSet(state, max, elapsed)) {
+            // Another caller recorded a transition meanwhile, compare with its time.
+        }
+    }
+
+    /** Number of times the capturer was moved into each state. */
+    long[] getCaptureTransitions() {
+        return toArray(captureTransitions);
+    }
+
+    /** Total time callers spent moving the capturer into each state. */
+    long[] getCaptureTransitionTotalNanos() {
+        return toArray(captureTransitionTotalNanos);
+    }
+
+    /** Longest time a caller spent moving the capturer into each state. */
+    long[] getCaptureTransitionMaxNanos() {
+        return toArray(captureTransitionMaxNanos);
+    }
+
+    /** Reads that returned later than the capture deadline, by the state they finished in. */
+    long[] getCaptureMissedReads() {
+        return toArray(captureMissedReads);
+    }
+
+    /** Chunks handed to the AudioBus later than the capture deadline, by capture state. */
+    long[] getCaptureMissedDeliveries() {
+        return toArray(captureMissedDeliveries);
+    }
+
+    /** Recorded chunks dropped because the AudioBus fell a whole ring behind. */
+    long getCaptureOverflows() {
+        return captureRing.getOverflows();
+    }
+
+    /** Returns the telemetry of both streams, with the capture counters brought up to date. */
+    AudioDeviceStats getStats() {
+        stats.setCaptureCounters(getCaptureOverflows(), sum(captureMissedReads),
+                sum(captureMissedDeliveries));
+        return stats;
+    }
+
+    private static long sum(AtomicLongArray counts) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    private static long[] toArray(AtomicLongArray counts) {
+        long[] array = new long[counts.length()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = counts.get(i);
+        }
+        return array;
+    }
+
     private Runnable captureThread = () -> {
         int samplesToRec = captureSamplingRate / 100;
-        int samplesRead;
+        int lengthInBytes = (samplesToRec << 1) * NUM_CHANNELS_CAPTURING;
 
         try {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
@@ -634,42 +867,87 @@ class OTCustomAudioDriver extends BaseAudioDevice {
             Log.e(TAG, "android.os.Process.setThreadPriority(): " + e.getMessage());
         }
 
-        while (!shutdownCaptureThread) {
-            captureLock.lock();
-            try {
-                if (!this.isCapturing) {
-                    captureEvent.await();
+        long lastReadNanos = 0;
+        int state;
+        while ((state = captureState.get()) != CAPTURE_SHUTDOWN) {
+            AudioRecord record = audioRecord;
+            if (state != CAPTURE_RUNNING || record == null) {
+                lastReadNanos = 0;
+                LockSupport.park(this);
+                continue;
+            }
+            ByteBuffer chunk = captureRing.claim();
+            if (chunk == null) {
+                // The AudioBus is a whole ring behind: the record is still drained, but this
+                // chunk is dropped.
+                chunk = droppedCaptureChunk;
+            }
+            long startNanos = System.nanoTime();
+            int readBytes = record.read(chunk, lengthInBytes);
+            long endNanos = System.nanoTime();
+            state = captureState.get();
+            if (endNanos - startNanos > CAPTURE_DEADLINE_NANOS) {
+                captureMissedReads.incrementAndGet(state);
+            }
+            captureReadTimes.record((endNanos - startNanos) / 1000);
+            if (lastReadNanos != 0) {
+                captureJitter.record(Math.abs(endNanos - lastReadNanos - CAPTURE_PERIOD_NANOS) / 1000);
+            }
+            lastReadNanos = endNanos;
+            if (readBytes < 0) {
+                if (state != CAPTURE_RUNNING) {
+                    // stop() or release() cut the read short.
                     continue;
-                } else {
-                    if (audioRecord == null) {
-                        continue;
-                    }
-                    int lengthInBytes = (samplesToRec << 1) * NUM_CHANNELS_CAPTURING;
-                    int readBytes = audioRecord.read(tempBufRec, 0, lengthInBytes);
-                    if (readBytes >= 0) {
-                        recBuffer.rewind();
-                        recBuffer.put(tempBufRec);
-                        samplesRead = (readBytes >> 1) / NUM_CHANNELS_CAPTURING;
-                    } else {
-                        switch (readBytes) {
-                            case AudioRecord.ERROR_BAD_VALUE:
-                                throw new RuntimeException("captureThread(): AudioRecord.ERROR_BAD_VALUE");
-                            case AudioRecord.ERROR_INVALID_OPERATION:
-                                throw new RuntimeException("captureThread(): AudioRecord.ERROR_INVALID_OPERATION");
-                            case AudioRecord.ERROR:
-                            default:
-                                throw new RuntimeException("captureThread(): AudioRecord.ERROR or default");
-                        }
-                    }
                 }
-            } catch (Exception e) {
-                throw new RuntimeException(e.getMessage());
-            } finally {
-                // Ensure we always unlock
-                captureLock.unlock();
+                switch (readBytes) {
+                    case AudioRecord.ERROR_BAD_VALUE:
+                        throw new RuntimeException("captureThread(): AudioRecord.ERROR_BAD_VALUE");
+                    case AudioRecord.ERROR_INVALID_OPERATION:
+                        throw new RuntimeException("captureThread(): AudioRecord.ERROR_INVALID_OPERATION");
+                    case AudioRecord.ERROR:
+                    default:
+                        throw new RuntimeException("captureThread(): AudioRecord.ERROR or default");
+                }
+            }
+            if (chunk == droppedCaptureChunk) {
+                captureQueueTimes.recordDrop();
+                continue;
+            }
+            captureRing.publish((readBytes >> 1) / NUM_CHANNELS_CAPTURING, endNanos);
+            LockSupport.unpark(captureDeliveryThread);
+        }
+    };
+
+    private Runnable captureDelivery = () -> {
+        try {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
+        } catch (Exception e) {
+            Log.e(TAG, "android.os.Process.setThreadPriority(): " + e.getMessage());
+        }
+
+        while (captureState.get() != CAPTURE_SHUTDOWN) {
+            ByteBuffer chunk = captureRing.peek();
+            if (chunk == null) {
+                // A chunk published after the peek leaves a permit, so this returns right away.
+                LockSupport.park(this);
+                continue;
             }
-            getAudioBus().writeCaptureData(recBuffer, samplesRead);
+            int samplesRead = captureRing.peekSamples();
+            long startNanos = System.nanoTime();
+            long queuedNanos = startNanos - captureRing.peekTimeNanos();
+            if (queuedNanos > CAPTURE_PERIOD_NANOS) {
+                captureMissedDeliveries.incrementAndGet(captureState.get());
+            }
+            captureQueueTimes.record(queuedNanos / 1000);
+            getAudioBus().writeCaptureData(chunk, samplesRead);
+            captureWriteTimes.record((System.nanoTime() - startNanos) / 1000);
             estimatedCaptureDelay = samplesRead * 1000 / captureSamplingRate;
+            captureDelays.record(estimatedCaptureDelay * 1000L);
+            captureRing.release();
+        }
+        // Chunks left over belong to a stopped session.
+        while (captureRing.peek() != null) {
+            captureRing.release();
         }
     };
 
@@ -711,14 +989,18 @@ class OTCustomAudioDriver extends BaseAudioDevice {
         try {
             int channelConfig = (NUM_CHANNELS_RENDERING == 1) ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
 
-            audioTrack = new AudioTrack(
-                    AudioManager.STREAM_VOICE_CALL,
-                    rendererSettings.getSampleRate(),
-                    channelConfig,
-                    AudioFormat.ENCODING_PCM_16BIT,
-                    minPlayBufSize >= 6000 ? minPlayBufSize : minPlayBufSize * 2,
-                    AudioTrack.MODE_STREAM
-            );
+            if (lowLatencyRender && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                audioTrack = createLowLatencyAudioTrack(channelConfig, minPlayBufSize);
+            } else {
+                audioTrack = new AudioTrack(
+                        AudioManager.STREAM_VOICE_CALL,
+                        rendererSettings.getSampleRate(),
+                        channelConfig,
+                        AudioFormat.ENCODING_PCM_16BIT,
+                        minPlayBufSize >= 6000 ? minPlayBufSize : minPlayBufSize * 2,
+                        AudioTrack.MODE_STREAM
+                );
+            }
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage());
         }
@@ -729,6 +1011,19 @@ class OTCustomAudioDriver extends BaseAudioDevice {
         }
 
         bufferedPlaySamples = 0;
+        framesWritten = 0;
+        lowLatencyTrack = lowLatencyRender
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && audioTrack.getPerformanceMode() == AudioTrack.PERFORMANCE_MODE_LOW_LATENCY;
+        if (lowLatencyTrack) {
+            audioTrack.setBufferSizeInFrames(samplesPerBuffer * LOW_LATENCY_START_BURSTS);
+        } else if (lowLatencyRender) {
+            Log.w(TAG, "initRenderer(): low latency output not granted, using a regular track");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            lastUnderrunCount = audioTrack.getUnderrunCount();
+        }
+        stats.setRenderFormat(outputSamplingRate, samplesPerBuffer, lowLatencyTrack);
 
         registerPhoneStateListener();
 
@@ -737,6 +1032,30 @@ class OTCustomAudioDriver extends BaseAudioDevice {
         return true;
     }
 
+    /**
+     * Builds a voice call track asking for the fast mixer path. Such a track only gets it at the
+     * native output rate, which is what the renderer runs at, and its capacity leaves room to
+     * grow the buffer by whole bursts on underruns.
+     */
+    @RequiresApi(Build.VERSION_CODES.O)
+    private AudioTrack createLowLatencyAudioTrack(int channelConfig, int minPlayBufSize) {
+        int burstBytes = SAMPLE_SIZE_IN_BYTES * samplesPerBuffer * NUM_CHANNELS_RENDERING;
+        return new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_VOICE_COMMUNICATION)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(rendererSettings.getSampleRate())
+                        .setChannelMask(channelConfig)
+                        .build())
+                .setBufferSizeInBytes(Math.max(minPlayBufSize, burstBytes * LOW_LATENCY_MAX_BURSTS))
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                .build();
+    }
+
     private void destroyAudioTrack() {
         rendererLock.lock();
         audioTrack.release();
@@ -818,6 +1137,8 @@ class OTCustomAudioDriver extends BaseAudioDevice {
 
             }
             audioTrack.flush();
+            // A flushed track starts again from frame 0.
+            framesWritten = 0;
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage());
         } finally {
@@ -833,6 +1154,8 @@ class OTCustomAudioDriver extends BaseAudioDevice {
 
     private Runnable renderThread = () -> {
         int samplesToPlay = samplesPerBuffer;
+        long periodNanos = samplesToPlay * 1_000_000_000L / outputSamplingRate;
+        long lastWriteNanos = 0;
         try {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
         } catch (Exception e) {
@@ -843,6 +1166,7 @@ class OTCustomAudioDriver extends BaseAudioDevice {
             rendererLock.lock();
             try {
                 if (!this.isRendering) {
+                    lastWriteNanos = 0;
                     renderEvent.await();
                     continue;
 
@@ -851,7 +1175,10 @@ class OTCustomAudioDriver extends BaseAudioDevice {
 
                     // Don't lock on audioBus calls
                     playBuffer.clear();
+                    long readNanos = System.nanoTime();
                     int samplesRead = getAudioBus().readRenderData(playBuffer, samplesToPlay);
+                    long writeNanos = System.nanoTime();
+                    renderReadTimes.record((writeNanos - readNanos) / 1000);
 
                     rendererLock.lock();
 
@@ -861,13 +1188,32 @@ class OTCustomAudioDriver extends BaseAudioDevice {
                     }
 
                     int bytesRead = (samplesRead << 1) * NUM_CHANNELS_RENDERING;
-                    playBuffer.get(tempBufPlay, 0, bytesRead);
-
-                    int bytesWritten = audioTrack.write(tempBufPlay, 0, bytesRead);
+                    int bytesWritten;
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                        bytesWritten = audioTrack.write(playBuffer, bytesRead, AudioTrack.WRITE_BLOCKING);
+                    } else {
+                        playBuffer.get(tempBufPlay, 0, bytesRead);
+                        bytesWritten = audioTrack.write(tempBufPlay, 0, bytesRead);
+                    }
+                    long endNanos = System.nanoTime();
+                    renderWriteTimes.record((endNanos - writeNanos) / 1000);
+                    if (lastWriteNanos != 0) {
+                        renderJitter.record(Math.abs(endNanos - lastWriteNanos - periodNanos) / 1000);
+                    }
+                    lastWriteNanos = endNanos;
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                        countUnderruns();
+                    }
 
                     if (bytesWritten > 0) {
+                        int samplesWritten = (bytesWritten >> 1) / NUM_CHANNELS_RENDERING;
+                        framesWritten += samplesWritten;
+
+                        // The buffered samples are counted even while timestamps are available,
+                        // so the fallback below is right as soon as they stop coming.
+
                         // increase by number of written samples
-                        bufferedPlaySamples += (bytesWritten >> 1) / NUM_CHANNELS_RENDERING;
+                        bufferedPlaySamples += samplesWritten;
 
                         // decrease by number of played samples
                         int pos = audioTrack.getPlaybackHeadPosition();
@@ -880,8 +1226,11 @@ class OTCustomAudioDriver extends BaseAudioDevice {
                         bufferedPlaySamples -= (pos - playPosition);
                         playPosition = pos;
 
-                        // we calculate the estimated delay based on the buffered samples
-                        estimatedRenderDelay = bufferedPlaySamples * 1000 / outputSamplingRate;
+                        if (!estimateRenderDelayFromTimestamp()) {
+                            // we calculate the estimated delay based on the buffered samples
+                            estimatedRenderDelay = bufferedPlaySamples * 1000 / outputSamplingRate;
+                        }
+                        renderDelays.record(estimatedRenderDelay * 1000L);
                     } else {
                         switch (bytesWritten) {
                             case AudioTrack.ERROR_BAD_VALUE:
@@ -903,6 +1252,45 @@ class OTCustomAudioDriver extends BaseAudioDevice {
         }
     };
 
+    /**
+     * Sets estimatedRenderDelay to the time the last written frame will take to reach the
+     * speaker, extrapolated from the frame the track last presented. Unlike counting buffered
+     * samples against the playback head, this follows the actual output clock and doesn't drift
+     * over long calls. Returns false while the track has no timestamp yet.
+     */
+    private boolean estimateRenderDelayFromTimestamp() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT
+                || !audioTrack.getTimestamp(renderTimestamp)) {
+            return false;
+        }
+        long elapsedNanos = System.nanoTime() - renderTimestamp.nanoTime;
+        long presentedFrames = renderTimestamp.framePosition
+                + elapsedNanos * outputSamplingRate / 1_000_000_000L;
+        long pendingFrames = Math.max(0, framesWritten - presentedFrames);
+        estimatedRenderDelay = (int) (pendingFrames * 1000 / outputSamplingRate);
+        return true;
+    }
+
+    /**
+     * Counts the underruns of the track since the last write, and lets a low latency track buffer
+     * one more burst after each of them, up to its capacity.
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    private void countUnderruns() {
+        int underruns = audioTrack.getUnderrunCount();
+        if (underruns <= lastUnderrunCount) {
+            return;
+        }
+        stats.addRenderUnderruns(underruns - lastUnderrunCount);
+        lastUnderrunCount = underruns;
+        if (lowLatencyTrack && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            int frames = audioTrack.getBufferSizeInFrames() + samplesPerBuffer;
+            if (frames <= audioTrack.getBufferCapacityInFrames()) {
+                audioTrack.setBufferSizeInFrames(frames);
+            }
+        }
+    }
+
     @Override
     public AudioSettings getCaptureSettings() {
         return this.captureSettings;
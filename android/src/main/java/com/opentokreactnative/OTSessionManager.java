@@ -5,6 +5,8 @@ package com.opentokreactnative;
  */
 
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
@@ -12,6 +14,7 @@ import android.widget.FrameLayout;
 import androidx.annotation.Nullable;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Dynamic;
 import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContext;
@@ -86,6 +89,10 @@ public class OTSessionManager extends ReactContextBaseJavaModule
     private final String sessionPreface = "session:";
     private final String publisherPreface = "publisher:";
     private final String subscriberPreface = "subscriber:";
+    // Audio device stats are pushed to connected sessions at most this often.
+    private static final long AUDIO_DEVICE_STATS_INTERVAL_MS = 5000;
+    private final Handler audioDeviceStatsHandler = new Handler(Looper.getMainLooper());
+    private OTCustomAudioDriver customAudioDriver;
     private Boolean logLevel = false;
     public OTRN sharedState;
 
@@ -103,9 +110,12 @@ public class OTSessionManager extends ReactContextBaseJavaModule
         final boolean connectionEventsSuppressed = sessionOptions.getBoolean("connectionEventsSuppressed");
         final boolean ipWhitelist = sessionOptions.getBoolean("ipWhitelist");
         final boolean enableStereoOutput = sessionOptions.getBoolean("enableStereoOutput");
+        final boolean lowLatencyAudio = sessionOptions.hasKey("lowLatencyAudio")
+                && sessionOptions.getBoolean("lowLatencyAudio");
         if (enableStereoOutput) {
-            OTCustomAudioDriver otCustomAudioDriver = new OTCustomAudioDriver(this.getReactApplicationContext());
+            OTCustomAudioDriver otCustomAudioDriver = new OTCustomAudioDriver(this.getReactApplicationContext(), lowLatencyAudio);
             AudioDeviceManager.setAudioDevice(otCustomAudioDriver);
+            customAudioDriver = otCustomAudioDriver;
         }
         final List<IceServer> iceServersList = Utils.sanitizeIceServer(sessionOptions.getArray("customServers"));
         final IncludeServers includeServers = Utils.sanitizeIncludeServer(sessionOptions.getString("includeServers"));
@@ -176,7 +186,12 @@ public class OTSessionManager extends ReactContextBaseJavaModule
         String videoSource = properties.getString("videoSource");
         Boolean scalableScreenshare = properties.getBoolean("scalableScreenshare");
         boolean blurBackground = properties.getBoolean("backgroundBlur");
-        boolean pixelatedFace = properties.getBoolean("pixelatedFace");
+        Dynamic pixelatedFace = properties.getDynamic("pixelatedFace");
+        String backgroundReplacement = properties.hasKey("backgroundReplacement")
+                ? properties.getString("backgroundReplacement")
+                : null;
+        boolean cameraStandby = properties.hasKey("cameraStandby")
+                && properties.getBoolean("cameraStandby");
 
         Publisher mPublisher = null;
         if (videoSource.equals("screen")) {
@@ -197,7 +212,15 @@ public class OTSessionManager extends ReactContextBaseJavaModule
         } else {
             CustomVideoCapturer capturer = new CustomVideoCapturer(getCurrentActivity());
             capturer.enableBackgroundBlur(blurBackground);
-            capturer.enablePixelatedFace(pixelatedFace);
+            capturer.setBackgroundReplacement(backgroundReplacement);
+            capturer.setCameraStandbyEnabled(cameraStandby);
+            capturer.setCaptureTierListener((previous, tier, reason) -> {
+                String event = publisherId + ":" + publisherPreface + "onCaptureTierChanged";
+                sendEventMap(this.getReactApplicationContext(), event,
+                        EventUtils.prepareCaptureTierMap(previous, tier, reason));
+            });
+            capturer.setFaceDetectorProfile(Utils.sanitizeFaceDetectorProfile(pixelatedFace));
+            capturer.enablePixelatedFace(Utils.isPixelatedFaceEnabled(pixelatedFace));
 
             mPublisher = new Publisher.Builder(this.getReactApplicationContext())
                     .audioTrack(audioTrack)
@@ -553,14 +576,63 @@ public class OTSessionManager extends ReactContextBaseJavaModule
     }
 
     @ReactMethod
-    public void pixelatedFace(String publisherId, boolean enable) {
+    public void backgroundReplacement(String publisherId, String uri) {
         ConcurrentHashMap<String, Publisher> publishers = sharedState.getPublishers();
         Publisher publisher = publishers.get(publisherId);
         if (publisher != null && publisher.getCapturer() != null && publisher.getCapturer() instanceof CustomVideoCapturer) {
-            ((CustomVideoCapturer) publisher.getCapturer()).enablePixelatedFace(enable);
+            ((CustomVideoCapturer) publisher.getCapturer()).setBackgroundReplacement(uri);
         }
     }
 
+    @ReactMethod
+    public void pixelatedFace(String publisherId, Dynamic pixelatedFace) {
+        ConcurrentHashMap<String, Publisher> publishers = sharedState.getPublishers();
+        Publisher publisher = publishers.get(publisherId);
+        if (publisher != null && publisher.getCapturer() != null && publisher.getCapturer() instanceof CustomVideoCapturer) {
+            CustomVideoCapturer capturer = (CustomVideoCapturer) publisher.getCapturer();
+            capturer.setFaceDetectorProfile(Utils.sanitizeFaceDetectorProfile(pixelatedFace));
+            capturer.enablePixelatedFace(Utils.isPixelatedFaceEnabled(pixelatedFace));
+        }
+    }
+
+    @ReactMethod
+    public void getVideoFilterStats(String publisherId, Promise promise) {
+        ConcurrentHashMap<String, Publisher> publishers = sharedState.getPublishers();
+        Publisher publisher = publishers.get(publisherId);
+        if (publisher != null && publisher.getCapturer() != null && publisher.getCapturer() instanceof CustomVideoCapturer) {
+            CustomVideoCapturer capturer = (CustomVideoCapturer) publisher.getCapturer();
+            promise.resolve(EventUtils.prepareVideoFilterStatsMap(
+                    capturer.getPipelineStats(), capturer.getFramePool()));
+        } else {
+            promise.resolve(Arguments.createMap());
+        }
+    }
+
+    @ReactMethod
+    public void getAudioDeviceStats(String sessionId, Promise promise) {
+        if (customAudioDriver != null) {
+            promise.resolve(EventUtils.prepareAudioDeviceStatsMap(customAudioDriver.getStats()));
+        } else {
+            promise.resolve(Arguments.createMap());
+        }
+    }
+
+    private final Runnable sendAudioDeviceStats = new Runnable() {
+        @Override
+        public void run() {
+            if (customAudioDriver == null) {
+                return;
+            }
+            for (String sessionId : sharedState.getSessions().keySet()) {
+                if (getConnectionStatus(sessionId) == 1) {
+                    WritableMap statsInfo = EventUtils.prepareAudioDeviceStatsMap(customAudioDriver.getStats());
+                    sendEventMap(getReactApplicationContext(), sessionId + ":" + sessionPreface + "onAudioDeviceStats", statsInfo);
+                }
+            }
+            audioDeviceStatsHandler.postDelayed(this, AUDIO_DEVICE_STATS_INTERVAL_MS);
+        }
+    };
+
     @ReactMethod
     public void setNativeEvents(ReadableArray events) {
         for (int i = 0; i < events.size(); i++) {
@@ -805,6 +877,9 @@ public class OTSessionManager extends ReactContextBaseJavaModule
         mSessions.remove(session.getSessionId());
         mSessionConnectCallbacks.remove(session.getSessionId());
         mSessionDisconnectCallbacks.remove(session.getSessionId());
+        if (mSessions.isEmpty()) {
+            audioDeviceStatsHandler.removeCallbacks(sendAudioDeviceStats);
+        }
         printLogs("onDisconnected: Disconnected from session: " + session.getSessionId());
     }
 
@@ -835,6 +910,10 @@ public class OTSessionManager extends ReactContextBaseJavaModule
         }
         WritableMap sessionInfo = EventUtils.prepareJSSessionMap(session);
         sendEventMap(this.getReactApplicationContext(), session.getSessionId() + ":" + sessionPreface + "onConnected", sessionInfo);
+        if (customAudioDriver != null) {
+            audioDeviceStatsHandler.removeCallbacks(sendAudioDeviceStats);
+            audioDeviceStatsHandler.postDelayed(sendAudioDeviceStats, AUDIO_DEVICE_STATS_INTERVAL_MS);
+        }
         printLogs("onConnected: Connected to session: "+session.getSessionId());
     }
 
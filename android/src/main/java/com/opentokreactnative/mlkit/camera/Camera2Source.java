@@ -0,0 +1,488 @@
+package com.opentokreactnative.mlkit.camera;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Range;
+import android.view.Surface;
+import android.view.WindowManager;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.RequiresPermission;
+
+import com.google.android.gms.common.images.Size;
+import com.opentokreactnative.mlkit.processors.base.ProcessorFrameListener;
+import com.opentokreactnative.mlkit.processors.base.VisionImageProcessor;
+import com.opentokreactnative.mlkit.processors.base.VisionProcessorBase;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Camera2 counterpart of {@link CameraSource}. Preview frames come from an ImageReader as
+ * YUV_420_888 images whose planes are direct ByteBuffers; they are handed to the frame processor
+ * or the frame listener as they are, without being flattened or copied to NV21 first.
+ */
+@RequiresApi(21)
+public class Camera2Source implements FrameSource {
+
+  private static final String TAG = "Camera2Source";
+
+  private static final int REQUESTED_FPS = 30;
+
+  /**
+   * The processor keeps up to one image per pipeline frame open, and the reader needs two more
+   * to keep acquiring the latest image while the pipeline is full.
+   */
+  private static final int MAX_IMAGES = VisionProcessorBase.PIPELINE_DEPTH + 2;
+
+  /**
+   * Size and fps range picked for a camera id and a requested preview, so that reopening a
+   * camera doesn't search its stream configurations again.
+   */
+  private static final Map<String, NegotiatedSettings> negotiatedSettings = new HashMap<>();
+
+  private final Activity activity;
+  private final CameraManager cameraManager;
+
+  private int facing = CameraSource.CAMERA_FACING_BACK;
+  private int requestedPreviewWidth = CameraSource.DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH;
+  private int requestedPreviewHeight = CameraSource.DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT;
+  private int requestedFps = REQUESTED_FPS;
+  private int rotationDegrees;
+  private Size previewSize;
+
+  private HandlerThread cameraThread;
+  private Handler cameraHandler;
+  private ImageReader imageReader;
+  private CameraDevice camera;
+  private CameraCaptureSession captureSession;
+
+  private final Object processorLock = new Object();
+  private VisionImageProcessor frameProcessor;
+  private ProcessorFrameListener frameListener;
+  private volatile ImageListener imageListener;
+  private volatile boolean paused = false;
+
+  /** Takes every image of the camera, along with the rotation that makes it upright. */
+  public interface ImageListener {
+    /** The listener owns the image and has to close it. */
+    void onImage(Image image, int rotationDegrees);
+  }
+
+  public Camera2Source(Activity activity) {
+    this.activity = activity;
+    cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
+  }
+
+  @Override
+  @RequiresPermission(Manifest.permission.CAMERA)
+  public synchronized Camera2Source start() throws IOException {
+    if (cameraThread != null) {
+      return this;
+    }
+
+    try {
+      String cameraId = getIdForRequestedCamera(facing);
+      if (cameraId == null) {
+        throw new IOException("Could not find requested camera.");
+      }
+      CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+
+      String settingsKey =
+          cameraId + ":" + requestedPreviewWidth + "x" + requestedPreviewHeight
+              + "@" + requestedFps;
+      NegotiatedSettings settings;
+      synchronized (negotiatedSettings) {
+        settings = negotiatedSettings.get(settingsKey);
+      }
+      if (settings == null) {
+        Size size =
+            selectPreviewSize(characteristics, requestedPreviewWidth, requestedPreviewHeight);
+        if (size == null) {
+          throw new IOException("Could not find suitable preview size.");
+        }
+        settings = new NegotiatedSettings(size, selectFpsRange(characteristics, requestedFps));
+        synchronized (negotiatedSettings) {
+          negotiatedSettings.put(settingsKey, settings);
+        }
+      }
+
+      previewSize = settings.previewSize;
+      Log.v(TAG, "Camera preview size: " + previewSize);
+
+      Range<Integer> fpsRange = settings.fpsRange;
+      Log.v(TAG, "Camera preview fps: " + fpsRange);
+
+      rotationDegrees = computeRotation(characteristics);
+
+      cameraThread = new HandlerThread(TAG);
+      cameraThread.start();
+      cameraHandler = new Handler(cameraThread.getLooper());
+
+      imageReader =
+          ImageReader.newInstance(
+              previewSize.getWidth(),
+              previewSize.getHeight(),
+              ImageFormat.YUV_420_888,
+              MAX_IMAGES);
+      imageReader.setOnImageAvailableListener(this::onImageAvailable, cameraHandler);
+
+      cameraManager.openCamera(cameraId, new CameraStateCallback(fpsRange), cameraHandler);
+    } catch (CameraAccessException | SecurityException e) {
+      stop();
+      throw new IOException("Could not open camera.", e);
+    }
+    return this;
+  }
+
+  /**
+   * Closes the camera. The camera thread is joined without holding this source's lock, since
+   * the camera callbacks running on it take that lock too.
+   */
+  @Override
+  public void stop() {
+    CameraCaptureSession session;
+    CameraDevice device;
+    HandlerThread thread;
+    ImageReader reader;
+    synchronized (this) {
+      session = captureSession;
+      device = camera;
+      thread = cameraThread;
+      reader = imageReader;
+      captureSession = null;
+      camera = null;
+      cameraThread = null;
+      cameraHandler = null;
+      imageReader = null;
+    }
+
+    if (session != null) {
+      session.close();
+    }
+    if (device != null) {
+      device.close();
+    }
+    if (thread != null) {
+      thread.quitSafely();
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Log.d(TAG, "Camera thread interrupted on stop.");
+      }
+    }
+    if (reader != null) {
+      reader.close();
+    }
+  }
+
+  @Override
+  public void release() {
+    stop();
+
+    synchronized (processorLock) {
+      if (frameProcessor != null) {
+        frameProcessor.stop();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void setFacing(int facing) {
+    if ((facing != CameraSource.CAMERA_FACING_BACK)
+        && (facing != CameraSource.CAMERA_FACING_FRONT)) {
+      throw new IllegalArgumentException("Invalid camera: " + facing);
+    }
+    this.facing = facing;
+  }
+
+  @Override
+  public int getCameraFacing() {
+    return facing;
+  }
+
+  @Override
+  public synchronized void setRequestedPreview(int width, int height, int fps) {
+    requestedPreviewWidth = width;
+    requestedPreviewHeight = height;
+    requestedFps = fps;
+  }
+
+  @Override
+  public boolean switchesFacingWhileRunning() {
+    return false;
+  }
+
+  @Override
+  public void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+
+  @Override
+  public Size getPreviewSize() {
+    return previewSize;
+  }
+
+  /**
+   * Hands every image to the listener instead of the frame processor and the frame listener,
+   * for sources built on top of this one. Pass null to go back to the usual routing.
+   */
+  public void setImageListener(ImageListener listener) {
+    imageListener = listener;
+  }
+
+  @Override
+  public void setMachineLearningFrameProcessor(VisionImageProcessor processor) {
+    synchronized (processorLock) {
+      if (frameProcessor != null) {
+        frameProcessor.stop();
+      }
+      frameProcessor = processor;
+    }
+  }
+
+  @Override
+  public void setFrameListener(ProcessorFrameListener listener) {
+    this.frameListener = listener;
+  }
+
+  private void onImageAvailable(ImageReader reader) {
+    Image image;
+    try {
+      image = reader.acquireLatestImage();
+    } catch (IllegalStateException e) {
+      Log.w(TAG, "Skipping frame, all the images are in use.");
+      return;
+    }
+    if (image == null) {
+      return;
+    }
+    if (paused) {
+      image.close();
+      return;
+    }
+
+    ImageListener listener = imageListener;
+    if (listener != null) {
+      try {
+        listener.onImage(image, rotationDegrees);
+      } catch (Exception t) {
+        Log.e(TAG, "Exception thrown from image listener.", t);
+      }
+      return;
+    }
+
+    try {
+      synchronized (processorLock) {
+        if (frameProcessor != null && frameProcessor.active()) {
+          // The processor closes the image once it is done with it.
+          Image processed = image;
+          image = null;
+          frameProcessor.processImage(processed, rotationDegrees);
+        } else if (frameListener != null) {
+          frameListener.onFrame(image, rotationDegrees);
+        }
+      }
+    } catch (Exception t) {
+      Log.e(TAG, "Exception thrown from receiver.", t);
+    } finally {
+      if (image != null) {
+        image.close();
+      }
+    }
+  }
+
+  String getIdForRequestedCamera(int facing) throws CameraAccessException {
+    int lensFacing =
+        facing == CameraSource.CAMERA_FACING_FRONT
+            ? CameraCharacteristics.LENS_FACING_FRONT
+            : CameraCharacteristics.LENS_FACING_BACK;
+    for (String id : cameraManager.getCameraIdList()) {
+      Integer cameraFacing =
+          cameraManager.getCameraCharacteristics(id).get(CameraCharacteristics.LENS_FACING);
+      if (cameraFacing != null && cameraFacing == lensFacing) {
+        return id;
+      }
+    }
+    return null;
+  }
+
+  /** Preview size and fps range picked for a camera. */
+  private static class NegotiatedSettings {
+    final Size previewSize;
+    final Range<Integer> fpsRange;
+
+    NegotiatedSettings(Size previewSize, Range<Integer> fpsRange) {
+      this.previewSize = previewSize;
+      this.fpsRange = fpsRange;
+    }
+  }
+
+  /** Picks the YUV output size closest to the desired one, the way CameraSource does. */
+  private static Size selectPreviewSize(
+      CameraCharacteristics characteristics, int desiredWidth, int desiredHeight) {
+    StreamConfigurationMap map =
+        characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+    if (map == null) {
+      return null;
+    }
+
+    android.util.Size selected = null;
+    int minDiff = Integer.MAX_VALUE;
+    for (android.util.Size size : map.getOutputSizes(ImageFormat.YUV_420_888)) {
+      int diff =
+          Math.abs(size.getWidth() - desiredWidth) + Math.abs(size.getHeight() - desiredHeight);
+      if (diff < minDiff) {
+        selected = size;
+        minDiff = diff;
+      }
+    }
+    return selected != null ? new Size(selected.getWidth(), selected.getHeight()) : null;
+  }
+
+  /**
+   * Selects the range whose upper bound is closest to the desired fps while its lower bound is
+   * as small as possible, like CameraSource does for Camera1.
+   */
+  private static Range<Integer> selectFpsRange(
+      CameraCharacteristics characteristics, int desiredFps) {
+    Range<Integer>[] ranges =
+        characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+    if (ranges == null || ranges.length == 0) {
+      return new Range<>(desiredFps, desiredFps);
+    }
+
+    Range<Integer> selected = ranges[0];
+    int minUpperBoundDiff = Integer.MAX_VALUE;
+    int minLowerBound = Integer.MAX_VALUE;
+    for (Range<Integer> range : ranges) {
+      int upperBoundDiff = Math.abs(desiredFps - range.getUpper());
+      int lowerBound = range.getLower();
+      if (upperBoundDiff <= minUpperBoundDiff && lowerBound <= minLowerBound) {
+        selected = range;
+        minUpperBoundDiff = upperBoundDiff;
+        minLowerBound = lowerBound;
+      }
+    }
+    return selected;
+  }
+
+  private int computeRotation(CameraCharacteristics characteristics) {
+    WindowManager windowManager = (WindowManager) activity.getSystemService(Context.WINDOW_SERVICE);
+    int degrees;
+    switch (windowManager.getDefaultDisplay().getRotation()) {
+      case Surface.ROTATION_90:
+        degrees = 90;
+        break;
+      case Surface.ROTATION_180:
+        degrees = 180;
+        break;
+      case Surface.ROTATION_270:
+        degrees = 270;
+        break;
+      default:
+        degrees = 0;
+        break;
+    }
+
+    Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+    int orientation = sensorOrientation != null ? sensorOrientation : 0;
+    if (facing == CameraSource.CAMERA_FACING_FRONT) {
+      return (orientation + degrees) % 360;
+    }
+    return (orientation - degrees + 360) % 360;
+  }
+
+  private class CameraStateCallback extends CameraDevice.StateCallback {
+    private final Range<Integer> fpsRange;
+
+    CameraStateCallback(Range<Integer> fpsRange) {
+      this.fpsRange = fpsRange;
+    }
+
+    @Override
+    public void onOpened(@NonNull CameraDevice cameraDevice) {
+      synchronized (Camera2Source.this) {
+        if (imageReader == null) {
+          // Stopped while the camera was opening.
+          cameraDevice.close();
+          return;
+        }
+        camera = cameraDevice;
+        try {
+          cameraDevice.createCaptureSession(
+              Collections.singletonList(imageReader.getSurface()),
+              new CaptureSessionCallback(fpsRange),
+              cameraHandler);
+        } catch (CameraAccessException e) {
+          Log.e(TAG, "Failed to create capture session.", e);
+        }
+      }
+    }
+
+    @Override
+    public void onDisconnected(@NonNull CameraDevice cameraDevice) {
+      cameraDevice.close();
+    }
+
+    @Override
+    public void onError(@NonNull CameraDevice cameraDevice, int error) {
+      Log.e(TAG, "Camera error: " + error);
+      cameraDevice.close();
+    }
+  }
+
+  private class CaptureSessionCallback extends CameraCaptureSession.StateCallback {
+    private final Range<Integer> fpsRange;
+
+    CaptureSessionCallback(Range<Integer> fpsRange) {
+      this.fpsRange = fpsRange;
+    }
+
+    @SuppressLint("InlinedApi")
+    @Override
+    public void onConfigured(@NonNull CameraCaptureSession session) {
+      synchronized (Camera2Source.this) {
+        if (camera == null || imageReader == null) {
+          session.close();
+          return;
+        }
+        captureSession = session;
+        try {
+          CaptureRequest.Builder request =
+              camera.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+          request.addTarget(imageReader.getSurface());
+          request.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
+          request.set(
+              CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO);
+          session.setRepeatingRequest(request.build(), null, cameraHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+          Log.e(TAG, "Failed to start capture.", e);
+        }
+      }
+    }
+
+    @Override
+    public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+      Log.e(TAG, "Failed to configure capture session.");
+    }
+  }
+}
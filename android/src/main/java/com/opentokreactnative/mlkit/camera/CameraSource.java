@@ -39,15 +39,17 @@ import com.opentokreactnative.mlkit.processors.base.VisionImageProcessor;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages the camera and allows UI updates on top of it (e.g. overlaying extra Graphics or
  * displaying extra information). This receives preview frames from the camera at a specified rate,
  * sending those frames to child classes' detectors / classifiers as fast as it is able to process.
  */
-public class CameraSource {
+public class CameraSource implements FrameSource {
   @SuppressLint("InlinedApi")
   public static final int CAMERA_FACING_BACK = CameraInfo.CAMERA_FACING_BACK;
 
@@ -85,8 +87,22 @@ public class CameraSource {
   private Size previewSize;
 
   private static final float REQUESTED_FPS = 30.0f;
+  private int requestedPreviewWidth = DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH;
+  private int requestedPreviewHeight = DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT;
+  private float requestedFps = REQUESTED_FPS;
   private static final boolean REQUESTED_AUTO_FOCUS = true;
 
+  /**
+   * Size and fps range picked for a camera id and a requested preview, so that reopening a
+   * camera doesn't query and search its parameters again.
+   */
+  private static final Map<String, NegotiatedSettings> negotiatedSettings = new HashMap<>();
+
+  private volatile boolean paused = false;
+
+  private int previewQueueCapacity = 1;
+  private PreviewQueue.Policy previewQueuePolicy = PreviewQueue.Policy.DROP_OLDEST;
+
   // This instance needs to be held onto to avoid GC of its underlying resources. Even though it
   // isn't used outside of the method that creates it, it still must have hard references maintained
   // to it.
@@ -230,6 +246,41 @@ public class CameraSource {
     this.facing = facing;
   }
 
+  @Override
+  public synchronized void setRequestedPreview(int width, int height, int fps) {
+    requestedPreviewWidth = width;
+    requestedPreviewHeight = height;
+    requestedFps = fps;
+  }
+
+  @Override
+  public boolean switchesFacingWhileRunning() {
+    return false;
+  }
+
+  @Override
+  public void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+
+  /**
+   * Sets how many camera frames may wait for the frame processor, and what happens to the frames
+   * that arrive while they are all taken, from the next time the camera starts. The default is a
+   * single frame replaced by the newest one.
+   */
+  public synchronized void setPreviewQueue(int capacity, PreviewQueue.Policy policy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Invalid preview queue capacity: " + capacity);
+    }
+    previewQueueCapacity = capacity;
+    previewQueuePolicy = policy;
+  }
+
+  /** Counters of the frames dropped by the preview queue, kept across restarts. */
+  public PreviewQueue getPreviewQueue() {
+    return processingRunnable.queue;
+  }
+
   /** Returns the preview size that is currently in use by the underlying camera. */
   public Size getPreviewSize() {
     return previewSize;
@@ -256,29 +307,46 @@ public class CameraSource {
     }
     Camera camera = Camera.open(requestedCameraId);
 
-    SizePair sizePair = null;
+    String settingsKey =
+        requestedCameraId + ":" + requestedPreviewWidth + "x" + requestedPreviewHeight
+            + "@" + requestedFps;
+    NegotiatedSettings settings;
+    synchronized (negotiatedSettings) {
+      settings = negotiatedSettings.get(settingsKey);
+    }
+
+    SizePair sizePair = settings != null ? settings.sizePair : null;
     if (sizePair == null) {
       sizePair =
           selectSizePair(
               camera,
-              DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH,
-              DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT);
+              requestedPreviewWidth,
+              requestedPreviewHeight);
     }
 
     if (sizePair == null) {
+      camera.release();
       throw new IOException("Could not find suitable preview size.");
     }
 
     previewSize = sizePair.preview;
     Log.v(TAG, "Camera preview size: " + previewSize);
 
-    int[] previewFpsRange = selectPreviewFpsRange(camera, REQUESTED_FPS);
+    int[] previewFpsRange =
+        settings != null ? settings.fpsRange : selectPreviewFpsRange(camera, requestedFps);
 
     if (previewFpsRange == null) {
+      camera.release();
       throw new IOException("Could not find suitable preview frames per second range.");
     }
     Log.v(TAG, "Camera preview fps: " + previewFpsRange[0] + " " + previewFpsRange[1]);
 
+    if (settings == null) {
+      synchronized (negotiatedSettings) {
+        negotiatedSettings.put(settingsKey, new NegotiatedSettings(sizePair, previewFpsRange));
+      }
+    }
+
     Camera.Parameters parameters = camera.getParameters();
 
     Size pictureSize = sizePair.picture;
@@ -307,22 +375,23 @@ public class CameraSource {
 
     camera.setParameters(parameters);
 
-    // Four frame buffers are needed for working with the camera:
+    // Frame buffers needed for working with the camera:
     //
     //   one for the frame that is currently being executed upon in doing detection
-    //   one for the next pending frame to process immediately upon completing detection
+    //   one per pending frame of the preview queue, to process upon completing detection
     //   two for the frames that the camera uses to populate future preview images
     //
-    // Through trial and error it appears that two free buffers, in addition to the two buffers
+    // Through trial and error it appears that two free buffers, in addition to the buffers
     // used in this code, are needed for the camera to work properly.  Perhaps the camera has
     // one thread for acquiring images, and another thread for calling into user code.  If only
     // three buffers are used, then the camera will spew thousands of warning messages when
-    // detection takes a non-trivial amount of time.
+    // detection takes a non-trivial amount of time. The blocking queue leaves those two out on
+    // purpose, so that the camera waits for the processor.
+    int bufferCount = processingRunnable.configureQueue(previewQueueCapacity, previewQueuePolicy);
     camera.setPreviewCallbackWithBuffer(new CameraPreviewCallback());
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
-    camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+    for (int i = 0; i < bufferCount; i++) {
+      camera.addCallbackBuffer(createPreviewBuffer(previewSize));
+    }
 
     return camera;
   }
@@ -400,6 +469,17 @@ public class CameraSource {
     }
   }
 
+  /** Preview and picture sizes and fps range picked for a camera. */
+  private static class NegotiatedSettings {
+    final SizePair sizePair;
+    final int[] fpsRange;
+
+    NegotiatedSettings(SizePair sizePair, int[] fpsRange) {
+      this.sizePair = sizePair;
+      this.fpsRange = fpsRange;
+    }
+  }
+
   /**
    * Generates a list of acceptable preview sizes. Preview sizes are not acceptable if there is not
    * a corresponding picture size of the same aspect ratio. If there is a corresponding picture size
@@ -560,10 +640,21 @@ public class CameraSource {
   private class CameraPreviewCallback implements Camera.PreviewCallback {
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
-      processingRunnable.setNextFrame(data, camera);
+      if (paused) {
+        camera.addCallbackBuffer(data);
+        return;
+      }
       if (!frameProcessor.active() && frameListener != null) {
-          frameListener.onFrame(data, previewSize.getWidth(), previewSize.getHeight(), rotationDegrees);
+        // Unfiltered frames skip the preview queue, so a busy processor never holds them up.
+        try {
+          frameListener.onFrame(
+              data, previewSize.getWidth(), previewSize.getHeight(), rotationDegrees);
+        } finally {
+          camera.addCallbackBuffer(data);
+        }
+        return;
       }
+      processingRunnable.setNextFrame(data, camera);
     }
   }
 
@@ -595,11 +686,22 @@ public class CameraSource {
     private final Object lock = new Object();
     private boolean active = true;
 
-    // These pending variables hold the state associated with the new frame awaiting processing.
-    private ByteBuffer pendingFrameData;
+    // Only used by the processing thread, the processor copies it out before the next frame.
+    private final FrameMetadata frameMetadata = new FrameMetadata();
+
+    // Frames waiting for processing, oldest first.
+    private final PreviewQueue queue = new PreviewQueue();
 
     FrameProcessingRunnable() {}
 
+    /** Sizes the queue for a camera about to start. Returns the number of buffers it needs. */
+    int configureQueue(int capacity, PreviewQueue.Policy policy) {
+      synchronized (lock) {
+        queue.configure(capacity, policy);
+        return queue.bufferCount();
+      }
+    }
+
     /** Marks the runnable as active/not active. Signals any blocked threads to continue. */
     void setActive(boolean active) {
       synchronized (lock) {
@@ -609,17 +711,12 @@ public class CameraSource {
     }
 
     /**
-     * Sets the frame data received from the camera. This adds the previous unused frame buffer (if
-     * present) back to the camera, and keeps a pending reference to the frame data for future use.
+     * Queues the frame data received from the camera. A frame the queue drops is added back to
+     * the camera right away.
      */
     @SuppressWarnings("ByteBufferBackingArray")
     void setNextFrame(byte[] data, Camera camera) {
       synchronized (lock) {
-        if (pendingFrameData != null) {
-          camera.addCallbackBuffer(pendingFrameData.array());
-          pendingFrameData = null;
-        }
-
         if (!bytesToByteBuffer.containsKey(data)) {
           Log.d(
               TAG,
@@ -628,7 +725,10 @@ public class CameraSource {
           return;
         }
 
-        pendingFrameData = bytesToByteBuffer.get(data);
+        ByteBuffer dropped = queue.offer(bytesToByteBuffer.get(data));
+        if (dropped != null) {
+          camera.addCallbackBuffer(dropped.array());
+        }
 
         // Notify the processor thread if it is waiting on the next frame (see below).
         lock.notifyAll();
@@ -652,11 +752,11 @@ public class CameraSource {
     @SuppressWarnings({"GuardedBy", "ByteBufferBackingArray"})
     @Override
     public void run() {
-      ByteBuffer data;
+      ByteBuffer data = null;
 
       while (true) {
         synchronized (lock) {
-          while (active && (pendingFrameData == null)) {
+          while (active && (data = queue.poll()) == null) {
             try {
               // Wait for the next frame to be received from the camera, since we
               // don't have it yet.
@@ -675,11 +775,8 @@ public class CameraSource {
             return;
           }
 
-          // Hold onto the frame data locally, so that we can use this for detection
-          // below.  We need to clear pendingFrameData to ensure that this buffer isn't
-          // recycled back to the camera before we are done using that data.
-          data = pendingFrameData;
-          pendingFrameData = null;
+          // The frame is out of the queue, so its buffer can't be recycled back to the camera
+          // before we are done using that data.
         }
 
         // The code below needs to run outside of synchronization, because this will allow
@@ -691,11 +788,12 @@ public class CameraSource {
             if (frameProcessor.active() || frameListener == null) {
               frameProcessor.processByteBuffer(
                       data,
-                      new FrameMetadata.Builder()
-                              .setWidth(previewSize.getWidth())
-                              .setHeight(previewSize.getHeight())
-                              .setRotation(rotationDegrees)
-                              .build());
+                      frameMetadata.set(
+                              previewSize.getWidth(), previewSize.getHeight(), rotationDegrees));
+            } else {
+              // Filters were turned off while the frame was queued.
+              frameListener.onFrame(
+                  data.array(), previewSize.getWidth(), previewSize.getHeight(), rotationDegrees);
             }
           }
         } catch (Exception t) {
@@ -0,0 +1,513 @@
+package com.opentokreactnative.mlkit.camera;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+import android.media.Image;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+import androidx.annotation.RequiresPermission;
+
+import com.google.android.gms.common.images.Size;
+import com.opentokreactnative.mlkit.processors.base.ProcessorFrameListener;
+import com.opentokreactnative.mlkit.processors.base.VisionImageProcessor;
+import com.opentokreactnative.mlkit.utils.Nv21Downscaler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * Keeps the front and the back cameras open together, where the hardware allows it, so that
+ * switching between them only changes which camera's frames are routed, without the gap of
+ * closing one camera and opening the other.
+ *
+ * <p>Both cameras run as {@link Camera2Source}s whose images come here. Images of the active
+ * camera go to the frame processor or the frame listener like Camera2Source does, those of the
+ * standby camera are dropped, or shrunk into a picture-in-picture inset that is drawn in a corner
+ * of the active camera's frames. Devices that can't stream both cameras at once get a single
+ * camera, and switching falls back to restarting it.
+ */
+@RequiresApi(21)
+public class DualCameraSource implements FrameSource {
+
+  private static final String TAG = "DualCameraSource";
+
+  /** A standby camera that hasn't sent an image for this long is not streaming. */
+  private static final long STANDBY_TIMEOUT_MS = 500;
+
+  /** The inset is this fraction of the frame on each side. */
+  private static final int INSET_DIVISOR = 4;
+
+  /** Distance between the inset and the edges of the frame, as a fraction of the frame width. */
+  private static final int INSET_MARGIN_DIVISOR = 32;
+
+  private final Activity activity;
+  private final Camera2Source front;
+  private final Camera2Source back;
+
+  private volatile int activeFacing = CameraSource.CAMERA_FACING_BACK;
+  private volatile boolean pictureInPicture = false;
+  private volatile boolean paused = false;
+  private volatile long frontLastImageMs;
+  private volatile long backLastImageMs;
+  private boolean running = false;
+
+  private final Object processorLock = new Object();
+  private VisionImageProcessor frameProcessor;
+  private ProcessorFrameListener frameListener;
+
+  // Picture-in-picture composites are built on the active camera's thread, from the latest inset
+  // made on the standby camera's thread. Both sides swap buffers under the inset lock.
+  private final Object insetLock = new Object();
+  private final Nv21Downscaler insetScaler = new Nv21Downscaler();
+  private byte[] insetPending = new byte[0];
+  private byte[] insetReady = new byte[0];
+  private int insetWidth;
+  private int insetHeight;
+  private boolean insetAvailable = false;
+  private volatile int activeRotation;
+  private byte[] composite = new byte[0];
+  private ByteBuffer compositeBuffer;
+  private final FrameMetadata compositeMetadata = new FrameMetadata();
+
+  public DualCameraSource(Activity activity) {
+    this.activity = activity;
+    front = new Camera2Source(activity);
+    front.setFacing(CameraSource.CAMERA_FACING_FRONT);
+    front.setImageListener(
+        (image, rotation) -> onImage(CameraSource.CAMERA_FACING_FRONT, image, rotation));
+    back = new Camera2Source(activity);
+    back.setFacing(CameraSource.CAMERA_FACING_BACK);
+    back.setImageListener(
+        (image, rotation) -> onImage(CameraSource.CAMERA_FACING_BACK, image, rotation));
+  }
+
+  /**
+   * Opens the active camera, then the standby one if the device reports that both can stream
+   * together. Older devices don't report it, and the standby camera is tried anyway.
+   */
+  @Override
+  @RequiresPermission(Manifest.permission.CAMERA)
+  public synchronized DualCameraSource start() throws IOException {
+    if (running) {
+      return this;
+    }
+    running = true;
+    try {
+      source(activeFacing).start();
+    } catch (IOException e) {
+      running = false;
+      throw e;
+    }
+    startStandby();
+    return this;
+  }
+
+  @Override
+  public synchronized void stop() {
+    running = false;
+    front.stop();
+    back.stop();
+    frontLastImageMs = 0;
+    backLastImageMs = 0;
+    synchronized (insetLock) {
+      insetAvailable = false;
+    }
+  }
+
+  @Override
+  public void release() {
+    stop();
+
+    synchronized (processorLock) {
+      if (frameProcessor != null) {
+        frameProcessor.stop();
+      }
+    }
+  }
+
+  /**
+   * Switches to the other camera. While it is streaming on standby, its next image is the first
+   * one routed, otherwise both cameras are restarted with the new one opened first.
+   */
+  @SuppressLint("MissingPermission")
+  @Override
+  public synchronized void setFacing(int facing) {
+    if ((facing != CameraSource.CAMERA_FACING_BACK)
+        && (facing != CameraSource.CAMERA_FACING_FRONT)) {
+      throw new IllegalArgumentException("Invalid camera: " + facing);
+    }
+    if (facing == activeFacing) {
+      return;
+    }
+    boolean live = isStreaming(facing);
+    activeFacing = facing;
+    synchronized (insetLock) {
+      insetAvailable = false;
+    }
+    if (!running || live) {
+      return;
+    }
+
+    Log.d(TAG, "Standby camera is not streaming, restarting both cameras.");
+    front.stop();
+    back.stop();
+    try {
+      source(facing).start();
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to open camera " + facing, e);
+    }
+    startStandby();
+  }
+
+  @Override
+  public int getCameraFacing() {
+    return activeFacing;
+  }
+
+  @Override
+  public Size getPreviewSize() {
+    return source(activeFacing).getPreviewSize();
+  }
+
+  @Override
+  public synchronized void setRequestedPreview(int width, int height, int fps) {
+    front.setRequestedPreview(width, height, fps);
+    back.setRequestedPreview(width, height, fps);
+  }
+
+  @Override
+  public boolean switchesFacingWhileRunning() {
+    return true;
+  }
+
+  /** Both cameras keep streaming while paused, so that switching stays instant. */
+  @Override
+  public void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+
+  /**
+   * Draws the standby camera into a corner of the active camera's frames. The composites are
+   * NV21, so the Camera2 planes of the active camera are copied once per frame while it is on.
+   */
+  public void setPictureInPicture(boolean enabled) {
+    pictureInPicture = enabled;
+    if (!enabled) {
+      synchronized (insetLock) {
+        insetAvailable = false;
+      }
+    }
+  }
+
+  public boolean isPictureInPicture() {
+    return pictureInPicture;
+  }
+
+  @Override
+  public void setMachineLearningFrameProcessor(VisionImageProcessor processor) {
+    synchronized (processorLock) {
+      if (frameProcessor != null) {
+        frameProcessor.stop();
+      }
+      frameProcessor = processor;
+    }
+  }
+
+  @Override
+  public void setFrameListener(ProcessorFrameListener listener) {
+    this.frameListener = listener;
+  }
+
+  private Camera2Source source(int facing) {
+    return facing == CameraSource.CAMERA_FACING_FRONT ? front : back;
+  }
+
+  private static int opposite(int facing) {
+    return facing == CameraSource.CAMERA_FACING_FRONT
+        ? CameraSource.CAMERA_FACING_BACK
+        : CameraSource.CAMERA_FACING_FRONT;
+  }
+
+  private boolean isStreaming(int facing) {
+    long lastImageMs =
+        facing == CameraSource.CAMERA_FACING_FRONT ? frontLastImageMs : backLastImageMs;
+    return lastImageMs != 0 && SystemClock.elapsedRealtime() - lastImageMs < STANDBY_TIMEOUT_MS;
+  }
+
+  @SuppressLint("MissingPermission")
+  private void startStandby() {
+    if (!supportsConcurrentCameras()) {
+      Log.d(TAG, "Front and back cameras can't stream together, keeping one open.");
+      return;
+    }
+    try {
+      source(opposite(activeFacing)).start();
+    } catch (IOException e) {
+      // Switching restarts the cameras when the standby one never streams.
+      Log.w(TAG, "Failed to open the standby camera.", e);
+    }
+  }
+
+  private boolean supportsConcurrentCameras() {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+      return true;
+    }
+    CameraManager cameraManager =
+        (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
+    try {
+      String frontId = front.getIdForRequestedCamera(CameraSource.CAMERA_FACING_FRONT);
+      String backId = back.getIdForRequestedCamera(CameraSource.CAMERA_FACING_BACK);
+      if (frontId == null || backId == null) {
+        return false;
+      }
+      for (Set<String> ids : cameraManager.getConcurrentCameraIds()) {
+        if (ids.contains(frontId) && ids.contains(backId)) {
+          return true;
+        }
+      }
+    } catch (CameraAccessException e) {
+      Log.w(TAG, "Failed to query concurrent cameras.", e);
+    }
+    return false;
+  }
+
+  /** Runs on the thread of the camera that took the image. */
+  private void onImage(int facing, Image image, int rotationDegrees) {
+    if (facing == CameraSource.CAMERA_FACING_FRONT) {
+      frontLastImageMs = SystemClock.elapsedRealtime();
+    } else {
+      backLastImageMs = SystemClock.elapsedRealtime();
+    }
+
+    try {
+      if (paused) {
+        return;
+      }
+      if (facing != activeFacing) {
+        if (pictureInPicture) {
+          updateInset(image, rotationDegrees);
+        }
+        return;
+      }
+
+      activeRotation = rotationDegrees;
+      if (pictureInPicture && compositeInset(image, rotationDegrees)) {
+        return;
+      }
+
+      synchronized (processorLock) {
+        if (frameProcessor != null && frameProcessor.active()) {
+          // The processor closes the image once it is done with it.
+          Image processed = image;
+          image = null;
+          frameProcessor.processImage(processed, rotationDegrees);
+        } else if (frameListener != null) {
+          frameListener.onFrame(image, rotationDegrees);
+        }
+      }
+    } catch (Exception t) {
+      Log.e(TAG, "Exception thrown from receiver.", t);
+    } finally {
+      if (image != null) {
+        image.close();
+      }
+    }
+  }
+
+  /**
+   * Shrinks a standby image and turns it upright relative to the active camera's frames, so the
+   * inset has the orientation of the scene once the composite is rotated for display.
+   */
+  private void updateInset(Image image, int rotationDegrees) {
+    int relativeRotation = (rotationDegrees - activeRotation + 360) % 360;
+    boolean swap = relativeRotation == 90 || relativeRotation == 270;
+    // Sides of the inset once it is rotated, in the active camera's frame.
+    int width = Math.max(image.getWidth() / INSET_DIVISOR, 2);
+    int height = Math.max(image.getHeight() / INSET_DIVISOR, 2);
+
+    Image.Plane[] planes = image.getPlanes();
+    ByteBuffer scaled =
+        insetScaler.downscale(
+            planes[0].getBuffer(),
+            planes[0].getRowStride(),
+            planes[1].getBuffer(),
+            planes[2].getBuffer(),
+            planes[1].getRowStride(),
+            planes[1].getPixelStride(),
+            image.getWidth(),
+            image.getHeight(),
+            swap ? height : width,
+            swap ? width : height);
+    int scaledWidth = insetScaler.getOutputWidth();
+    int scaledHeight = insetScaler.getOutputHeight();
+
+    int size = scaledWidth * scaledHeight * 3 / 2;
+    if (insetPending.length < size) {
+      insetPending = new byte[size];
+    }
+    rotateNv21(scaled, scaledWidth, scaledHeight, relativeRotation, insetPending);
+
+    synchronized (insetLock) {
+      byte[] ready = insetReady;
+      insetReady = insetPending;
+      insetPending = ready;
+      insetWidth = swap ? scaledHeight : scaledWidth;
+      insetHeight = swap ? scaledWidth : scaledHeight;
+      insetAvailable = true;
+    }
+  }
+
+  /**
+   * Copies the active image into an NV21 frame with the latest inset in its upright top right
+   * corner, and hands it on. Returns false, leaving the image alone, while there is no inset yet.
+   */
+  private boolean compositeInset(Image image, int rotationDegrees) throws Exception {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int size = width * height * 3 / 2;
+    if (composite.length < size) {
+      composite = new byte[size];
+      compositeBuffer = ByteBuffer.wrap(composite);
+    }
+
+    synchronized (insetLock) {
+      if (!insetAvailable || insetWidth > width || insetHeight > height) {
+        return false;
+      }
+      copyToNv21(image, composite);
+      int margin = (width / INSET_MARGIN_DIVISOR) & ~1;
+      int right = (width - insetWidth - margin) & ~1;
+      int bottom = (height - insetHeight - margin) & ~1;
+      // The sensor corner that ends up at the top right once the frame is rotated upright.
+      int left;
+      int top;
+      switch (rotationDegrees) {
+        case 90:
+          left = margin;
+          top = margin;
+          break;
+        case 180:
+          left = margin;
+          top = bottom;
+          break;
+        case 270:
+          left = right;
+          top = bottom;
+          break;
+        default:
+          left = right;
+          top = margin;
+          break;
+      }
+      blitNv21(insetReady, insetWidth, insetHeight, composite, width, height, left, top);
+    }
+    image.close();
+
+    synchronized (processorLock) {
+      if (frameProcessor != null && frameProcessor.active()) {
+        compositeMetadata.set(width, height, rotationDegrees);
+        compositeBuffer.clear();
+        compositeBuffer.limit(size);
+        frameProcessor.processByteBuffer(compositeBuffer, compositeMetadata);
+      } else if (frameListener != null) {
+        frameListener.onFrame(composite, width, height, rotationDegrees);
+      }
+    }
+    return true;
+  }
+
+  /** Flattens YUV_420_888 planes into NV21, one row of luma at a time. */
+  private static void copyToNv21(Image image, byte[] nv21) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    Image.Plane[] planes = image.getPlanes();
+
+    ByteBuffer yPlane = planes[0].getBuffer();
+    int yRowStride = planes[0].getRowStride();
+    for (int y = 0; y < height; y++) {
+      yPlane.position(y * yRowStride);
+      yPlane.get(nv21, y * width, width);
+    }
+    yPlane.position(0);
+
+    ByteBuffer uPlane = planes[1].getBuffer();
+    ByteBuffer vPlane = planes[2].getBuffer();
+    int uvRowStride = planes[1].getRowStride();
+    int uvPixelStride = planes[1].getPixelStride();
+    int index = width * height;
+    for (int y = 0; y < height / 2; y++) {
+      int row = y * uvRowStride;
+      for (int x = 0; x < width / 2; x++) {
+        int uvIndex = row + x * uvPixelStride;
+        nv21[index++] = vPlane.get(uvIndex);
+        nv21[index++] = uPlane.get(uvIndex);
+      }
+    }
+  }
+
+  /**
+   * Rotates an NV21 frame clockwise by a multiple of 90 degrees. The output is {@code height}
+   * wide for 90 and 270 degrees.
+   */
+  static void rotateNv21(ByteBuffer src, int width, int height, int degrees, byte[] dst) {
+    int outWidth = degrees == 90 || degrees == 270 ? height : width;
+    int outHeight = degrees == 90 || degrees == 270 ? width : height;
+
+    int index = 0;
+    for (int y = 0; y < outHeight; y++) {
+      for (int x = 0; x < outWidth; x++) {
+        dst[index++] = src.get(rotatedIndex(x, y, width, height, degrees));
+      }
+    }
+
+    int frameSize = width * height;
+    int chromaWidth = width / 2;
+    int chromaHeight = height / 2;
+    for (int y = 0; y < outHeight / 2; y++) {
+      for (int x = 0; x < outWidth / 2; x++) {
+        int pair = frameSize + rotatedIndex(x, y, chromaWidth, chromaHeight, degrees) * 2;
+        dst[index++] = src.get(pair);
+        dst[index++] = src.get(pair + 1);
+      }
+    }
+  }
+
+  /** Index in the source of the pixel that lands at (x, y) of the rotated output. */
+  private static int rotatedIndex(int x, int y, int width, int height, int degrees) {
+    switch (degrees) {
+      case 90:
+        return (height - 1 - x) * width + y;
+      case 180:
+        return (height - 1 - y) * width + (width - 1 - x);
+      case 270:
+        return x * width + (width - 1 - y);
+      default:
+        return y * width + x;
+    }
+  }
+
+  /** Copies an NV21 image into another at an even position. */
+  private static void blitNv21(
+      byte[] src, int srcWidth, int srcHeight,
+      byte[] dst, int dstWidth, int dstHeight, int left, int top) {
+    for (int y = 0; y < srcHeight; y++) {
+      System.arraycopy(src, y * srcWidth, dst, (top + y) * dstWidth + left, srcWidth);
+    }
+    int srcChroma = srcWidth * srcHeight;
+    int dstChroma = dstWidth * dstHeight;
+    for (int y = 0; y < srcHeight / 2; y++) {
+      System.arraycopy(
+          src, srcChroma + y * srcWidth,
+          dst, dstChroma + (top / 2 + y) * dstWidth + left,
+          srcWidth);
+    }
+  }
+}
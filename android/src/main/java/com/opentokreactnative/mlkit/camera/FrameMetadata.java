@@ -16,12 +16,15 @@
 
 package com.opentokreactnative.mlkit.camera;
 
-/** Describing a frame info. */
+/**
+ * Describing a frame info. Live frames reuse a single instance, updated with {@link #set}, so
+ * describing a frame doesn't allocate.
+ */
 public class FrameMetadata {
 
-  private final int width;
-  private final int height;
-  private final int rotation;
+  private int width;
+  private int height;
+  private int rotation;
 
   public int getWidth() {
     return width;
@@ -35,10 +38,22 @@ public class FrameMetadata {
     return rotation;
   }
 
+  public FrameMetadata() {}
+
   private FrameMetadata(int width, int height, int rotation) {
+    set(width, height, rotation);
+  }
+
+  public FrameMetadata set(int width, int height, int rotation) {
     this.width = width;
     this.height = height;
     this.rotation = rotation;
+    return this;
+  }
+
+  /** Copies another frame info into this one. */
+  public FrameMetadata set(FrameMetadata other) {
+    return set(other.width, other.height, other.rotation);
   }
 
   /** Builder of {@link FrameMetadata}. */
@@ -0,0 +1,57 @@
+package com.opentokreactnative.mlkit.camera;
+
+import android.Manifest;
+
+import androidx.annotation.RequiresPermission;
+
+import com.google.android.gms.common.images.Size;
+import com.opentokreactnative.mlkit.processors.base.ProcessorFrameListener;
+import com.opentokreactnative.mlkit.processors.base.VisionImageProcessor;
+
+import java.io.IOException;
+
+/**
+ * A camera that sends its preview frames either to a frame processor, while the processor is
+ * active, or straight to a frame listener.
+ */
+public interface FrameSource {
+
+  /** Opens the camera and starts sending preview frames. */
+  @RequiresPermission(Manifest.permission.CAMERA)
+  FrameSource start() throws IOException;
+
+  /** Closes the camera. The source may be started again. */
+  void stop();
+
+  /** Closes the camera and stops the frame processor. */
+  void release();
+
+  /** Changes the facing of the camera, one of the CameraSource CAMERA_FACING constants. */
+  void setFacing(int facing);
+
+  int getCameraFacing();
+
+  Size getPreviewSize();
+
+  /**
+   * Sets the preview size and frame rate asked of the camera the next time it starts. The camera
+   * uses the closest ones it supports.
+   */
+  void setRequestedPreview(int width, int height, int fps);
+
+  /**
+   * Whether {@link #setFacing} switches a running source to the other camera by itself. Other
+   * sources have to be restarted for a new facing to take effect.
+   */
+  boolean switchesFacingWhileRunning();
+
+  /**
+   * Drops the camera frames while paused, keeping the camera open and configured so that
+   * resuming delivers the next frame without opening it again.
+   */
+  void setPaused(boolean paused);
+
+  void setMachineLearningFrameProcessor(VisionImageProcessor processor);
+
+  void setFrameListener(ProcessorFrameListener listener);
+}
@@ -0,0 +1,116 @@
+package com.opentokreactnative.mlkit.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded ring of Camera1 preview buffers waiting for the frame processor, with what to do when
+ * frames arrive faster than they are processed.
+ *
+ * <p>The queue isn't thread safe, {@link CameraSource} guards it with its processing lock. The
+ * counters may be read from any thread.
+ */
+public class PreviewQueue {
+
+  /** What happens to a frame that arrives while the ring is full. */
+  public enum Policy {
+    /** The oldest queued frame goes back to the camera, the new one is queued. */
+    DROP_OLDEST,
+    /** The new frame goes back to the camera, the queued ones stay. */
+    DROP_NEWEST,
+    /**
+     * Nothing is dropped here: the camera only has buffers for the ring, so it stops delivering
+     * until the processor frees one, and skips frames on its side meanwhile.
+     */
+    BLOCK
+  }
+
+  private ByteBuffer[] ring = new ByteBuffer[1];
+  private int head = 0;
+  private int size = 0;
+  private Policy policy = Policy.DROP_OLDEST;
+
+  private volatile long droppedOldest;
+  private volatile long droppedNewest;
+  private volatile long stalls;
+
+  /** Empties the ring and sizes it, keeping the counters. Call with no frames in flight. */
+  void configure(int capacity, Policy policy) {
+    if (ring.length != capacity) {
+      ring = new ByteBuffer[capacity];
+    }
+    clear();
+    this.policy = policy;
+  }
+
+  /**
+   * Number of preview buffers the camera needs with this ring: one for the frame being
+   * processed, and two more for the camera to fill unless it is meant to stall.
+   */
+  int bufferCount() {
+    return ring.length + (policy == Policy.BLOCK ? 1 : 3);
+  }
+
+  /**
+   * Queues a camera frame. Returns the buffer to hand back to the camera, the dropped frame, or
+   * null if nothing was dropped.
+   */
+  ByteBuffer offer(ByteBuffer frame) {
+    if (size == ring.length) {
+      if (policy == Policy.DROP_OLDEST) {
+        ByteBuffer oldest = poll();
+        push(frame);
+        droppedOldest++;
+        return oldest;
+      }
+      // A blocking ring is never offered more frames than it holds, but should the camera have
+      // more buffers than expected, the frame is dropped rather than waited for.
+      droppedNewest++;
+      return frame;
+    }
+    push(frame);
+    if (size == ring.length && policy == Policy.BLOCK) {
+      stalls++;
+    }
+    return null;
+  }
+
+  /** Takes the oldest queued frame, or null if there is none. */
+  ByteBuffer poll() {
+    if (size == 0) {
+      return null;
+    }
+    ByteBuffer frame = ring[head];
+    ring[head] = null;
+    head = (head + 1) % ring.length;
+    size--;
+    return frame;
+  }
+
+  void clear() {
+    for (int i = 0; i < ring.length; i++) {
+      ring[i] = null;
+    }
+    head = 0;
+    size = 0;
+  }
+
+  private void push(ByteBuffer frame) {
+    ring[(head + size) % ring.length] = frame;
+    size++;
+  }
+
+  /** Frames replaced by a newer one under {@link Policy#DROP_OLDEST}. */
+  public long getDroppedOldest() {
+    return droppedOldest;
+  }
+
+  /** Frames dropped because the ring was full under {@link Policy#DROP_NEWEST}. */
+  public long getDroppedNewest() {
+    return droppedNewest;
+  }
+
+  /** Times the ring filled up under {@link Policy#BLOCK}, leaving the camera without buffers. */
+  public long getStalls() {
+    return stalls;
+  }
+}
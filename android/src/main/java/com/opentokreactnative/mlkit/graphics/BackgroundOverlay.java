@@ -1,76 +1,160 @@
 package com.opentokreactnative.mlkit.graphics;
 
 import android.graphics.Bitmap;
-import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 
-import androidx.annotation.ColorInt;
-
-import com.google.mlkit.vision.segmentation.SegmentationMask;
-import com.opentokreactnative.mlkit.utils.BitmapEffects;
-
-import java.nio.ByteBuffer;
+import com.opentokreactnative.mlkit.utils.BoxBlur;
+import com.opentokreactnative.mlkit.utils.FramePool;
 
+/**
+ * Blends a blurred or replaced background behind the foreground of the frame. A single instance
+ * is reconfigured for every frame, and everything it draws with is kept between frames.
+ */
 public class BackgroundOverlay {
 
-    private final ByteBuffer mask;
-    private final Bitmap originalImage;
-    private final int maskWidth;
-    private final int maskHeight;
-
-    public BackgroundOverlay(
-            SegmentationMask segmentationMask, Bitmap originalImage) {
-        this.originalImage = originalImage;
-
-        mask = segmentationMask.getBuffer();
-        maskWidth = segmentationMask.getWidth();
-        maskHeight = segmentationMask.getHeight();
+    // Foreground confidences between these two values are blended with a smoothstep instead of
+    // being cut at a single threshold, which is what caused the halo to flicker at the edges.
+    static final float EDGE_LOW = 0.6f;
+    static final float EDGE_HIGH = 0.94f;
+    // Two box passes at half resolution, close to the Gaussian the Toolkit used with radius 10.
+    private static final int BLUR_BOX_RADIUS = 5;
+    private static final int BLUR_PASSES = 2;
+
+    /** Foreground weight in [0, 256] for a confidence quantized to [0, 255]. */
+    private static final int[] ALPHA_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            float t = (i / 255f - EDGE_LOW) / (EDGE_HIGH - EDGE_LOW);
+            t = Math.max(0f, Math.min(1f, t));
+            ALPHA_TABLE[i] = Math.round(t * t * (3f - 2f * t) * 256f);
+        }
     }
 
-    public void drawBlurredBackground(Canvas canvas) {
-        Bitmap backgroundShapeBitmap =
-                Bitmap.createBitmap(
-                        backgroundColorShape(mask), maskWidth, maskHeight, Config.ARGB_8888);
-
-        int scaledWidth = originalImage.getWidth() / 2;
-        int scaledHeight = originalImage.getHeight() / 2;
-
-        Bitmap scaledBackground = Bitmap.createScaledBitmap(backgroundShapeBitmap, scaledWidth, scaledHeight, false);
-        Bitmap scaledOriginal = Bitmap.createScaledBitmap(originalImage, scaledWidth, scaledHeight, false);
-
-        Bitmap output = Bitmap.createBitmap(scaledWidth, scaledHeight, Bitmap.Config.ARGB_8888);
-        Canvas tempCanvas = new Canvas(output);
-
-        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        tempCanvas.drawBitmap(scaledBackground, 0, 0, paint);
+    private float[] mask;
+    private Bitmap originalImage;
+    private int maskWidth;
+    private int maskHeight;
+    private final FramePool pool;
+    private final BoxBlur boxBlur = new BoxBlur();
+    private final Canvas canvas = new Canvas();
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect scaledBounds = new Rect();
+
+    public BackgroundOverlay(FramePool pool) {
+        this.pool = pool;
+    }
 
-        // Keeps the source pixels that cover the destination pixels,
-        // discards the remaining source and destination pixels.
-        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
+    /**
+     * @param mask foreground confidences, {@code maskWidth * maskHeight} values row by row
+     */
+    public void setMask(float[] mask, int maskWidth, int maskHeight) {
+        this.mask = mask;
+        this.maskWidth = maskWidth;
+        this.maskHeight = maskHeight;
+    }
 
-        tempCanvas.drawBitmap(scaledOriginal, 0, 0, paint);
+    /** The unfiltered frame the blurred background is made from. */
+    public void setOriginalImage(Bitmap originalImage) {
+        this.originalImage = originalImage;
+    }
 
-        Bitmap blurredBackgroundBitmap = BitmapEffects.blur(output, 10);
-        Bitmap result = Bitmap.createScaledBitmap(blurredBackgroundBitmap, originalImage.getWidth(), originalImage.getHeight(), true);
+    /**
+     * Blends a blurred copy of the original image behind the foreground of the frame, in place.
+     *
+     * The background is blurred at half resolution and sampled bilinearly, and the mask
+     * confidence of each pixel decides how much of the sharp frame is kept. Everything happens in
+     * a single pass over the frame, so no intermediate full size Bitmaps are needed.
+     */
+    public void composite(int[] frame, int width, int height) {
+        int blurWidth = Math.max(width / 2, 1);
+        int blurHeight = Math.max(height / 2, 1);
+        int[] blurred = blurredBackground(blurWidth, blurHeight);
+
+        int stepX = (blurWidth << 16) / width;
+        int stepY = (blurHeight << 16) / height;
+
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            int maskRow = (y * maskHeight / height) * maskWidth;
+
+            int sy = y * stepY;
+            int y0 = sy >> 16;
+            int y1 = Math.min(y0 + 1, blurHeight - 1);
+            int fy = (sy >> 8) & 0xff;
+            int row0 = y0 * blurWidth;
+            int row1 = y1 * blurWidth;
+
+            int sx = 0;
+            for (int x = 0; x < width; x++, index++, sx += stepX) {
+                float confidence = mask[maskRow + x * maskWidth / width];
+                int alpha = ALPHA_TABLE[(int) (Math.max(0f, Math.min(1f, confidence)) * 255f)];
+                if (alpha == 256) {
+                    continue;
+                }
+
+                int x0 = sx >> 16;
+                int x1 = Math.min(x0 + 1, blurWidth - 1);
+                int fx = (sx >> 8) & 0xff;
+                int background = lerp(
+                        lerp(blurred[row0 + x0], blurred[row0 + x1], fx),
+                        lerp(blurred[row1 + x0], blurred[row1 + x1], fx),
+                        fy);
+
+                frame[index] = alpha == 0 ? background : lerp(background, frame[index], alpha);
+            }
+        }
 
-        canvas.drawBitmap(result, 0, 0, null);
+        pool.releaseInts(blurred);
     }
 
-    @ColorInt
-    private int[] backgroundColorShape(ByteBuffer byteBuffer) {
-        @ColorInt int[] colors = new int[maskWidth * maskHeight];
-        for (int i = 0; i < maskWidth * maskHeight; i++) {
-            // ByteBuffer.getFloat() moves to the next pixel after each call.
-            if (byteBuffer.getFloat() < 0.94) {
-                colors[i] = Color.BLACK;
+    /**
+     * Blends a replacement image behind the foreground of the frame, in place.
+     *
+     * The replacement is already at the frame size, so this is the blur pass without the blur
+     * and the bilinear sampling.
+     *
+     * @param background opaque ARGB pixels, {@code width * height} of them
+     */
+    public void replace(int[] frame, int width, int height, int[] background) {
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            int maskRow = (y * maskHeight / height) * maskWidth;
+            for (int x = 0; x < width; x++, index++) {
+                float confidence = mask[maskRow + x * maskWidth / width];
+                int alpha = ALPHA_TABLE[(int) (Math.max(0f, Math.min(1f, confidence)) * 255f)];
+                if (alpha == 256) {
+                    continue;
+                }
+                frame[index] = alpha == 0
+                        ? background[index]
+                        : lerp(background[index], frame[index], alpha);
             }
         }
-        return colors;
     }
 
+    private int[] blurredBackground(int blurWidth, int blurHeight) {
+        Bitmap scaled = pool.acquireBitmap(blurWidth, blurHeight);
+        scaledBounds.set(0, 0, blurWidth, blurHeight);
+        canvas.setBitmap(scaled);
+        canvas.drawBitmap(originalImage, null, scaledBounds, scalePaint);
+        canvas.setBitmap(null);
+
+        int[] blurred = pool.acquireInts(blurWidth * blurHeight);
+        scaled.getPixels(blurred, 0, blurWidth, 0, 0, blurWidth, blurHeight);
+        pool.releaseBitmap(scaled);
 
+        boxBlur.blur(blurred, blurWidth, blurHeight, BLUR_BOX_RADIUS, BLUR_PASSES);
+        return blurred;
+    }
+
+    /** Interpolates two opaque ARGB colors, weight goes from 0 (all 'from') to 256 (all 'to'). */
+    static int lerp(int from, int to, int weight) {
+        int inverse = 256 - weight;
+        int redBlue = (((from & 0xff00ff) * inverse + (to & 0xff00ff) * weight) >>> 8) & 0xff00ff;
+        int green = (((from & 0xff00) * inverse + (to & 0xff00) * weight) >>> 8) & 0xff00;
+        return 0xff000000 | redBlue | green;
+    }
 }
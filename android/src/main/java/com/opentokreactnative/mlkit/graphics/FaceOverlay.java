@@ -1,92 +1,80 @@
 package com.opentokreactnative.mlkit.graphics;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 
-import com.google.mlkit.vision.face.Face;
-import com.opentokreactnative.mlkit.utils.BitmapEffects;
+import com.opentokreactnative.mlkit.utils.PixelationEngine;
 
 import java.util.List;
 
 public class FaceOverlay {
-    private volatile List<Face> faces;
-    private final Bitmap originalBitmap;
+    // Padding around a face box, relative to its larger side, so the hair and chin are covered
+    // at any distance from the camera.
+    private static final float PADDING_RATIO = 0.2f;
 
-    public FaceOverlay(List<Face> faces, Bitmap original) {
-        this.faces = faces;
-        this.originalBitmap = original;
+    private volatile List<Rect> faces;
+    private volatile List<Rect> regions;
+    private final PixelationEngine pixelationEngine;
+    private final Rect paddedRegion = new Rect();
+
+    public FaceOverlay(PixelationEngine pixelationEngine) {
+        this.pixelationEngine = pixelationEngine;
     }
 
-    public void drawPixelatedFaceBitmap(Canvas canvas) {
-        Bitmap output = Bitmap.createBitmap(originalBitmap.getWidth(),
-                originalBitmap.getHeight(), Bitmap.Config.ARGB_8888);
+    /** Sets the faces of the next frame. The overlay is reused from frame to frame. */
+    public void setFaces(List<Rect> faces) {
+        setFaces(faces, null);
+    }
 
-        Canvas tempCanvas = new Canvas(output);
+    /**
+     * @param regions the rectangle to pixelate around each face, in the same order, or null to
+     *                pad every face box with {@link #padRegion}
+     */
+    public void setFaces(List<Rect> faces, List<Rect> regions) {
+        this.faces = faces;
+        this.regions = regions;
+    }
 
-        Paint paint = new Paint();
-        paint.setColor(Color.WHITE);
-        paint.setAntiAlias(true);
-        paint.setStyle(Paint.Style.FILL);
+    /**
+     * Pixelates a circle around every face, in place and in a single pass over the faces, so the
+     * frame is never copied no matter how many faces were detected.
+     */
+    public void drawPixelatedFaces(int[] frame, int width, int height) {
+        addFaces();
+        pixelationEngine.apply(frame, width, height);
+    }
 
-        for (int i = 0; i < faces.size(); i++) {
-            Face face = faces.get(i);
-            drawHeadPlaceholderCircle(face, tempCanvas, paint);
+    /** Fills the pixelation engine with the face regions without touching any frame. */
+    public void addFaces() {
+        pixelationEngine.clear();
+        List<Rect> regions = this.regions;
+        if (regions != null && regions.size() != faces.size()) {
+            regions = null;
         }
-
-        Bitmap originalWithPixFaces = originalBitmap;
         for (int i = 0; i < faces.size(); i++) {
-            Face face = faces.get(i);
-            originalWithPixFaces = pixelateFace(originalWithPixFaces, face);
+            addFace(faces.get(i), regions != null ? regions.get(i) : null);
         }
-
-        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
-        tempCanvas.drawBitmap(originalWithPixFaces, 0, 0, paint);
-
-        canvas.drawBitmap(output, 0, 0, null);
     }
 
-    private void drawHeadPlaceholderCircle(Face face, Canvas canvas, Paint paint) {
-        Rect boundingBox = face.getBoundingBox();
-        int x = boundingBox.centerX();
-        int y = boundingBox.centerY();
-        float radius = boundingBox.height() / 1.4f;
-
-        canvas.drawCircle(x, y, radius, paint);
+    /** Pads a face box into the region pixelated around it. */
+    public static void padRegion(Rect boundingBox, Rect out) {
+        int padding = Math.round(
+                Math.max(boundingBox.width(), boundingBox.height()) * PADDING_RATIO);
+        out.set(boundingBox.left - padding, boundingBox.top - padding,
+                boundingBox.right + padding, boundingBox.bottom + padding);
     }
 
-    private Bitmap pixelateFace(Bitmap original, Face face) {
-        Rect boundingBox = face.getBoundingBox();
-        int halfWidth = boundingBox.width() / 2;
-        int halfHeight = boundingBox.height() / 2;
-
-        int x = boundingBox.centerX();
-        int y = boundingBox.centerY();
-
-        int headOffset = 25;
-        int left = x - halfWidth - headOffset;
-        int top = y - halfHeight - headOffset;
-        int right = x + halfWidth + headOffset;
-        int bottom = y + halfHeight + headOffset;
-
-        if (left < 0) {
-            left = 0;
-        }
-        if (top < 0) {
-            top = 0;
-        }
-        if (right > original.getWidth()) {
-            right = original.getWidth();
-        }
-        if (bottom > original.getHeight()) {
-            bottom = original.getHeight();
+    private void addFace(Rect boundingBox, Rect region) {
+        if (region == null) {
+            padRegion(boundingBox, paddedRegion);
+            region = paddedRegion;
         }
 
-        return BitmapEffects.pixelate(original, 15, left, top, right, bottom);
+        // Only the head placeholder circle is pixelated, the rest of the region keeps the
+        // original. The circle follows the face, the blocks are aligned on the region.
+        int radius = Math.round(boundingBox.height() / 1.4f);
+
+        pixelationEngine.addRegion(region.left, region.top, region.right, region.bottom,
+                boundingBox.centerX(), boundingBox.centerY(), radius);
     }
 
-}
\ No newline at end of file
+}
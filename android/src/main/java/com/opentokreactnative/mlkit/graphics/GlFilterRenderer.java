@@ -0,0 +1,464 @@
+package com.opentokreactnative.mlkit.graphics;
+
+import android.graphics.Bitmap;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import com.opentokreactnative.mlkit.utils.PixelationEngine;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Runs the video filters as OpenGL ES 2.0 shaders on an offscreen EGL context.
+ *
+ * The camera frame is uploaded as a texture, the background is blurred at half resolution with
+ * a separable Gaussian, and one final pass pixelates the faces and blends the blurred background
+ * behind the segmentation mask. That pass writes its colors swizzled to BGRA, so the bytes read
+ * back by glReadPixels are already laid out as the ARGB ints provideIntArrayFrame expects.
+ *
+ * Only core GLES 2.0 is used: no float textures, no extensions and no GLES 3 readback buffers, so
+ * it also runs on software renderers such as SwiftShader or Mesa llvmpipe. All methods must be
+ * called on the thread that created the renderer.
+ */
+public class GlFilterRenderer {
+
+    /** Most faces a single render takes, the shader has a fixed number of slots. */
+    public static final int MAX_FACES = 8;
+
+    private static final int BLUR_PASSES = 2;
+    private static final float BLUR_SPREAD = 1.5f;
+
+    private static final String VERTEX_SHADER =
+            "attribute vec2 aPosition;\n"
+                    + "varying vec2 vUv;\n"
+                    + "void main() {\n"
+                    + "  vUv = aPosition * 0.5 + 0.5;\n"
+                    + "  gl_Position = vec4(aPosition, 0.0, 1.0);\n"
+                    + "}\n";
+
+    // Nine tap Gaussian folded into five bilinear fetches.
+    private static final String BLUR_SHADER =
+            "precision mediump float;\n"
+                    + "uniform sampler2D uTexture;\n"
+                    + "uniform vec2 uStep;\n"
+                    + "varying vec2 vUv;\n"
+                    + "void main() {\n"
+                    + "  vec4 c = texture2D(uTexture, vUv) * 0.2270270270;\n"
+                    + "  c += texture2D(uTexture, vUv + uStep * 1.3846153846) * 0.3162162162;\n"
+                    + "  c += texture2D(uTexture, vUv - uStep * 1.3846153846) * 0.3162162162;\n"
+                    + "  c += texture2D(uTexture, vUv + uStep * 3.2307692308) * 0.0702702703;\n"
+                    + "  c += texture2D(uTexture, vUv - uStep * 3.2307692308) * 0.0702702703;\n"
+                    + "  gl_FragColor = c;\n"
+                    + "}\n";
+
+    // Faces are averaged from a 4x4 grid of samples per block rather than every pixel, which
+    // is indistinguishable once the block is filled with a single color.
+    private static final String COMPOSITE_SHADER =
+            "#ifdef GL_FRAGMENT_PRECISION_HIGH\n"
+                    + "precision highp float;\n"
+                    + "#else\n"
+                    + "precision mediump float;\n"
+                    + "#endif\n"
+                    + "#define MAX_FACES " + MAX_FACES + "\n"
+                    + "uniform sampler2D uFrame;\n"
+                    + "uniform sampler2D uBlurred;\n"
+                    + "uniform sampler2D uMask;\n"
+                    + "uniform vec2 uSize;\n"
+                    + "uniform float uBlockSize;\n"
+                    + "uniform float uBlurEnabled;\n"
+                    + "uniform vec2 uEdge;\n"
+                    + "uniform int uFaceCount;\n"
+                    + "uniform vec4 uFaceRects[MAX_FACES];\n"
+                    + "uniform vec3 uFaceCircles[MAX_FACES];\n"
+                    + "varying vec2 vUv;\n"
+                    + "vec4 blockAverage(vec2 blockMin, vec2 blockMax) {\n"
+                    + "  vec4 sum = vec4(0.0);\n"
+                    + "  vec2 step = (blockMax - blockMin) / 4.0;\n"
+                    + "  for (int j = 0; j < 4; j++) {\n"
+                    + "    for (int i = 0; i < 4; i++) {\n"
+                    + "      vec2 p = blockMin + step * (vec2(float(i), float(j)) + 0.5);\n"
+                    + "      sum += texture2D(uFrame, p / uSize);\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "  return sum / 16.0;\n"
+                    + "}\n"
+                    + "void main() {\n"
+                    + "  vec2 p = vUv * uSize;\n"
+                    + "  vec4 color = texture2D(uFrame, vUv);\n"
+                    + "  for (int i = 0; i < MAX_FACES; i++) {\n"
+                    + "    if (i >= uFaceCount) break;\n"
+                    + "    vec4 r = uFaceRects[i];\n"
+                    + "    vec3 c = uFaceCircles[i];\n"
+                    + "    if (p.x >= r.x && p.x < r.z && p.y >= r.y && p.y < r.w\n"
+                    + "        && (c.z <= 0.0 || distance(p, c.xy) <= c.z)) {\n"
+                    + "      vec2 blockMin = r.xy + floor((p - r.xy) / uBlockSize) * uBlockSize;\n"
+                    + "      color = blockAverage(blockMin, min(blockMin + uBlockSize, r.zw));\n"
+                    + "      break;\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "  if (uBlurEnabled > 0.5) {\n"
+                    + "    float alpha = smoothstep(uEdge.x, uEdge.y, texture2D(uMask, vUv).r);\n"
+                    + "    color = mix(texture2D(uBlurred, vUv), color, alpha);\n"
+                    + "  }\n"
+                    + "  gl_FragColor = vec4(color.rgb, 1.0).bgra;\n"
+                    + "}\n";
+
+    private static final float[] QUAD = {-1f, -1f, 1f, -1f, -1f, 1f, 1f, 1f};
+
+    private EGLDisplay display = EGL14.EGL_NO_DISPLAY;
+    private EGLContext context = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface surface = EGL14.EGL_NO_SURFACE;
+
+    private final int blurProgram;
+    private final int compositeProgram;
+    private final FloatBuffer quad;
+
+    // Textures: the camera frame, the mask, two half size blur targets and the output.
+    private final int[] textures = new int[5];
+    private final int[] framebuffers = new int[3];
+    private static final int FRAME = 0;
+    private static final int MASK = 1;
+    private static final int BLUR_A = 2;
+    private static final int BLUR_B = 3;
+    private static final int OUTPUT = 4;
+
+    private int width = 0;
+    private int height = 0;
+    private int maskWidth = 0;
+    private int maskHeight = 0;
+    private ByteBuffer maskBytes;
+    private ByteBuffer readback;
+    private IntBuffer readbackInts;
+
+    private final int[] region = new int[7];
+    private final float[] faceRects = new float[MAX_FACES * 4];
+    private final float[] faceCircles = new float[MAX_FACES * 3];
+
+    /**
+     * Creates the EGL context and compiles the shaders.
+     *
+     * @throws IllegalStateException if GLES 2.0 is not available or a shader fails to build
+     */
+    public GlFilterRenderer() {
+        try {
+            setUpEgl();
+            blurProgram = createProgram(VERTEX_SHADER, BLUR_SHADER);
+            compositeProgram = createProgram(VERTEX_SHADER, COMPOSITE_SHADER);
+        } catch (RuntimeException e) {
+            release();
+            throw e;
+        }
+
+        quad = ByteBuffer.allocateDirect(QUAD.length * 4)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        quad.put(QUAD).position(0);
+
+        GLES20.glGenTextures(textures.length, textures, 0);
+        GLES20.glGenFramebuffers(framebuffers.length, framebuffers, 0);
+        for (int texture : textures) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        }
+        checkGlError("texture setup");
+    }
+
+    /**
+     * Renders the filters over the frame and reads the result back as ARGB pixels.
+     *
+     * @param frame       the upright camera frame
+     * @param faces       regions to pixelate, or null; at most MAX_FACES
+     * @param blockSize   pixelation block size, in pixels
+     * @param mask        foreground confidences, or null to skip the background blur
+     * @param edgeLow     confidence below which a pixel is all background
+     * @param edgeHigh    confidence above which a pixel is all foreground
+     * @param out         destination, at least width * height ints
+     */
+    public void render(
+            Bitmap frame,
+            PixelationEngine faces,
+            int blockSize,
+            float[] mask, int maskWidth, int maskHeight,
+            float edgeLow, float edgeHigh,
+            int[] out) {
+        if (faces != null && faces.getRegionCount() > MAX_FACES) {
+            throw new IllegalArgumentException("At most " + MAX_FACES + " faces: "
+                    + faces.getRegionCount());
+        }
+        uploadFrame(frame);
+        boolean blur = mask != null;
+        if (blur) {
+            uploadMask(mask, maskWidth, maskHeight);
+            blurBackground();
+        }
+
+        bindTarget(OUTPUT, 2, width, height);
+        GLES20.glUseProgram(compositeProgram);
+        bindTexture(compositeProgram, "uFrame", 0, textures[FRAME]);
+        bindTexture(compositeProgram, "uBlurred", 1, textures[BLUR_A]);
+        bindTexture(compositeProgram, "uMask", 2, textures[MASK]);
+        GLES20.glUniform2f(uniform(compositeProgram, "uSize"), width, height);
+        GLES20.glUniform1f(uniform(compositeProgram, "uBlockSize"), blockSize);
+        GLES20.glUniform1f(uniform(compositeProgram, "uBlurEnabled"), blur ? 1f : 0f);
+        GLES20.glUniform2f(uniform(compositeProgram, "uEdge"), edgeLow, edgeHigh);
+
+        int faceCount = faces != null ? setFaces(faces) : 0;
+        GLES20.glUniform1i(uniform(compositeProgram, "uFaceCount"), faceCount);
+        GLES20.glUniform4fv(uniform(compositeProgram, "uFaceRects"), MAX_FACES, faceRects, 0);
+        GLES20.glUniform3fv(uniform(compositeProgram, "uFaceCircles"), MAX_FACES, faceCircles, 0);
+        drawQuad(compositeProgram);
+
+        readback.position(0);
+        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, readback);
+        checkGlError("readback");
+        readbackInts.position(0);
+        readbackInts.get(out, 0, width * height);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    /** Destroys the context and everything created in it. */
+    public void release() {
+        if (display == EGL14.EGL_NO_DISPLAY) {
+            return;
+        }
+        if (context != EGL14.EGL_NO_CONTEXT) {
+            GLES20.glDeleteFramebuffers(framebuffers.length, framebuffers, 0);
+            GLES20.glDeleteTextures(textures.length, textures, 0);
+            EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE,
+                    EGL14.EGL_NO_CONTEXT);
+            EGL14.eglDestroyContext(display, context);
+        }
+        if (surface != EGL14.EGL_NO_SURFACE) {
+            EGL14.eglDestroySurface(display, surface);
+        }
+        EGL14.eglReleaseThread();
+        EGL14.eglTerminate(display);
+        display = EGL14.EGL_NO_DISPLAY;
+        context = EGL14.EGL_NO_CONTEXT;
+        surface = EGL14.EGL_NO_SURFACE;
+    }
+
+    private void setUpEgl() {
+        display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if (display == EGL14.EGL_NO_DISPLAY || !EGL14.eglInitialize(display, version, 0, version, 1)) {
+            throw new IllegalStateException("Unable to initialize EGL");
+        }
+
+        int[] configAttributes = {
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_PBUFFER_BIT,
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configCount = new int[1];
+        if (!EGL14.eglChooseConfig(display, configAttributes, 0, configs, 0, 1, configCount, 0)
+                || configCount[0] == 0) {
+            throw new IllegalStateException("No EGL config for GLES 2.0 pbuffers");
+        }
+
+        int[] contextAttributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        context = EGL14.eglCreateContext(display, configs[0], EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        if (context == null || context == EGL14.EGL_NO_CONTEXT) {
+            context = EGL14.EGL_NO_CONTEXT;
+            throw new IllegalStateException("Unable to create a GLES 2.0 context");
+        }
+
+        // Everything is drawn into framebuffer objects, the pbuffer only makes the context current.
+        int[] surfaceAttributes = {EGL14.EGL_WIDTH, 1, EGL14.EGL_HEIGHT, 1, EGL14.EGL_NONE};
+        surface = EGL14.eglCreatePbufferSurface(display, configs[0], surfaceAttributes, 0);
+        if (surface == null || surface == EGL14.EGL_NO_SURFACE) {
+            surface = EGL14.EGL_NO_SURFACE;
+            throw new IllegalStateException("Unable to create a pbuffer surface");
+        }
+        if (!EGL14.eglMakeCurrent(display, surface, surface, context)) {
+            throw new IllegalStateException("Unable to make the EGL context current");
+        }
+    }
+
+    private void uploadFrame(Bitmap frame) {
+        int frameWidth = frame.getWidth();
+        int frameHeight = frame.getHeight();
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[FRAME]);
+        if (frameWidth != width || frameHeight != height) {
+            width = frameWidth;
+            height = frameHeight;
+            GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, frame, 0);
+            allocateTexture(textures[OUTPUT], width, height);
+            allocateTexture(textures[BLUR_A], Math.max(width / 2, 1), Math.max(height / 2, 1));
+            allocateTexture(textures[BLUR_B], Math.max(width / 2, 1), Math.max(height / 2, 1));
+            readback = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+            readbackInts = readback.asIntBuffer();
+        } else {
+            GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, frame);
+        }
+        checkGlError("frame upload");
+    }
+
+    /** Uploads the mask as 8 bit luminance, float textures are not part of core GLES 2.0. */
+    private void uploadMask(float[] mask, int maskWidth, int maskHeight) {
+        int size = maskWidth * maskHeight;
+        if (maskBytes == null || maskBytes.capacity() < size) {
+            maskBytes = ByteBuffer.allocateDirect(size);
+        }
+        for (int i = 0; i < size; i++) {
+            float confidence = Math.max(0f, Math.min(1f, mask[i]));
+            maskBytes.put(i, (byte) (confidence * 255f));
+        }
+        maskBytes.position(0);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[MASK]);
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        if (maskWidth != this.maskWidth || maskHeight != this.maskHeight) {
+            this.maskWidth = maskWidth;
+            this.maskHeight = maskHeight;
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE, maskWidth, maskHeight,
+                    0, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, maskBytes);
+        } else {
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, maskWidth, maskHeight,
+                    GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, maskBytes);
+        }
+        checkGlError("mask upload");
+    }
+
+    /** Ping-pongs between the two half size targets, the result always ends up in BLUR_A. */
+    private void blurBackground() {
+        int blurWidth = Math.max(width / 2, 1);
+        int blurHeight = Math.max(height / 2, 1);
+        GLES20.glUseProgram(blurProgram);
+        int step = uniform(blurProgram, "uStep");
+
+        int source = textures[FRAME];
+        for (int pass = 0; pass < BLUR_PASSES; pass++) {
+            bindTarget(BLUR_B, 1, blurWidth, blurHeight);
+            bindTexture(blurProgram, "uTexture", 0, source);
+            GLES20.glUniform2f(step, BLUR_SPREAD / blurWidth, 0f);
+            drawQuad(blurProgram);
+
+            bindTarget(BLUR_A, 0, blurWidth, blurHeight);
+            bindTexture(blurProgram, "uTexture", 0, textures[BLUR_B]);
+            GLES20.glUniform2f(step, 0f, BLUR_SPREAD / blurHeight);
+            drawQuad(blurProgram);
+
+            source = textures[BLUR_A];
+        }
+        checkGlError("blur");
+    }
+
+    private int setFaces(PixelationEngine faces) {
+        int count = faces.getRegionCount();
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            faces.getRegion(i, region);
+            // Same clamping as PixelationEngine, so the blocks line up with the CPU path.
+            int left = Math.max(region[0], 0);
+            int top = Math.max(region[1], 0);
+            int right = Math.min(region[2], width);
+            int bottom = Math.min(region[3], height);
+            if (right <= left || bottom <= top) {
+                continue;
+            }
+            faceRects[used * 4] = left;
+            faceRects[used * 4 + 1] = top;
+            faceRects[used * 4 + 2] = right;
+            faceRects[used * 4 + 3] = bottom;
+            faceCircles[used * 3] = region[4];
+            faceCircles[used * 3 + 1] = region[5];
+            faceCircles[used * 3 + 2] = region[6];
+            used++;
+        }
+        return used;
+    }
+
+    private void allocateTexture(int texture, int textureWidth, int textureHeight) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, textureWidth, textureHeight,
+                0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+    }
+
+    private void bindTarget(int texture, int framebuffer, int targetWidth, int targetHeight) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[framebuffer]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, textures[texture], 0);
+        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            throw new IllegalStateException("Incomplete framebuffer: " + status);
+        }
+        GLES20.glViewport(0, 0, targetWidth, targetHeight);
+    }
+
+    private void bindTexture(int program, String name, int unit, int texture) {
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        GLES20.glUniform1i(uniform(program, name), unit);
+    }
+
+    private void drawQuad(int program) {
+        int position = GLES20.glGetAttribLocation(program, "aPosition");
+        GLES20.glEnableVertexAttribArray(position);
+        GLES20.glVertexAttribPointer(position, 2, GLES20.GL_FLOAT, false, 0, quad);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        GLES20.glDisableVertexAttribArray(position);
+    }
+
+    private static int uniform(int program, String name) {
+        return GLES20.glGetUniformLocation(program, name);
+    }
+
+    private static int createProgram(String vertexSource, String fragmentSource) {
+        int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        int[] linked = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linked, 0);
+        if (linked[0] == 0) {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            throw new IllegalStateException("Unable to link program: " + log);
+        }
+        return program;
+    }
+
+    private static int compileShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] compiled = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        if (compiled[0] == 0) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IllegalStateException("Unable to compile shader: " + log);
+        }
+        return shader;
+    }
+
+    private static void checkGlError(String operation) {
+        int error = GLES20.glGetError();
+        if (error != GLES20.GL_NO_ERROR) {
+            throw new IllegalStateException(operation + " failed with GL error " + error);
+        }
+    }
+}
@@ -1,78 +1,324 @@
 package com.opentokreactnative.mlkit.graphics;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
 
-import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.segmentation.SegmentationMask;
+import com.opentokreactnative.mlkit.utils.FramePool;
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
+import com.opentokreactnative.mlkit.utils.PixelationEngine;
 
 import java.util.List;
 
 public class VideoOverlay {
-    private Canvas canvas;
-    private Bitmap outputBitmap;
+    private static final String TAG = "VideoOverlay";
+    private static final int PIXELATION_BLOCK_SIZE = 15;
+
+    public enum Backend {
+        CPU,
+        GPU
+    }
+
     private int width = 0;
     private int height = 0;
     private int[] frame;
 
     private Bitmap currentBitmap;
-    private FaceOverlay faceOverlay = null;
-    private BackgroundOverlay backgroundOverlay = null;
+    // Both overlays live as long as this one and are reconfigured for every frame.
+    private final FaceOverlay faceOverlay;
+    private final BackgroundOverlay backgroundOverlay;
+    private boolean hasFaces = false;
+    private float[] mask = null;
+    private int maskWidth = 0;
+    private int maskHeight = 0;
+    private int[] replacement = null;
+    private float strength = 1f;
+    // Scratch of the region crossfade, kept between frames.
+    private final int[] region = new int[7];
+    private int[] regionBounds = new int[4 * 4];
+    private int[] spanLefts = new int[4];
+    private int[] spanRights = new int[4];
+
+    // The GL context belongs to the thread that composites, it is created and released there.
+    private volatile Backend backend = Backend.CPU;
+    private GlFilterRenderer glRenderer;
+    private boolean gpuUnavailable = false;
+    private final FramePool pool;
+    private final PixelationEngine pixelationEngine = new PixelationEngine(PIXELATION_BLOCK_SIZE);
+    private final LatencyHistogram faceOverlayLatency;
+    private final LatencyHistogram backgroundOverlayLatency;
+    private final LatencyHistogram gpuFiltersLatency;
+
+    public VideoOverlay(FramePool pool, PipelineStats stats) {
+        this.pool = pool;
+        faceOverlay = new FaceOverlay(pixelationEngine);
+        backgroundOverlay = new BackgroundOverlay(pool);
+        faceOverlayLatency = stats.stage(PipelineStats.FACE_OVERLAY);
+        backgroundOverlayLatency = stats.stage(PipelineStats.BACKGROUND_OVERLAY);
+        gpuFiltersLatency = stats.stage(PipelineStats.GPU_FILTERS);
+    }
+
+    /**
+     * Selects where the filters are rendered. GPU falls back to CPU for good if the device can't
+     * create a GLES 2.0 context or rendering fails.
+     */
+    public void setBackend(Backend backend) {
+        this.backend = backend;
+    }
 
-    public VideoOverlay() {
+    public Backend getBackend() {
+        return backend;
     }
 
     public void setBitmap(Bitmap bitmap) {
         currentBitmap = bitmap;
+        backgroundOverlay.setOriginalImage(bitmap);
     }
 
-    public void setFaces(List<Face> faces) {
-        if (faces != null) {
-            faceOverlay = new FaceOverlay(faces, currentBitmap);
-        } else {
-            faceOverlay = null;
-        }
+    public void setFaces(List<Rect> faces) {
+        setFaces(faces, null);
     }
 
-    public void setSegmentationMask(SegmentationMask mask) {
-        if (mask != null) {
-            backgroundOverlay = new BackgroundOverlay(mask, currentBitmap);
-        } else {
-            backgroundOverlay = null;
-        }
+    /**
+     * @param regions the rectangle to pixelate around each face, in the same order, or null to
+     *                pad the faces of this frame
+     */
+    public void setFaces(List<Rect> faces, List<Rect> regions) {
+        faceOverlay.setFaces(faces, regions);
+        hasFaces = faces != null;
+    }
+
+    /** Sets the foreground confidences, row by row, or null to leave the background as it is. */
+    public void setSegmentationMask(float[] mask, int maskWidth, int maskHeight) {
+        this.mask = mask;
+        this.maskWidth = maskWidth;
+        this.maskHeight = maskHeight;
+        backgroundOverlay.setMask(mask, maskWidth, maskHeight);
+    }
+
+    /**
+     * Sets the image that replaces the background, at the frame size, or null to blur the
+     * background instead. Only used while a segmentation mask is set.
+     */
+    public void setBackgroundReplacement(int[] replacement) {
+        this.replacement = replacement;
+    }
+
+    /**
+     * Sets how much of the filtered frame is kept over the camera frame, from 0 (the camera frame
+     * as it is) to 1 (fully filtered), for crossfades.
+     */
+    public void setStrength(float strength) {
+        this.strength = Math.max(0f, Math.min(1f, strength));
     }
 
     public int[] getFrame() {
-        applyOverlays();
-        if (outputBitmap != null) {
-            outputBitmap.getPixels(frame, 0, width, 0, 0, width, height);
+        updateFrameSizeIfNeeded();
+
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        boolean filtering = hasFaces || mask != null;
+        if (!filtering || strength <= 0f) {
+            currentBitmap.getPixels(frame, 0, width, 0, 0, width, height);
             return frame;
         }
 
-        return null;
+        boolean replacing = mask != null && replacement != null
+                && replacement.length == width * height;
+        // With faces only, everything outside the face regions is the camera frame, so the work
+        // stays in those regions on the CPU. The GPU would upload and read back the whole frame.
+        boolean facesOnly = mask == null;
+
+        if (backend == Backend.GPU) {
+            // Replacing needs no blur, the GPU pixelates faces and the CPU blends the image in.
+            if (!facesOnly && renderOnGpu(replacing ? null : mask)) {
+                if (replacing) {
+                    replaceBackground();
+                }
+                crossfade(false);
+                return frame;
+            }
+        } else if (glRenderer != null) {
+            releaseGlRenderer();
+        }
+
+        // Every overlay works in place on the same frame buffer, in drawing order.
+        currentBitmap.getPixels(frame, 0, width, 0, 0, width, height);
+
+        if (hasFaces) {
+            long startNanos = SystemClock.elapsedRealtimeNanos();
+            faceOverlay.drawPixelatedFaces(frame, width, height);
+            faceOverlayLatency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+        }
+
+        if (replacing) {
+            replaceBackground();
+        } else if (mask != null) {
+            long startNanos = SystemClock.elapsedRealtimeNanos();
+            backgroundOverlay.composite(frame, width, height);
+            backgroundOverlayLatency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+        }
+        crossfade(facesOnly);
+        return frame;
     }
 
-    private void applyOverlays() {
-        updateBitmapSizeIfNeeded();
+    /**
+     * Blends the filtered frame over the camera frame by the current strength.
+     *
+     * @param facesOnly whether only the pixelated regions differ from the camera frame
+     */
+    private void crossfade(boolean facesOnly) {
+        if (strength >= 1f) {
+            return;
+        }
+        int weight = Math.round(strength * 256f);
+        if (facesOnly) {
+            crossfadeRegions(weight);
+            return;
+        }
+        int[] original = pool.acquireInts(width * height);
+        currentBitmap.getPixels(original, 0, width, 0, 0, width, height);
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = BackgroundOverlay.lerp(original[i], frame[i], weight);
+        }
+        pool.releaseInts(original);
+    }
 
-        if (width <= 0 || height <= 0) {
-            outputBitmap = null;
+    /**
+     * Crossfades the pixelated regions only. Overlapping regions are blended once, row by row
+     * over the union of their spans, and only their pixels are read back from the camera frame.
+     */
+    private void crossfadeRegions(int weight) {
+        int count = pixelationEngine.getRegionCount();
+        if (count == 0) {
             return;
         }
+        if (regionBounds.length < count * 4) {
+            regionBounds = new int[count * 4];
+            spanLefts = new int[count];
+            spanRights = new int[count];
+        }
+
+        int[] original = pool.acquireInts(width * height);
+        int firstRow = height;
+        int lastRow = 0;
+        for (int i = 0; i < count; i++) {
+            pixelationEngine.getRegion(i, region);
+            int left = Math.max(region[0], 0);
+            int top = Math.max(region[1], 0);
+            int right = Math.min(region[2], width);
+            int bottom = Math.min(region[3], height);
+            if (right <= left || bottom <= top) {
+                right = left;
+                bottom = top;
+            } else {
+                currentBitmap.getPixels(original, top * width + left, width,
+                        left, top, right - left, bottom - top);
+                firstRow = Math.min(firstRow, top);
+                lastRow = Math.max(lastRow, bottom);
+            }
+            regionBounds[i * 4] = left;
+            regionBounds[i * 4 + 1] = top;
+            regionBounds[i * 4 + 2] = right;
+            regionBounds[i * 4 + 3] = bottom;
+        }
+
+        for (int y = firstRow; y < lastRow; y++) {
+            // Spans of the regions on this row, sorted by their left edge.
+            int spans = 0;
+            for (int i = 0; i < count; i++) {
+                int offset = i * 4;
+                if (y < regionBounds[offset + 1] || y >= regionBounds[offset + 3]) {
+                    continue;
+                }
+                int left = regionBounds[offset];
+                int right = regionBounds[offset + 2];
+                int j = spans++;
+                while (j > 0 && spanLefts[j - 1] > left) {
+                    spanLefts[j] = spanLefts[j - 1];
+                    spanRights[j] = spanRights[j - 1];
+                    j--;
+                }
+                spanLefts[j] = left;
+                spanRights[j] = right;
+            }
+
+            int rowStart = y * width;
+            int blended = 0;
+            for (int s = 0; s < spans; s++) {
+                for (int x = Math.max(spanLefts[s], blended); x < spanRights[s]; x++) {
+                    int index = rowStart + x;
+                    frame[index] = BackgroundOverlay.lerp(original[index], frame[index], weight);
+                }
+                blended = Math.max(blended, spanRights[s]);
+            }
+        }
+        pool.releaseInts(original);
+    }
+
+    private void replaceBackground() {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        backgroundOverlay.replace(frame, width, height, replacement);
+        backgroundOverlayLatency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+    }
+
+    /** Releases the GL context, if any. Must be called on the thread that composites. */
+    public void release() {
+        releaseGlRenderer();
+    }
 
-        canvas.drawBitmap(currentBitmap, 0, 0, null);
+    private boolean renderOnGpu(float[] mask) {
+        if (glRenderer == null) {
+            if (gpuUnavailable) {
+                return false;
+            }
+            try {
+                glRenderer = new GlFilterRenderer();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "GPU filters unavailable, using the CPU instead.", e);
+                gpuUnavailable = true;
+                return false;
+            }
+        }
 
-        if (faceOverlay != null) {
-            faceOverlay.drawPixelatedFaceBitmap(canvas);
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        try {
+            PixelationEngine faces = null;
+            if (hasFaces) {
+                faceOverlay.addFaces();
+                if (pixelationEngine.getRegionCount() > GlFilterRenderer.MAX_FACES) {
+                    // The shader has no slot for the extra faces, this frame is composited on
+                    // the CPU so that every face stays pixelated.
+                    return false;
+                }
+                faces = pixelationEngine;
+            }
+            glRenderer.render(currentBitmap, faces, PIXELATION_BLOCK_SIZE,
+                    mask, maskWidth, maskHeight,
+                    BackgroundOverlay.EDGE_LOW, BackgroundOverlay.EDGE_HIGH, frame);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "GPU filters failed, using the CPU instead.", e);
+            releaseGlRenderer();
+            gpuUnavailable = true;
+            return false;
         }
+        gpuFiltersLatency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+        return true;
+    }
 
-        if (backgroundOverlay != null) {
-            backgroundOverlay.drawBlurredBackground(canvas);
+    private void releaseGlRenderer() {
+        if (glRenderer != null) {
+            glRenderer.release();
+            glRenderer = null;
         }
     }
 
-    private void updateBitmapSizeIfNeeded() {
-        if (outputBitmap == null || currentBitmap.getWidth() != width || currentBitmap.getHeight() != height) {
+    private void updateFrameSizeIfNeeded() {
+        if (frame == null || currentBitmap.getWidth() != width || currentBitmap.getHeight() != height) {
             width = currentBitmap.getWidth();
             height = currentBitmap.getHeight();
 
@@ -80,16 +326,11 @@ public class VideoOverlay {
                 return;
             }
 
-            if (outputBitmap != null) {
-                outputBitmap.recycle();
-                outputBitmap = null;
-            }
-
-            outputBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            canvas = new Canvas(outputBitmap);
+            // Buffers sized for the previous preview size won't be asked for again.
+            pool.evictAll();
 
             frame = new int[width * height];
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package com.opentokreactnative.mlkit.processors;
+
+import androidx.annotation.NonNull;
+
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+
+/**
+ * Face detector settings used for face pixelation. Pixelation only needs bounding boxes, so
+ * landmarks, contours and classification are always left off.
+ */
+public class FaceDetectorProfile {
+
+    public static final float DEFAULT_MIN_FACE_SIZE = 0.1f;
+
+    public static final FaceDetectorProfile DEFAULT =
+            new FaceDetectorProfile(false, DEFAULT_MIN_FACE_SIZE, false);
+
+    private final boolean fast;
+    private final float minFaceSize;
+    private final boolean trackingEnabled;
+
+    /**
+     * @param fast            favor speed over accuracy
+     * @param minFaceSize     smallest face to detect, as a ratio of the head width to the image
+     *                        width
+     * @param trackingEnabled assign tracking ids, which also lets boxes be interpolated between
+     *                        detections
+     */
+    public FaceDetectorProfile(boolean fast, float minFaceSize, boolean trackingEnabled) {
+        this.fast = fast;
+        this.minFaceSize = minFaceSize;
+        this.trackingEnabled = trackingEnabled;
+    }
+
+    public boolean isFast() {
+        return fast;
+    }
+
+    public float getMinFaceSize() {
+        return minFaceSize;
+    }
+
+    public boolean isTrackingEnabled() {
+        return trackingEnabled;
+    }
+
+    FaceDetectorOptions toOptions() {
+        FaceDetectorOptions.Builder builder = new FaceDetectorOptions.Builder()
+                .setPerformanceMode(fast
+                        ? FaceDetectorOptions.PERFORMANCE_MODE_FAST
+                        : FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
+                .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE)
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+                .setMinFaceSize(minFaceSize);
+        if (trackingEnabled) {
+            builder.enableTracking();
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FaceDetectorProfile)) {
+            return false;
+        }
+        FaceDetectorProfile other = (FaceDetectorProfile) o;
+        return fast == other.fast
+                && Float.compare(minFaceSize, other.minFaceSize) == 0
+                && trackingEnabled == other.trackingEnabled;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = fast ? 1 : 0;
+        result = 31 * result + Float.floatToIntBits(minFaceSize);
+        result = 31 * result + (trackingEnabled ? 1 : 0);
+        return result;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return (fast ? "fast" : "accurate") + "/" + minFaceSize + (trackingEnabled ? "/tracking" : "");
+    }
+}
@@ -0,0 +1,186 @@
+package com.opentokreactnative.mlkit.processors;
+
+import android.graphics.Rect;
+import android.util.SparseArray;
+
+import com.google.mlkit.vision.face.Face;
+import com.opentokreactnative.mlkit.graphics.FaceOverlay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Follows faces across detections by their ML Kit tracking id, and extrapolates their boxes to
+ * the frames that are composited in between two detections.
+ *
+ * Each track remembers its last two boxes and when they were captured, and moves linearly from
+ * there. Extrapolation is capped so a face that stopped being detected does not drift away.
+ * Faces without a tracking id are returned as they were detected. Rects are recycled between
+ * calls, so the returned list is only valid until the next call.
+ *
+ * Each track also carries the region pixelated around its face from frame to frame. The region
+ * only moves once the padded face leaves it, so the pixelation blocks stay put while the face
+ * moves a little, instead of shimmering with every pixel it moves.
+ */
+class FaceTracker {
+
+    private static final long MAX_EXTRAPOLATION_MS = 250;
+    // A new region is the padded face grown by this much of its size on each side.
+    private static final float REGION_SLACK_RATIO = 0.1f;
+    // A region is replaced when the padded face covers less than this much of it.
+    private static final float MIN_REGION_COVERAGE = 0.5f;
+
+    private final SparseArray<Track> tracks = new SparseArray<>();
+    private final ArrayList<Rect> untracked = new ArrayList<>();
+    private final ArrayList<Rect> boxes = new ArrayList<>();
+    private final ArrayList<Rect> regions = new ArrayList<>();
+    private final ArrayList<Rect> spareRects = new ArrayList<>();
+    private int generation = 0;
+
+    /** Feeds the faces detected on the frame captured at frameTimeMs. */
+    void update(List<Face> faces, long frameTimeMs) {
+        beginUpdate();
+        for (int i = 0; i < faces.size(); i++) {
+            Face face = faces.get(i);
+            addFace(face.getTrackingId(), face.getBoundingBox(), frameTimeMs);
+        }
+        endUpdate();
+    }
+
+    /** Starts feeding the faces of a detection, each one through {@link #addFace}. */
+    void beginUpdate() {
+        generation++;
+        recycle(untracked);
+    }
+
+    /** @param trackingId the ML Kit tracking id, or null if the face has none */
+    void addFace(Integer trackingId, Rect box, long frameTimeMs) {
+        if (trackingId == null) {
+            Rect rect = obtainRect();
+            rect.set(box);
+            untracked.add(rect);
+            return;
+        }
+
+        Track track = tracks.get(trackingId);
+        if (track == null) {
+            track = new Track();
+            tracks.put(trackingId, track);
+        }
+        track.push(box, frameTimeMs);
+        track.generation = generation;
+    }
+
+    /** Ends a detection, faces that were not fed since {@link #beginUpdate} are gone. */
+    void endUpdate() {
+        for (int i = tracks.size() - 1; i >= 0; i--) {
+            if (tracks.valueAt(i).generation != generation) {
+                tracks.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Returns where every known face is expected to be at timeMs. See {@link #getRegions()} for
+     * the regions around them.
+     */
+    List<Rect> boxesAt(long timeMs) {
+        recycle(boxes);
+        recycle(regions);
+        for (int i = 0; i < tracks.size(); i++) {
+            Track track = tracks.valueAt(i);
+            Rect rect = obtainRect();
+            track.predict(timeMs, rect);
+            track.updateRegion(rect);
+            boxes.add(rect);
+            Rect region = obtainRect();
+            region.set(track.region);
+            regions.add(region);
+        }
+        for (int i = 0; i < untracked.size(); i++) {
+            Rect rect = obtainRect();
+            rect.set(untracked.get(i));
+            boxes.add(rect);
+            Rect region = obtainRect();
+            FaceOverlay.padRegion(rect, region);
+            regions.add(region);
+        }
+        return boxes;
+    }
+
+    /** The region to pixelate around each box returned by the last {@link #boxesAt}, in order. */
+    List<Rect> getRegions() {
+        return regions;
+    }
+
+    void clear() {
+        tracks.clear();
+        recycle(untracked);
+        recycle(boxes);
+        recycle(regions);
+    }
+
+    private Rect obtainRect() {
+        int last = spareRects.size() - 1;
+        return last >= 0 ? spareRects.remove(last) : new Rect();
+    }
+
+    private void recycle(ArrayList<Rect> rects) {
+        spareRects.addAll(rects);
+        rects.clear();
+    }
+
+    private static class Track {
+        final Rect last = new Rect();
+        final Rect previous = new Rect();
+        final Rect region = new Rect();
+        final Rect padded = new Rect();
+        boolean hasRegion = false;
+        long lastTimeMs;
+        long previousTimeMs;
+        boolean hasPrevious = false;
+        int generation;
+
+        void push(Rect box, long timeMs) {
+            if (timeMs <= lastTimeMs && hasPrevious) {
+                last.set(box);
+                return;
+            }
+            previous.set(last);
+            previousTimeMs = lastTimeMs;
+            hasPrevious = lastTimeMs != 0;
+            last.set(box);
+            lastTimeMs = timeMs;
+        }
+
+        void predict(long timeMs, Rect out) {
+            long span = lastTimeMs - previousTimeMs;
+            if (!hasPrevious || span <= 0) {
+                out.set(last);
+                return;
+            }
+            long elapsed = Math.max(0, Math.min(timeMs - lastTimeMs, MAX_EXTRAPOLATION_MS));
+            float factor = (float) elapsed / span;
+            out.set(
+                    last.left + Math.round((last.left - previous.left) * factor),
+                    last.top + Math.round((last.top - previous.top) * factor),
+                    last.right + Math.round((last.right - previous.right) * factor),
+                    last.bottom + Math.round((last.bottom - previous.bottom) * factor));
+        }
+
+        /** Keeps the region while the padded box stays inside it and fills enough of it. */
+        void updateRegion(Rect box) {
+            FaceOverlay.padRegion(box, padded);
+            if (hasRegion && region.contains(padded)
+                    && (long) padded.width() * padded.height()
+                    >= MIN_REGION_COVERAGE * region.width() * region.height()) {
+                return;
+            }
+            int slackX = Math.round(padded.width() * REGION_SLACK_RATIO);
+            int slackY = Math.round(padded.height() * REGION_SLACK_RATIO);
+            region.set(padded.left - slackX, padded.top - slackY,
+                    padded.right + slackX, padded.bottom + slackY);
+            hasRegion = true;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.opentokreactnative.mlkit.processors;
+
+import android.os.SystemClock;
+
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+
+/**
+ * Turns filters being switched on or off into a smooth pipeline transition.
+ *
+ * Turning filters on routes the camera frames through the pipeline right away, and the frames
+ * are delivered unfiltered while the detectors warm up. The first results start a crossfade from
+ * the unfiltered frames to the filtered ones. Turning filters off crossfades back with the last
+ * filter inputs, and only then hands the camera frames straight to the publisher again. The
+ * output switches between NV21 and ARGB on a single frame and never waits for a cold detector.
+ *
+ * Routing is read from any thread. Fades advance on the thread that composites.
+ */
+public class FilterTransition {
+
+    public enum State {
+        /** Camera frames go straight to the publisher. */
+        PASSTHROUGH,
+        /** Frames go through the pipeline unfiltered until the first results. */
+        WARMING_UP,
+        FADING_IN,
+        FILTERED,
+        /** Filters are off, the output fades back to the camera frames. */
+        FADING_OUT
+    }
+
+    public static final long FADE_MS = 300;
+
+    private final Runnable warmUp;
+    private final LatencyHistogram warmUpLatency;
+    private final LatencyHistogram transitionLatency;
+
+    private State state = State.PASSTHROUGH;
+    private float strength = 0f;
+    private float fadeFrom;
+    private long fadeStartMs;
+    private long transitionStartNanos;
+    // The fade out is complete, but its last frame is still on its way to the publisher.
+    private boolean fadedOut;
+
+    /**
+     * @param warmUp called when filters are turned on from passthrough
+     * @param warmUpLatency time from filters being turned on to their first results
+     * @param transitionLatency time from a toggle to its fade being complete
+     */
+    FilterTransition(Runnable warmUp, LatencyHistogram warmUpLatency,
+                     LatencyHistogram transitionLatency) {
+        this.warmUp = warmUp;
+        this.warmUpLatency = warmUpLatency;
+        this.transitionLatency = transitionLatency;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /** Whether camera frames should go through the pipeline rather than straight out. */
+    public synchronized boolean isRouting() {
+        return state != State.PASSTHROUGH;
+    }
+
+    /** Whether the filter inputs should be kept as they are, since the filters were turned off. */
+    synchronized boolean isFadingOut() {
+        return state == State.FADING_OUT;
+    }
+
+    /** Called from any thread whenever a filter is turned on or off. */
+    synchronized void onFiltersChanged(boolean enabled) {
+        switch (state) {
+            case PASSTHROUGH:
+                if (enabled) {
+                    state = State.WARMING_UP;
+                    strength = 0f;
+                    transitionStartNanos = SystemClock.elapsedRealtimeNanos();
+                    warmUp.run();
+                }
+                break;
+            case WARMING_UP:
+            case FADING_IN:
+            case FILTERED:
+                // Even with nothing filtered yet, fading out lets the frames in flight drain
+                // before the camera frames go straight out again.
+                if (!enabled) {
+                    startFade(State.FADING_OUT);
+                }
+                break;
+            case FADING_OUT:
+                if (enabled) {
+                    startFade(State.FADING_IN);
+                }
+                break;
+        }
+    }
+
+    /** Called on the composite thread when results are available for the frame. */
+    synchronized void onResults() {
+        if (state == State.WARMING_UP) {
+            warmUpLatency.record((SystemClock.elapsedRealtimeNanos() - transitionStartNanos) / 1000);
+            strength = 0f;
+            fadeFrom = 0f;
+            fadeStartMs = SystemClock.elapsedRealtime();
+            state = State.FADING_IN;
+        }
+    }
+
+    /**
+     * Advances the fade for the frame being composited. Returns the weight of the filtered frame
+     * over the camera frame, in [0, 1], or a negative value when the frame must not be delivered
+     * because the camera frames already go straight out.
+     */
+    synchronized float update() {
+        switch (state) {
+            case PASSTHROUGH:
+                return -1f;
+            case WARMING_UP:
+                strength = 0f;
+                return strength;
+            case FILTERED:
+                strength = 1f;
+                return strength;
+            default:
+                break;
+        }
+
+        boolean in = state == State.FADING_IN;
+        float progress = Math.min(1f, (float) (SystemClock.elapsedRealtime() - fadeStartMs) / FADE_MS);
+        float target = in ? 1f : 0f;
+        strength = fadeFrom + (target - fadeFrom) * progress;
+        if (progress >= 1f && !fadedOut) {
+            // Fading out only ends in completeFadeOut, once this last frame is delivered.
+            if (in) {
+                state = State.FILTERED;
+            } else {
+                fadedOut = true;
+            }
+            transitionLatency.record((SystemClock.elapsedRealtimeNanos() - transitionStartNanos) / 1000);
+        }
+        return strength;
+    }
+
+    /**
+     * Called on the composite thread once a frame fading out was handed to the publisher. After
+     * the last one, camera frames go straight out again, so no pipeline frame can follow a newer
+     * camera frame.
+     */
+    synchronized void completeFadeOut() {
+        if (state == State.FADING_OUT && fadedOut) {
+            state = State.PASSTHROUGH;
+            fadedOut = false;
+        }
+    }
+
+    private void startFade(State fade) {
+        fadeFrom = strength;
+        fadeStartMs = SystemClock.elapsedRealtime();
+        transitionStartNanos = SystemClock.elapsedRealtimeNanos();
+        fadedOut = false;
+        state = fade;
+    }
+}
@@ -2,6 +2,10 @@ package com.opentokreactnative.mlkit.processors;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.media.Image;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -12,7 +16,6 @@ import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetector;
-import com.google.mlkit.vision.face.FaceDetectorOptions;
 import com.google.mlkit.vision.segmentation.Segmentation;
 import com.google.mlkit.vision.segmentation.SegmentationMask;
 import com.google.mlkit.vision.segmentation.Segmenter;
@@ -20,32 +23,125 @@ import com.google.mlkit.vision.segmentation.selfie.SelfieSegmenterOptions;
 import com.opentokreactnative.mlkit.graphics.VideoOverlay;
 import com.opentokreactnative.mlkit.processors.base.ProcessorFrameListener;
 import com.opentokreactnative.mlkit.processors.base.VisionProcessorBase;
+import com.opentokreactnative.mlkit.utils.BackgroundImageCache;
+import com.opentokreactnative.mlkit.utils.FramePool;
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+import com.opentokreactnative.mlkit.utils.MaskCache;
+import com.opentokreactnative.mlkit.utils.Nv21Downscaler;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 public class VideoFiltersProcessor extends VisionProcessorBase<List<Task<?>>> {
 
-    private FaceDetector faceDetector;
+    private static final String TAG = "VideoFiltersProcessor";
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    public static final int DEFAULT_FACE_INFERENCE_WIDTH = 320;
+    public static final int DEFAULT_SEGMENTATION_INFERENCE_SIZE = 256;
+
+    private volatile FaceDetector faceDetector;
+    private volatile FaceDetectorProfile faceDetectorProfile = FaceDetectorProfile.DEFAULT;
+    private final Map<FaceDetectorProfile, LatencyHistogram> faceDetectionLatencies =
+            new ConcurrentHashMap<>();
+    // The tracker lives on the composite thread, other threads only ask for it to be reset.
+    private final FaceTracker faceTracker = new FaceTracker();
+    private volatile boolean faceTrackerReset;
+    private final ArrayList<Rect> faceBoxes = new ArrayList<>();
+    private final ArrayList<Rect> scaledFaceBoxes = new ArrayList<>();
+    private final ArrayList<Rect> scaledFaceRegions = new ArrayList<>();
+    private final ArrayList<Rect> spareFaceBoxes = new ArrayList<>();
+    // Only touched on the composite thread.
+    private final MaskCache maskCache = new MaskCache();
+    private final BackgroundImageCache backgroundImages;
+
+    // The detectors run on small proxies of the camera frame, a size of 0 gives them the full
+    // frame. Proxies are only touched on the detect thread.
+    private volatile int faceInferenceWidth = DEFAULT_FACE_INFERENCE_WIDTH;
+    private volatile int segmentationInferenceWidth = DEFAULT_SEGMENTATION_INFERENCE_SIZE;
+    private volatile int segmentationInferenceHeight = DEFAULT_SEGMENTATION_INFERENCE_SIZE;
+    private final Nv21Downscaler faceDownscaler = new Nv21Downscaler();
+    private final Nv21Downscaler segmentationDownscaler = new Nv21Downscaler();
+    // Maps face boxes from the proxy the faces were detected on back to the upright frame.
+    private volatile float faceScaleX = 1f;
+    private volatile float faceScaleY = 1f;
+    private List<Task<?>> lastSeenResults;
     private Segmenter segmenter;
-    public boolean enableBackgroundBlur = false;
-    public boolean enablePixelatedFace = false;
+    private volatile boolean enableBackgroundBlur = false;
+    private volatile boolean enablePixelatedFace = false;
+    private final FilterTransition transition;
+    // The face boxes last handed to the overlay, kept while filters fade out. Composite thread.
+    private List<Rect> lastFaceBoxes;
+    private List<Rect> lastFaceRegions;
     private final ProcessorFrameListener frameListener;
     private final VideoOverlay videoOverlay;
+    private final FramePool framePool = new FramePool();
 
     public VideoFiltersProcessor(Context context, ProcessorFrameListener frameListener) {
         super(context);
-        setupFaceDetector();
+        faceDetector = FaceDetection.getClient(faceDetectorProfile.toOptions());
         setupSegmenter();
         this.frameListener = frameListener;
-        videoOverlay = new VideoOverlay();
+        backgroundImages = new BackgroundImageCache(context);
+        videoOverlay = new VideoOverlay(framePool, getPipelineStats());
+        transition = new FilterTransition(this::startWarmUp,
+                getPipelineStats().stage(PipelineStats.WARM_UP),
+                getPipelineStats().stage(PipelineStats.TRANSITION));
     }
 
-    private void setupFaceDetector() {
-        FaceDetectorOptions faceDetectorOptions = new FaceDetectorOptions.Builder()
-                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
-                .build();
-        faceDetector = FaceDetection.getClient(faceDetectorOptions);
+    public void setBackgroundBlurEnabled(boolean enable) {
+        enableBackgroundBlur = enable;
+        transition.onFiltersChanged(isEnabled());
+    }
+
+    public boolean isBackgroundBlurEnabled() {
+        return enableBackgroundBlur;
+    }
+
+    public void setPixelatedFaceEnabled(boolean enable) {
+        enablePixelatedFace = enable;
+        transition.onFiltersChanged(isEnabled());
+    }
+
+    public boolean isPixelatedFaceEnabled() {
+        return enablePixelatedFace;
+    }
+
+    /** Where the output is in switching between camera frames and filtered ones. */
+    public FilterTransition.State getTransitionState() {
+        return transition.getState();
+    }
+
+    /**
+     * Switches the face detector to another profile. The detector is only rebuilt when the
+     * profile actually changes.
+     */
+    public synchronized void setFaceDetectorProfile(FaceDetectorProfile profile) {
+        if (profile == null || profile.equals(faceDetectorProfile)) {
+            return;
+        }
+
+        logFaceDetectionLatency(faceDetectorProfile);
+        FaceDetector previous = faceDetector;
+        faceDetector = FaceDetection.getClient(profile.toOptions());
+        faceDetectorProfile = profile;
+        faceTrackerReset = true;
+        previous.close();
+    }
+
+    public FaceDetectorProfile getFaceDetectorProfile() {
+        return faceDetectorProfile;
+    }
+
+    /** Per-frame face detection latency, recorded separately for every profile used so far. */
+    public Map<FaceDetectorProfile, LatencyHistogram> getFaceDetectionLatencies() {
+        return Collections.unmodifiableMap(faceDetectionLatencies);
     }
 
     private void setupSegmenter() {
@@ -55,34 +151,143 @@ public class VideoFiltersProcessor extends VisionProcessorBase<List<Task<?>>> {
         segmenter = Segmentation.getClient(options);
     }
 
+    /**
+     * Sets the resolution the detectors run at, independently from the capture resolution. Faces
+     * are detected on a proxy {@code faceWidth} pixels wide that keeps the camera aspect ratio,
+     * and the segmentation runs on a {@code segmentationWidth} x {@code segmentationHeight} proxy
+     * whose mask is stretched back over the frame. Widths are in camera frame orientation, and a
+     * size of 0 or one at least as large as the frame uses the full frame.
+     */
+    public void setInferenceResolution(int faceWidth, int segmentationWidth, int segmentationHeight) {
+        faceInferenceWidth = faceWidth;
+        segmentationInferenceWidth = segmentationWidth;
+        segmentationInferenceHeight = segmentationHeight;
+    }
+
+    /**
+     * Sets how much each new segmentation mask weighs against the previous ones, in (0, 1].
+     * Lower values hide more edge flicker and let segmentation run less often.
+     */
+    public void setMaskSmoothing(float smoothing) {
+        maskCache.setSmoothing(smoothing);
+    }
+
+    /**
+     * Replaces the background with the image at the given uri, or goes back to blur (if enabled)
+     * with null or an empty uri. The background is blurred while the image is being decoded.
+     */
+    public void setBackgroundReplacement(String uri) {
+        backgroundImages.setUri(uri);
+        transition.onFiltersChanged(isEnabled());
+    }
+
+    public String getBackgroundReplacement() {
+        return backgroundImages.getUri();
+    }
+
+    /** Selects whether the filters are rendered on the CPU or with OpenGL ES. */
+    public void setFilterBackend(VideoOverlay.Backend backend) {
+        videoOverlay.setBackend(backend);
+    }
+
+    @Override
+    protected void onCompositeStopped() {
+        videoOverlay.release();
+    }
+
+    /** Returns the pool the overlays borrow their per-frame buffers from. */
+    public FramePool getFramePool() {
+        return framePool;
+    }
+
+    /**
+     * Whether camera frames go through the filters. This follows the transition rather than the
+     * filters themselves, so frames keep going through while the filters fade out.
+     */
     @Override
     public boolean active() {
-        return enablePixelatedFace || enableBackgroundBlur;
+        return transition.isRouting();
+    }
+
+    private boolean isEnabled() {
+        return enablePixelatedFace || isSegmenting();
+    }
+
+    /** Background blur and replacement both need the segmentation mask. */
+    private boolean isSegmenting() {
+        return enableBackgroundBlur || backgroundImages.isEnabled();
     }
 
     @Override
     protected Task<List<Task<?>>> detectInImage(InputImage image) {
-        if (enableBackgroundBlur && enablePixelatedFace) {
-            return Tasks.whenAllComplete(faceDetector.process(image), segmenter.process(image));
-        } else if (enableBackgroundBlur) {
-            return Tasks.whenAllComplete(segmenter.process(image));
+        boolean segmenting = isSegmenting();
+        if (segmenting && enablePixelatedFace) {
+            return Tasks.whenAllComplete(detectFaces(image), segment(image));
+        } else if (segmenting) {
+            return Tasks.whenAllComplete(segment(image));
         } else if (enablePixelatedFace) {
-            return Tasks.whenAllComplete(faceDetector.process(image));
+            return Tasks.whenAllComplete(detectFaces(image));
         }
 
         return Tasks.forResult(Collections.emptyList());
     }
 
+    private Task<SegmentationMask> segment(InputImage image) {
+        return segmenter.process(toProxy(image, segmentationDownscaler,
+                segmentationInferenceWidth, segmentationInferenceHeight));
+    }
+
+    private Task<List<Face>> detectFaces(InputImage image) {
+        LatencyHistogram latency = faceDetectionLatencies.computeIfAbsent(
+                faceDetectorProfile, profile -> new LatencyHistogram());
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+
+        int proxyWidth = faceInferenceWidth;
+        InputImage proxy = toProxy(image, faceDownscaler,
+                proxyWidth, Math.round((float) image.getHeight() * proxyWidth / image.getWidth()));
+        boolean swapSides = image.getRotationDegrees() == 90 || image.getRotationDegrees() == 270;
+        faceScaleX = (float) (swapSides ? image.getHeight() : image.getWidth())
+                / (swapSides ? proxy.getHeight() : proxy.getWidth());
+        faceScaleY = (float) (swapSides ? image.getWidth() : image.getHeight())
+                / (swapSides ? proxy.getWidth() : proxy.getHeight());
+
+        Task<List<Face>> task = faceDetector.process(proxy);
+        task.addOnSuccessListener(DIRECT_EXECUTOR,
+                faces -> latency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000));
+        return task;
+    }
+
     @Override
     protected void onSuccess(
             @NonNull List<Task<?>> results,
             @Nullable Bitmap originalCameraImage
     ) {
+        transition.onResults();
+        float strength = transition.update();
+        if (strength < 0f) {
+            // Camera frames already go straight out, this one would be late.
+            return;
+        }
+        videoOverlay.setStrength(strength);
+        if (transition.isFadingOut()) {
+            deliverFadingOut(originalCameraImage);
+            return;
+        }
+
+        boolean newResults = results != lastSeenResults;
+        lastSeenResults = results;
+
+        boolean segmenting = isSegmenting();
         SegmentationMask mask = null;
         List<Face> faces = null;
-        for (Task<?> task : results) {
+        // Indexed, an iterator would be allocated for every frame.
+        for (int i = 0; i < results.size(); i++) {
+            Task<?> task = results.get(i);
+            if (!task.isSuccessful()) {
+                continue;
+            }
             Object taskResult = task.getResult();
-            if (taskResult instanceof SegmentationMask && enableBackgroundBlur) {
+            if (taskResult instanceof SegmentationMask && segmenting) {
                 mask = ((SegmentationMask) taskResult);
             } else if (taskResult instanceof List<?> && enablePixelatedFace) {
                 faces = getFaces((List<?>) taskResult);
@@ -90,14 +295,196 @@ public class VideoFiltersProcessor extends VisionProcessorBase<List<Task<?>>> {
         }
 
         videoOverlay.setBitmap(originalCameraImage);
-        videoOverlay.setFaces(faces);
-        videoOverlay.setSegmentationMask(mask);
+        lastFaceBoxes = faces != null ? getFaceBoxes(faces, newResults) : null;
+        lastFaceRegions = lastFaceBoxes != null ? getFaceRegions() : null;
+        videoOverlay.setFaces(lastFaceBoxes, lastFaceRegions);
+        setSegmentationMask(mask, newResults, segmenting);
+        videoOverlay.setBackgroundReplacement(segmenting
+                ? backgroundImages.get(originalCameraImage.getWidth(), originalCameraImage.getHeight())
+                : null);
+        deliver(originalCameraImage);
+    }
+
+    /** Frames before the first results go out unfiltered, so warming up never stalls the output. */
+    @Override
+    protected void onWarmUpFrame(@Nullable Bitmap originalCameraImage) {
+        if (originalCameraImage == null) {
+            return;
+        }
+        float strength = transition.update();
+        if (strength < 0f) {
+            return;
+        }
+        videoOverlay.setStrength(strength);
+        if (transition.isFadingOut()) {
+            deliverFadingOut(originalCameraImage);
+            return;
+        }
+        videoOverlay.setBitmap(originalCameraImage);
+        videoOverlay.setFaces(null);
+        videoOverlay.setSegmentationMask(null, 0, 0);
+        deliver(originalCameraImage);
+    }
+
+    /**
+     * The filters are off, so the inputs they used last are applied as they are to the new frame
+     * while it fades back to the camera frame. The replacement image is kept by the overlay.
+     */
+    private void deliverFadingOut(Bitmap originalCameraImage) {
+        videoOverlay.setBitmap(originalCameraImage);
+        videoOverlay.setFaces(lastFaceBoxes, lastFaceRegions);
+        if (maskCache.isEmpty()) {
+            videoOverlay.setSegmentationMask(null, 0, 0);
+        } else {
+            videoOverlay.setSegmentationMask(
+                    maskCache.getSmoothed(), maskCache.getWidth(), maskCache.getHeight());
+        }
+        deliver(originalCameraImage);
+        transition.completeFadeOut();
+    }
+
+    private void deliver(Bitmap originalCameraImage) {
         int[] frame = videoOverlay.getFrame();
         if (frame != null && frameListener != null) {
             frameListener.onFrame(frame, originalCameraImage.getWidth(), originalCameraImage.getHeight(), 0);
         }
     }
 
+    /**
+     * Feeds new masks to the cache and hands the smoothed one to the overlay. When segmentation
+     * was skipped or failed for these results, the smoothed mask is used as it is.
+     */
+    private void setSegmentationMask(
+            @Nullable SegmentationMask mask, boolean newResults, boolean segmenting) {
+        if (!segmenting) {
+            maskCache.clear();
+            videoOverlay.setSegmentationMask(null, 0, 0);
+            return;
+        }
+        if (mask != null && newResults) {
+            maskCache.update(mask.getBuffer(), mask.getWidth(), mask.getHeight());
+        }
+        if (maskCache.isEmpty()) {
+            videoOverlay.setSegmentationMask(null, 0, 0);
+        } else {
+            videoOverlay.setSegmentationMask(
+                    maskCache.getSmoothed(), maskCache.getWidth(), maskCache.getHeight());
+        }
+    }
+
+    /**
+     * With tracking enabled, boxes follow each face between two detections. Otherwise the boxes
+     * of the last detection are used as they are. Either way they are mapped from the inference
+     * proxy back to the frame.
+     */
+    private List<Rect> getFaceBoxes(List<Face> faces, boolean newResults) {
+        return toFrame(getProxyFaceBoxes(faces, newResults), scaledFaceBoxes);
+    }
+
+    /**
+     * Regions the tracker carries from frame to frame around the boxes it returned last, mapped
+     * to the frame. Without tracking, null lets the overlay pad the boxes of every frame.
+     */
+    private List<Rect> getFaceRegions() {
+        if (!faceDetectorProfile.isTrackingEnabled()) {
+            return null;
+        }
+        return toFrame(faceTracker.getRegions(), scaledFaceRegions);
+    }
+
+    /** Maps rects from the inference proxy to the frame, into recycled rects. */
+    private List<Rect> toFrame(List<Rect> rects, ArrayList<Rect> scaled) {
+        float scaleX = faceScaleX;
+        float scaleY = faceScaleY;
+        if (scaleX == 1f && scaleY == 1f) {
+            return rects;
+        }
+
+        while (scaled.size() > rects.size()) {
+            spareFaceBoxes.add(scaled.remove(scaled.size() - 1));
+        }
+        while (scaled.size() < rects.size()) {
+            scaled.add(spareFaceBoxes.isEmpty()
+                    ? new Rect()
+                    : spareFaceBoxes.remove(spareFaceBoxes.size() - 1));
+        }
+        for (int i = 0; i < rects.size(); i++) {
+            Rect rect = rects.get(i);
+            scaled.get(i).set(
+                    Math.round(rect.left * scaleX),
+                    Math.round(rect.top * scaleY),
+                    Math.round(rect.right * scaleX),
+                    Math.round(rect.bottom * scaleY));
+        }
+        return scaled;
+    }
+
+    private List<Rect> getProxyFaceBoxes(List<Face> faces, boolean newResults) {
+        if (faceTrackerReset) {
+            faceTrackerReset = false;
+            faceTracker.clear();
+        }
+        if (faceDetectorProfile.isTrackingEnabled()) {
+            if (newResults) {
+                faceTracker.update(faces, getResultsFrameTimeMs());
+            }
+            // Predicted for the frame being pixelated, not for now, which is later by the
+            // pipeline latency.
+            return faceTracker.boxesAt(getCompositingFrameTimeMs());
+        }
+
+        faceBoxes.clear();
+        for (int i = 0; i < faces.size(); i++) {
+            faceBoxes.add(faces.get(i).getBoundingBox());
+        }
+        return faceBoxes;
+    }
+
+    /**
+     * Downscales the image into an NV21 proxy of the given size, in camera frame orientation.
+     * Returns the image itself when no downscaling is needed or its pixels aren't YUV.
+     */
+    private static InputImage toProxy(
+            InputImage image, Nv21Downscaler downscaler, int width, int height) {
+        if (width <= 0 || height <= 0
+                || (width >= image.getWidth() && height >= image.getHeight())) {
+            return image;
+        }
+
+        ByteBuffer proxy;
+        Image mediaImage = image.getMediaImage();
+        if (image.getFormat() == InputImage.IMAGE_FORMAT_NV21 && image.getByteBuffer() != null) {
+            proxy = downscaler.downscale(image.getByteBuffer(),
+                    image.getWidth(), image.getHeight(), width, height);
+        } else if (mediaImage != null) {
+            Image.Plane[] planes = mediaImage.getPlanes();
+            proxy = downscaler.downscale(
+                    planes[0].getBuffer(), planes[0].getRowStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(),
+                    planes[1].getRowStride(), planes[1].getPixelStride(),
+                    image.getWidth(), image.getHeight(), width, height);
+        } else {
+            return image;
+        }
+
+        return InputImage.fromByteBuffer(proxy,
+                downscaler.getOutputWidth(),
+                downscaler.getOutputHeight(),
+                image.getRotationDegrees(),
+                InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    private void logFaceDetectionLatency(FaceDetectorProfile profile) {
+        LatencyHistogram latency = faceDetectionLatencies.get(profile);
+        if (latency == null || latency.getCount() == 0) {
+            return;
+        }
+        long[] percentiles = latency.getPercentilesMicros(50, 90, 99);
+        Log.d(TAG, "Face detection " + profile + " over " + latency.getCount() + " frames: p50 "
+                + percentiles[0] / 1000 + " ms, p90 " + percentiles[1] / 1000 + " ms, p99 "
+                + percentiles[2] / 1000 + " ms");
+    }
+
     private List<Face> getFaces(List<?> taskResult) {
         List<?> resultList = (List<?>) taskResult;
         if (!resultList.isEmpty() && resultList.get(0) instanceof Face) {
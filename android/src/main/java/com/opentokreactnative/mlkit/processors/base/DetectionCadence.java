@@ -0,0 +1,53 @@
+package com.opentokreactnative.mlkit.processors.base;
+
+/**
+ * Decides on which frames the detectors run when they are decoupled from compositing.
+ *
+ * A detection is started when at least {@code interval} frames went by since the previous one
+ * started and that previous detection has finished. With an interval of 1 this adapts to the
+ * device: detections run back to back at whatever rate the detectors manage, while every frame in
+ * between is composited with the most recent results.
+ */
+public class DetectionCadence {
+
+    private final int interval;
+    private int framesSinceDetection;
+    private volatile long lastDetectionDurationMs = 0;
+
+    public DetectionCadence(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Invalid detection interval: " + interval);
+        }
+        this.interval = interval;
+        this.framesSinceDetection = interval;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Called once per frame. Returns true if a detection should be started on it.
+     *
+     * @param detectionInFlight whether the previous detection is still running
+     */
+    boolean onFrame(boolean detectionInFlight) {
+        if (framesSinceDetection < interval) {
+            framesSinceDetection++;
+        }
+        if (detectionInFlight || framesSinceDetection < interval) {
+            return false;
+        }
+        framesSinceDetection = 1;
+        return true;
+    }
+
+    void onDetectionFinished(long durationMs) {
+        lastDetectionDurationMs = durationMs;
+    }
+
+    /** Duration of the last finished detection, in milliseconds. */
+    public long getLastDetectionDurationMs() {
+        return lastDetectionDurationMs;
+    }
+}
@@ -0,0 +1,151 @@
+package com.opentokreactnative.mlkit.processors.base;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+
+/**
+ * One stage of the frame pipeline, running on its own thread.
+ *
+ * The queue in front of a stage holds a single frame and the latest one wins: when a frame is
+ * submitted while another one is still waiting, the waiting one is handed to the drop listener so
+ * its buffers can be reused, and the drop is counted. How long the handler takes for every frame
+ * is recorded as well.
+ *
+ * @param <F> type of the frames going through the stage
+ */
+public class FrameStage<F> {
+
+    public interface Handler<F> {
+        void process(F frame);
+    }
+
+    public interface DropListener<F> {
+        void onDropped(F frame);
+    }
+
+    private static final String TAG = "FrameStage";
+
+    private final String name;
+    private final Handler<F> handler;
+    private final DropListener<F> dropListener;
+    private final LatencyHistogram latency;
+    private final Runnable onQuit;
+    private final Thread thread;
+
+    // This lock guards pending and running.
+    private final Object lock = new Object();
+    private F pending;
+    private boolean running = true;
+
+    public FrameStage(
+            String name,
+            LatencyHistogram latency,
+            Handler<F> handler,
+            DropListener<F> dropListener) {
+        this(name, latency, handler, dropListener, null);
+    }
+
+    /**
+     * @param onQuit run on the stage thread once it stops, e.g. to release resources bound to
+     *               that thread; may be null
+     */
+    public FrameStage(
+            String name,
+            LatencyHistogram latency,
+            Handler<F> handler,
+            DropListener<F> dropListener,
+            Runnable onQuit) {
+        this.name = name;
+        this.latency = latency;
+        this.handler = handler;
+        this.dropListener = dropListener;
+        this.onQuit = onQuit;
+        thread = new Thread(this::loop, name);
+        thread.start();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Time spent in the handler per frame, and the number of frames dropped in front of it. */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /** Queues a frame, replacing the one still waiting if there is one. */
+    public void submit(F frame) {
+        F dropped;
+        synchronized (lock) {
+            if (running) {
+                dropped = pending;
+                pending = frame;
+                lock.notifyAll();
+            } else {
+                dropped = frame;
+            }
+        }
+        if (dropped != null) {
+            latency.recordDrop();
+            dropListener.onDropped(dropped);
+        }
+    }
+
+    /**
+     * Stops the stage once the frame being processed, if any, is done. The waiting frame is
+     * dropped.
+     */
+    public void quit() {
+        F dropped;
+        synchronized (lock) {
+            running = false;
+            dropped = pending;
+            pending = null;
+            lock.notifyAll();
+        }
+        if (dropped != null) {
+            dropListener.onDropped(dropped);
+        }
+    }
+
+    private void loop() {
+        try {
+            processFrames();
+        } finally {
+            if (onQuit != null) {
+                onQuit.run();
+            }
+        }
+    }
+
+    private void processFrames() {
+        while (true) {
+            F frame;
+            synchronized (lock) {
+                while (running && pending == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Log.d(TAG, name + " stage interrupted.");
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                frame = pending;
+                pending = null;
+            }
+
+            long startNanos = SystemClock.elapsedRealtimeNanos();
+            try {
+                handler.process(frame);
+            } catch (Exception e) {
+                Log.e(TAG, "Exception thrown from the " + name + " stage.", e);
+            }
+            latency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+        }
+    }
+}
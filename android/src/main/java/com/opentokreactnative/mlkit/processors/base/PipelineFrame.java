@@ -0,0 +1,126 @@
+package com.opentokreactnative.mlkit.processors.base;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.opentokreactnative.mlkit.camera.FrameMetadata;
+import com.opentokreactnative.mlkit.utils.FrameConverter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A camera frame on its way through the pipeline stages, together with everything computed for
+ * it. Frames are allocated once and recycled through the pool they were created for: a frame goes
+ * back to the pool when the last stage holding it calls {@link #release()}.
+ */
+class PipelineFrame<T> {
+
+    private final BlockingQueue<PipelineFrame<T>> pool;
+    private final AtomicInteger references = new AtomicInteger();
+
+    // The camera reuses its preview buffers, so every frame keeps its own copy of the image.
+    private ByteBuffer image;
+    private final FrameMetadata metadata = new FrameMetadata();
+    // Camera2 images are used in place and closed once the frame is released.
+    private Image mediaImage;
+    private int mediaImageRotation;
+    private final FrameConverter converter = new FrameConverter();
+    private FrameConverter.Backend converterBackend = FrameConverter.Backend.JAVA;
+
+    long sequence;
+    long timeMs;
+    long captureNanos;
+    Bitmap bitmap;
+
+    // Set by the detect stage when this frame was detected on and has to be composited with
+    // its own results.
+    T results;
+    long resultsTimeMs;
+    boolean detectOnly;
+
+    PipelineFrame(BlockingQueue<PipelineFrame<T>> pool) {
+        this.pool = pool;
+    }
+
+    /** Takes the frame out of the pool and copies the camera image into it. */
+    void set(
+            ByteBuffer data,
+            FrameMetadata frameMetadata,
+            long sequence,
+            long timeMs,
+            long captureNanos) {
+        data.rewind();
+        if (image == null || image.capacity() < data.limit()) {
+            image = ByteBuffer.allocateDirect(data.limit());
+        }
+        image.clear();
+        image.put(data);
+        image.flip();
+        data.rewind();
+
+        // The caller may reuse its metadata for the next frame.
+        metadata.set(frameMetadata);
+        mediaImage = null;
+        reset(sequence, timeMs, captureNanos);
+    }
+
+    /** Takes the frame out of the pool around a YUV_420_888 image, without copying it. */
+    void set(Image image, int rotation, long sequence, long timeMs, long captureNanos) {
+        mediaImage = image;
+        mediaImageRotation = rotation;
+        reset(sequence, timeMs, captureNanos);
+    }
+
+    private void reset(long sequence, long timeMs, long captureNanos) {
+        this.sequence = sequence;
+        this.timeMs = timeMs;
+        this.captureNanos = captureNanos;
+        bitmap = null;
+        results = null;
+        resultsTimeMs = 0;
+        detectOnly = false;
+        references.set(1);
+    }
+
+    void convert(FrameConverter.Backend backend) {
+        if (backend != converterBackend) {
+            converter.setBackend(backend);
+            converterBackend = backend;
+        }
+        bitmap = mediaImage != null
+                ? converter.convert(mediaImage, mediaImageRotation)
+                : converter.convert(image, metadata);
+    }
+
+    InputImage toInputImage() {
+        if (mediaImage != null) {
+            return InputImage.fromMediaImage(mediaImage, mediaImageRotation);
+        }
+        image.rewind();
+        return InputImage.fromByteBuffer(
+                image,
+                metadata.getWidth(),
+                metadata.getHeight(),
+                metadata.getRotation(),
+                InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    /** Lets one more stage hold the frame at the same time. */
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            if (mediaImage != null) {
+                mediaImage.close();
+                mediaImage = null;
+            }
+            results = null;
+            pool.offer(this);
+        }
+    }
+}
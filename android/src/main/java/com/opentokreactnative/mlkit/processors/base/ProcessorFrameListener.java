@@ -1,7 +1,12 @@
 package com.opentokreactnative.mlkit.processors.base;
 
+import android.media.Image;
+
 public interface ProcessorFrameListener {
     void onFrame(byte[] frame, int width, int height, int rotation);
 
+    /** Unfiltered YUV_420_888 frame from Camera2. The image is closed by the caller afterwards. */
+    void onFrame(Image image, int rotation);
+
     void onFrame(int[] frame, int width, int height, int rotation);
 }
@@ -17,6 +17,7 @@
 package com.opentokreactnative.mlkit.processors.base;
 
 import android.graphics.Bitmap;
+import android.media.Image;
 
 //import androidx.camera.core.ImageProxy;
 
@@ -38,6 +39,12 @@ public interface VisionImageProcessor {
           ByteBuffer data, FrameMetadata frameMetadata)
       throws MlKitException;
 
+  /**
+   * Processes a YUV_420_888 image, e.g. used for Camera2 live preview case. The processor takes
+   * ownership of the image and closes it once done with it.
+   */
+  void processImage(Image image, int rotationDegrees);
+
   /** Stops the underlying machine learning model and release resources. */
   void stop();
 }
@@ -19,23 +19,30 @@ package com.opentokreactnative.mlkit.processors.base;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.media.Image;
+import android.os.SystemClock;
 import android.util.Log;
 
-import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.TaskExecutors;
 import com.google.android.gms.tasks.Tasks;
 import com.google.android.odml.image.MlImage;
 import com.google.mlkit.common.MlKitException;
 import com.google.mlkit.vision.common.InputImage;
 import com.opentokreactnative.mlkit.camera.FrameMetadata;
-import com.opentokreactnative.mlkit.utils.BitmapUtils;
+import com.opentokreactnative.mlkit.utils.FrameConverter;
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
 import com.opentokreactnative.mlkit.utils.ScopedExecutor;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Abstract base class for vision frame processors. Subclasses need to implement {@link
@@ -49,28 +56,98 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
   protected static final String MANUAL_TESTING_LOG = "LogTagForTest";
   private static final String TAG = "VisionProcessorBase";
 
+  /**
+   * Enough frames for every stage to hold one frame while working and another one waiting. This
+   * is also the most Camera2 images the pipeline keeps open at once.
+   */
+  public static final int PIPELINE_DEPTH = 7;
+
   private final ActivityManager activityManager;
+  // Only used for still images. Live frames go through the stages below, never the UI thread.
   private final ScopedExecutor executor;
 
-  // Whether this processor is already shut down
-  private boolean isShutdown;
-
-  // To keep the latest images and its metadata.
-  @GuardedBy("this")
-  private ByteBuffer latestImage;
+  // Live frames flow capture -> convert -> detect -> composite, every stage on its own thread.
+  // Capture runs on the camera processing thread that calls processByteBuffer.
+  private final BlockingQueue<PipelineFrame<T>> freeFrames =
+      new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+  private final PipelineStats pipelineStats = new PipelineStats();
+  private final LatencyHistogram captureLatency;
+  private final LatencyHistogram totalLatency;
+  private final FrameStage<PipelineFrame<T>> convertStage;
+  private final FrameStage<PipelineFrame<T>> detectStage;
+  private final FrameStage<PipelineFrame<T>> compositeStage;
+  private volatile FrameConverter.Backend frameConverterBackend = FrameConverter.Backend.JAVA;
+  private long nextSequence;
+  // Only touched on the composite thread.
+  private long lastCompositedSequence = -1;
+  private long compositingResultsTimeMs;
+  private long compositingFrameTimeMs;
 
-  @GuardedBy("this")
-  protected FrameMetadata latestImageMetaData;
-  // To keep the images and metadata in process.
-  @GuardedBy("this")
-  protected ByteBuffer processingImage;
+  // Whether this processor is already shut down
+  private volatile boolean isShutdown;
 
-  @GuardedBy("this")
-  protected FrameMetadata processingMetaData;
+  // When set, detection runs decoupled from compositing, see onConverted.
+  @Nullable
+  private volatile DetectionCadence detectionCadence;
+  private final AtomicBoolean detectionInFlight = new AtomicBoolean();
+  // Until the first results of a warm-up, frames don't wait for detection either.
+  private volatile boolean warmingUp;
+  @Nullable
+  private volatile T lastResults;
+  private volatile long lastResultsFrameTimeMs;
 
   protected VisionProcessorBase(Context context) {
     activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
-    executor = new ScopedExecutor(TaskExecutors.MAIN_THREAD);
+    executor = new ScopedExecutor(Executors.newSingleThreadExecutor());
+
+    for (int i = 0; i < PIPELINE_DEPTH; i++) {
+      freeFrames.offer(new PipelineFrame<>(freeFrames));
+    }
+    captureLatency = pipelineStats.stage(PipelineStats.CAPTURE);
+    convertStage = new FrameStage<>(PipelineStats.CONVERT,
+        pipelineStats.stage(PipelineStats.CONVERT), this::onConverted, PipelineFrame::release);
+    detectStage = new FrameStage<>(PipelineStats.DETECT,
+        pipelineStats.stage(PipelineStats.DETECT), this::onDetected, this::onDetectionDropped);
+    compositeStage = new FrameStage<>(PipelineStats.COMPOSITE,
+        pipelineStats.stage(PipelineStats.COMPOSITE), this::onComposited, PipelineFrame::release,
+        this::onCompositeStopped);
+    totalLatency = pipelineStats.stage(PipelineStats.TOTAL);
+  }
+
+  /** Selects how NV21 preview frames are converted into the Bitmap handed to onSuccess. */
+  public void setFrameConverterBackend(FrameConverter.Backend backend) {
+    frameConverterBackend = backend;
+  }
+
+  /**
+   * Runs the detectors on a subset of the frames only, and composites every other frame with the
+   * most recent results. Pass null to detect on, and wait for, every processed frame.
+   */
+  public void setDetectionCadence(@Nullable DetectionCadence cadence) {
+    detectionCadence = cadence;
+  }
+
+  @Nullable
+  public DetectionCadence getDetectionCadence() {
+    return detectionCadence;
+  }
+
+  /**
+   * Forgets the last results and decouples detection from compositing until new results are
+   * ready, so frames keep flowing through {@link #onWarmUpFrame} while the detectors start.
+   */
+  protected void startWarmUp() {
+    lastResults = null;
+    warmingUp = true;
+  }
+
+  /**
+   * Time spent per frame in every pipeline stage, along with how many frames each stage dropped.
+   * Capture drops mean all the pipeline frames were busy. Subclasses and the frame listener add
+   * the stages they time themselves.
+   */
+  public PipelineStats getPipelineStats() {
+    return pipelineStats;
   }
 
   // -----------------Code for processing single still image----------------------------------------
@@ -83,39 +160,137 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 
   // -----------------Code for processing live preview frame from Camera1 API-----------------------
   @Override
-  public synchronized void processByteBuffer(
+  public void processByteBuffer(
       ByteBuffer data, final FrameMetadata frameMetadata) {
-    latestImage = data;
-    latestImageMetaData = frameMetadata;
-    if (processingImage == null && processingMetaData == null) {
-      processLatestImage();
+    if (isShutdown) {
+      return;
+    }
+    long startNanos = SystemClock.elapsedRealtimeNanos();
+    PipelineFrame<T> frame = freeFrames.poll();
+    if (frame == null) {
+      captureLatency.recordDrop();
+      return;
     }
+    frame.set(data, frameMetadata, nextSequence++, SystemClock.elapsedRealtime(), startNanos);
+    captureLatency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+    convertStage.submit(frame);
   }
 
-  private synchronized void processLatestImage() {
-    processingImage = latestImage;
-    processingMetaData = latestImageMetaData;
-    latestImage = null;
-    latestImageMetaData = null;
-    if (processingImage != null && processingMetaData != null && !isShutdown) {
-      processImage(processingImage, processingMetaData);
+  // -----------------Code for processing live preview frame from Camera2 API-----------------------
+  @Override
+  public void processImage(Image image, int rotationDegrees) {
+    if (isShutdown) {
+      image.close();
+      return;
     }
+    long startNanos = SystemClock.elapsedRealtimeNanos();
+    PipelineFrame<T> frame = freeFrames.poll();
+    if (frame == null) {
+      captureLatency.recordDrop();
+      image.close();
+      return;
+    }
+    frame.set(image, rotationDegrees, nextSequence++, SystemClock.elapsedRealtime(), startNanos);
+    captureLatency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+    convertStage.submit(frame);
   }
 
-  private void processImage(
-      ByteBuffer data, final FrameMetadata frameMetadata) {
+  /**
+   * Convert stage. Without a cadence every frame waits for its own detection. With a cadence the
+   * frame goes straight to compositing with the latest results, and is also handed to the detect
+   * stage when the cadence asks for a detection, so the output keeps the camera frame rate no
+   * matter how long the detectors take. Warming up works the same way, detecting whenever the
+   * detectors are idle.
+   */
+  private void onConverted(PipelineFrame<T> frame) {
+    frame.convert(frameConverterBackend);
 
-    Bitmap bitmap = BitmapUtils.getBitmap(data, frameMetadata);
+    DetectionCadence cadence = detectionCadence;
+    if (cadence == null && !warmingUp) {
+      detectStage.submit(frame);
+      return;
+    }
 
-    requestDetectInImage(
-            InputImage.fromByteBuffer(
-                data,
-                frameMetadata.getWidth(),
-                frameMetadata.getHeight(),
-                frameMetadata.getRotation(),
-                InputImage.IMAGE_FORMAT_NV21),
-            bitmap)
-        .addOnSuccessListener(executor, results -> processLatestImage());
+    boolean inFlight = detectionInFlight.get();
+    if (cadence != null ? cadence.onFrame(inFlight) : !inFlight) {
+      detectionInFlight.set(true);
+      frame.detectOnly = true;
+      frame.retain();
+      detectStage.submit(frame);
+    }
+    compositeStage.submit(frame);
+  }
+
+  /** Detect stage, blocks its own thread until the detectors are done with the frame. */
+  private void onDetected(PipelineFrame<T> frame) {
+    boolean detectOnly = frame.detectOnly;
+    long startMs = SystemClock.elapsedRealtime();
+    T results = null;
+    try {
+      results = Tasks.await(detectInImage(frame.toInputImage()));
+    } catch (ExecutionException | InterruptedException e) {
+      Log.d(TAG, "Failed to process. Error: " + e.getLocalizedMessage());
+      onFailure(e);
+    }
+
+    if (results != null) {
+      lastResultsFrameTimeMs = frame.timeMs;
+      lastResults = results;
+      warmingUp = false;
+    }
+
+    if (detectOnly) {
+      DetectionCadence cadence = detectionCadence;
+      if (cadence != null) {
+        cadence.onDetectionFinished(SystemClock.elapsedRealtime() - startMs);
+      }
+      detectionInFlight.set(false);
+      frame.release();
+    } else if (results != null) {
+      frame.results = results;
+      frame.resultsTimeMs = frame.timeMs;
+      compositeStage.submit(frame);
+    } else {
+      frame.release();
+    }
+  }
+
+  private void onDetectionDropped(PipelineFrame<T> frame) {
+    if (frame.detectOnly) {
+      detectionInFlight.set(false);
+    }
+    frame.release();
+  }
+
+  /**
+   * Composite stage. Frames that skipped detection can overtake one that waited for it, so
+   * anything older than the last composited frame is dropped to keep the output in order.
+   */
+  private void onComposited(PipelineFrame<T> frame) {
+    try {
+      if (frame.sequence <= lastCompositedSequence) {
+        compositeStage.getLatency().recordDrop();
+        return;
+      }
+
+      T results = frame.results;
+      long resultsTimeMs = frame.resultsTimeMs;
+      if (results == null) {
+        results = lastResults;
+        resultsTimeMs = lastResultsFrameTimeMs;
+      }
+      lastCompositedSequence = frame.sequence;
+      if (results == null) {
+        onWarmUpFrame(frame.bitmap);
+      } else {
+        compositingResultsTimeMs = resultsTimeMs;
+        compositingFrameTimeMs = frame.timeMs;
+        onSuccess(results, frame.bitmap);
+      }
+      totalLatency.record((SystemClock.elapsedRealtimeNanos() - frame.captureNanos) / 1000);
+    } finally {
+      frame.release();
+    }
   }
 
   // -----------------Common processing logic-------------------------------------------------------
@@ -154,12 +329,21 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
 
   @Override
   public void stop() {
-    executor.shutdown();
     isShutdown = true;
+    executor.shutdown();
+    convertStage.quit();
+    detectStage.quit();
+    compositeStage.quit();
   }
 
   protected abstract Task<T> detectInImage(InputImage image);
 
+  /**
+   * Called instead of onSuccess for frames composited before any results are available, which
+   * happens while warming up or waiting on the first detection of a cadence.
+   */
+  protected void onWarmUpFrame(@Nullable Bitmap originalCameraImage) {}
+
   protected Task<T> detectInImage(MlImage image) {
     return Tasks.forException(
         new MlKitException(
@@ -167,8 +351,32 @@ public abstract class VisionProcessorBase<T> implements VisionImageProcessor {
             MlKitException.INVALID_ARGUMENT));
   }
 
+  /**
+   * Returns when the frame that the results handed to onSuccess were detected on was processed,
+   * in {@link SystemClock#elapsedRealtime()} milliseconds. With a cadence these results may be
+   * several frames old. Only meaningful from within onSuccess.
+   */
+  protected long getResultsFrameTimeMs() {
+    return compositingResultsTimeMs;
+  }
+
+  /**
+   * Returns when the frame handed to onSuccess was captured, in
+   * {@link SystemClock#elapsedRealtime()} milliseconds. Without a cadence it is the frame the
+   * results were detected on. Only meaningful from within onSuccess.
+   */
+  protected long getCompositingFrameTimeMs() {
+    return compositingFrameTimeMs;
+  }
+
   protected abstract void onSuccess(@NonNull T results, @Nullable Bitmap originalCameraImage);
 
+  /**
+   * Called on the thread onSuccess runs on, once the processor is stopped and no more frames will
+   * be composited. Resources bound to that thread can be released here.
+   */
+  protected void onCompositeStopped() {}
+
   protected abstract void onFailure(@NonNull Exception e);
 
   protected boolean isMlImageEnabled(Context context) {
@@ -0,0 +1,243 @@
+package com.opentokreactnative.mlkit.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Background images for the replacement filter, decoded once and kept pre-scaled per frame size.
+ *
+ * Images are decoded on a background thread when their uri is set. The composite thread then asks
+ * for the pixels at the frame size, which are scaled from the decoded image the first time and
+ * served from a small LRU keyed by (uri, width, height) afterwards. Switching resolutions, or back
+ * to a recent image at the same size, neither decodes nor allocates.
+ */
+public class BackgroundImageCache {
+
+    private static final String TAG = "BackgroundImageCache";
+    public static final int DEFAULT_CAPACITY = 3;
+    // Larger images are subsampled while decoding, no publisher resolution needs more.
+    private static final int MAX_DECODE_SIZE = 1920;
+
+    private final Context context;
+    private final Map<Key, int[]> entries;
+    // Only used for lookups on the composite thread, so hits don't allocate a key.
+    private final Key lookup = new Key();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private volatile String uri;
+    private volatile Decoded decoded;
+    private int generation = 0;
+
+    public BackgroundImageCache(Context context) {
+        this(context, DEFAULT_CAPACITY);
+    }
+
+    public BackgroundImageCache(Context context, final int capacity) {
+        this.context = context.getApplicationContext();
+        entries = new LinkedHashMap<Key, int[]>(capacity + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Selects the background image and starts decoding it. The uri may use the http(s), content,
+     * file or android.resource schemes, be an absolute path or the name of a drawable resource of
+     * the app. Null or empty clears the image.
+     */
+    public synchronized void setUri(String uri) {
+        if (uri != null && uri.isEmpty()) {
+            uri = null;
+        }
+        if (uri == null ? this.uri == null : uri.equals(this.uri)) {
+            return;
+        }
+        this.uri = uri;
+        final int current = ++generation;
+        if (uri == null) {
+            decoded = null;
+            return;
+        }
+
+        final String source = uri;
+        Thread decoder = new Thread(() -> {
+            Bitmap bitmap = decode(source);
+            synchronized (BackgroundImageCache.this) {
+                if (current == generation) {
+                    decoded = bitmap != null ? new Decoded(source, bitmap) : null;
+                }
+            }
+        }, TAG);
+        decoder.setDaemon(true);
+        decoder.start();
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /** Whether an image has been selected, whether or not it has been decoded yet. */
+    public boolean isEnabled() {
+        return uri != null;
+    }
+
+    /**
+     * Returns the current image center cropped to {@code width x height} ARGB pixels, or null
+     * while it is still being decoded. Must only be called from the thread that composites.
+     */
+    public int[] get(int width, int height) {
+        String current = uri;
+        if (current == null || width <= 0 || height <= 0) {
+            return null;
+        }
+
+        lookup.set(current, width, height);
+        int[] pixels = entries.get(lookup);
+        if (pixels != null) {
+            return pixels;
+        }
+
+        Decoded image = decoded;
+        if (image == null || !image.uri.equals(current)) {
+            return null;
+        }
+        pixels = scale(image.bitmap, width, height);
+        entries.put(new Key().set(current, width, height), pixels);
+        return pixels;
+    }
+
+    private int[] scale(Bitmap image, int width, int height) {
+        // Center crop, the background fills the frame whatever the aspect ratios.
+        int imageWidth = image.getWidth();
+        int imageHeight = image.getHeight();
+        Rect crop;
+        if ((long) imageWidth * height > (long) imageHeight * width) {
+            int cropWidth = (int) ((long) imageHeight * width / height);
+            int left = (imageWidth - cropWidth) / 2;
+            crop = new Rect(left, 0, left + cropWidth, imageHeight);
+        } else {
+            int cropHeight = (int) ((long) imageWidth * height / width);
+            int top = (imageHeight - cropHeight) / 2;
+            crop = new Rect(0, top, imageWidth, top + cropHeight);
+        }
+
+        Bitmap scaled = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(scaled).drawBitmap(image, crop, new Rect(0, 0, width, height), paint);
+        int[] pixels = new int[width * height];
+        scaled.getPixels(pixels, 0, width, 0, 0, width, height);
+        scaled.recycle();
+
+        // The replacement is blended as an opaque color.
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= 0xff000000;
+        }
+        return pixels;
+    }
+
+    private Bitmap decode(String uri) {
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream stream = open(uri)) {
+                BitmapFactory.decodeStream(stream, null, options);
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                Log.w(TAG, "Could not decode background image " + uri);
+                return null;
+            }
+
+            int sampleSize = 1;
+            int largestSide = Math.max(options.outWidth, options.outHeight);
+            while (largestSide / (sampleSize * 2) >= MAX_DECODE_SIZE) {
+                sampleSize *= 2;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            try (InputStream stream = open(uri)) {
+                return BitmapFactory.decodeStream(stream, null, options);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not load background image " + uri, e);
+            return null;
+        }
+    }
+
+    private InputStream open(String uri) throws IOException {
+        if (uri.startsWith("http://") || uri.startsWith("https://")) {
+            return new URL(uri).openStream();
+        }
+        if (uri.startsWith("/")) {
+            return new FileInputStream(uri);
+        }
+        if (uri.contains(":")) {
+            InputStream stream = context.getContentResolver().openInputStream(Uri.parse(uri));
+            if (stream == null) {
+                throw new IOException("No content for " + uri);
+            }
+            return stream;
+        }
+
+        // Bundled React Native images resolve to a drawable name in release builds.
+        int id = context.getResources().getIdentifier(uri, "drawable", context.getPackageName());
+        if (id == 0) {
+            throw new IOException("No drawable named " + uri);
+        }
+        return context.getResources().openRawResource(id);
+    }
+
+    private static final class Decoded {
+        final String uri;
+        final Bitmap bitmap;
+
+        Decoded(String uri, Bitmap bitmap) {
+            this.uri = uri;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private static final class Key {
+        String uri;
+        int width;
+        int height;
+
+        Key set(String uri, int width, int height) {
+            this.uri = uri;
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width && height == key.height && uri.equals(key.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return (uri.hashCode() * 31 + width) * 31 + height;
+        }
+    }
+}
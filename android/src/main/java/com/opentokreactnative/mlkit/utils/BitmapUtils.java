@@ -18,26 +18,15 @@ package com.opentokreactnative.mlkit.utils;
 
 import android.annotation.TargetApi;
 import android.content.ContentResolver;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.ImageFormat;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.media.Image;
 import android.media.Image.Plane;
 import android.net.Uri;
 import android.os.Build.VERSION_CODES;
 import android.provider.MediaStore;
-import android.util.Log;
 
-import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.exifinterface.media.ExifInterface;
 
-import com.opentokreactnative.mlkit.camera.FrameMetadata;
-
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -46,47 +35,43 @@ import java.nio.ByteBuffer;
 public class BitmapUtils {
   private static final String TAG = "BitmapUtils";
 
-  /** Converts NV21 format byte buffer to bitmap. */
-  @Nullable
-  public static Bitmap getBitmap(ByteBuffer data, FrameMetadata metadata) {
-    data.rewind();
-    byte[] imageInBuffer = new byte[data.limit()];
-    data.get(imageInBuffer, 0, imageInBuffer.length);
-    try {
-      YuvImage image =
-          new YuvImage(
-              imageInBuffer, ImageFormat.NV21, metadata.getWidth(), metadata.getHeight(), null);
-      ByteArrayOutputStream stream = new ByteArrayOutputStream();
-      image.compressToJpeg(new Rect(0, 0, metadata.getWidth(), metadata.getHeight()), 80, stream);
-
-      Bitmap bmp = BitmapFactory.decodeByteArray(stream.toByteArray(), 0, stream.size());
-
-      stream.close();
-      return rotateBitmap(bmp, metadata.getRotation(), false, false);
-    } catch (Exception e) {
-      Log.e("VisionProcessorBase", "Error: " + e.getMessage());
-    }
-    return null;
-  }
-
-  /** Rotates a bitmap if it is converted from a bytebuffer. */
-  private static Bitmap rotateBitmap(
-      Bitmap bitmap, int rotationDegrees, boolean flipX, boolean flipY) {
-    Matrix matrix = new Matrix();
-
-    // Rotate the image back to straight.
-    matrix.postRotate(rotationDegrees);
-
-    // Mirror the image along the X or Y axis.
-    matrix.postScale(flipX ? -1.0f : 1.0f, flipY ? -1.0f : 1.0f);
-    Bitmap rotatedBitmap =
-        Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-
-    // Recycle the old bitmap if it has changed.
-    if (rotatedBitmap != bitmap) {
-      bitmap.recycle();
+  /**
+   * Rotates ARGB pixels clockwise by a multiple of 90 degrees.
+   *
+   * <p>For 90 and 270 degrees the rotated image is 'height' pixels wide and 'width' pixels tall.
+   */
+  public static void rotatePixels(int[] src, int width, int height, int rotationDegrees, int[] out) {
+    switch (rotationDegrees) {
+      case 90:
+        for (int y = 0; y < height; y++) {
+          int outIndex = height - 1 - y;
+          int srcIndex = y * width;
+          for (int x = 0; x < width; x++) {
+            out[outIndex] = src[srcIndex++];
+            outIndex += height;
+          }
+        }
+        break;
+      case 180:
+        int size = width * height;
+        for (int i = 0; i < size; i++) {
+          out[size - 1 - i] = src[i];
+        }
+        break;
+      case 270:
+        for (int y = 0; y < height; y++) {
+          int outIndex = (width - 1) * height + y;
+          int srcIndex = y * width;
+          for (int x = 0; x < width; x++) {
+            out[outIndex] = src[srcIndex++];
+            outIndex -= height;
+          }
+        }
+        break;
+      default:
+        System.arraycopy(src, 0, out, 0, width * height);
+        break;
     }
-    return rotatedBitmap;
   }
 
   /** Checks if the UV plane buffers of a YUV_420_888 image are in the NV21 format. */
@@ -0,0 +1,88 @@
+package com.opentokreactnative.mlkit.utils;
+
+/**
+ * Blurs ARGB pixels in place with repeated box filters, which approximate a Gaussian blur.
+ *
+ * Each pass is a horizontal then a vertical running sum, so the cost per pixel doesn't depend on
+ * the radius. Unlike the Toolkit blur, which returns a new Bitmap every time, the only buffer is
+ * kept between calls and reallocated when the image grows, so blurring every frame doesn't
+ * allocate.
+ */
+public class BoxBlur {
+
+    private int[] scratch = new int[0];
+
+    /**
+     * @param radius half the size of the box, in pixels
+     * @param passes number of box passes, 2 or 3 are close enough to a Gaussian
+     */
+    public void blur(int[] pixels, int width, int height, int radius, int passes) {
+        if (radius <= 0 || width <= 0 || height <= 0) {
+            return;
+        }
+        if (scratch.length < width * height) {
+            scratch = new int[width * height];
+        }
+        for (int i = 0; i < passes; i++) {
+            horizontal(pixels, scratch, width, height, radius);
+            vertical(scratch, pixels, width, height, radius);
+        }
+    }
+
+    private static void horizontal(int[] in, int[] out, int width, int height, int radius) {
+        int scale = (1 << 16) / (radius * 2 + 1);
+        int last = width - 1;
+        for (int y = 0, row = 0; y < height; y++, row += width) {
+            // Edges repeat the border pixels.
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int i = -radius; i <= radius; i++) {
+                int color = in[row + Math.max(0, Math.min(i, last))];
+                red += (color >> 16) & 0xff;
+                green += (color >> 8) & 0xff;
+                blue += color & 0xff;
+            }
+            for (int x = 0; x < width; x++) {
+                out[row + x] = 0xff000000
+                        | (((red * scale + 0x8000) >>> 16) << 16)
+                        | (((green * scale + 0x8000) >>> 16) << 8)
+                        | ((blue * scale + 0x8000) >>> 16);
+
+                int leaving = in[row + Math.max(0, x - radius)];
+                int entering = in[row + Math.min(x + radius + 1, last)];
+                red += ((entering >> 16) & 0xff) - ((leaving >> 16) & 0xff);
+                green += ((entering >> 8) & 0xff) - ((leaving >> 8) & 0xff);
+                blue += (entering & 0xff) - (leaving & 0xff);
+            }
+        }
+    }
+
+    private static void vertical(int[] in, int[] out, int width, int height, int radius) {
+        int scale = (1 << 16) / (radius * 2 + 1);
+        int last = height - 1;
+        for (int x = 0; x < width; x++) {
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int i = -radius; i <= radius; i++) {
+                int color = in[Math.max(0, Math.min(i, last)) * width + x];
+                red += (color >> 16) & 0xff;
+                green += (color >> 8) & 0xff;
+                blue += color & 0xff;
+            }
+            for (int y = 0; y < height; y++) {
+                out[y * width + x] = 0xff000000
+                        | (((red * scale + 0x8000) >>> 16) << 16)
+                        | (((green * scale + 0x8000) >>> 16) << 8)
+                        | ((blue * scale + 0x8000) >>> 16);
+
+                int leaving = in[Math.max(0, y - radius) * width + x];
+                int entering = in[Math.min(y + radius + 1, last) * width + x];
+                red += ((entering >> 16) & 0xff) - ((leaving >> 16) & 0xff);
+                green += ((entering >> 8) & 0xff) - ((leaving >> 8) & 0xff);
+                blue += (entering & 0xff) - (leaving & 0xff);
+            }
+        }
+    }
+}
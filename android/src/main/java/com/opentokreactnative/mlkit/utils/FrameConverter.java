@@ -0,0 +1,115 @@
+package com.opentokreactnative.mlkit.utils;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+
+import com.opentokreactnative.mlkit.camera.FrameMetadata;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns NV21 camera frames into upright ARGB frames without going through a JPEG round-trip.
+ *
+ * The pixel buffer and the Bitmap are kept between frames and only reallocated when the preview
+ * size or rotation changes, so both are only valid until the next call to {@link #convert}.
+ */
+public class FrameConverter {
+
+    public enum Backend {
+        JAVA,
+        TOOLKIT
+    }
+
+    private YuvToRgbConverter converter;
+    // Camera2 planes are always read in Java, the Toolkit only takes flattened NV21.
+    private JavaYuvToRgbConverter planeConverter;
+    private int[] pixels;
+    private Bitmap bitmap;
+
+    public FrameConverter() {
+        this(Backend.JAVA);
+    }
+
+    public FrameConverter(Backend backend) {
+        setBackend(backend);
+    }
+
+    public void setBackend(Backend backend) {
+        converter = backend == Backend.TOOLKIT
+                ? new ToolkitYuvToRgbConverter()
+                : new JavaYuvToRgbConverter();
+    }
+
+    /**
+     * Converts the frame and returns the upright Bitmap. The same pixels are also available
+     * through {@link #getPixels()}.
+     */
+    public Bitmap convert(ByteBuffer data, FrameMetadata metadata) {
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        int rotation = metadata.getRotation();
+        prepare(width, height, rotation);
+
+        converter.convert(data, width, height, rotation, pixels);
+        return updateBitmap();
+    }
+
+    /**
+     * Converts a YUV_420_888 image straight from its planes and returns the upright Bitmap. The
+     * image is left open.
+     */
+    public Bitmap convert(Image image, int rotation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        prepare(width, height, rotation);
+
+        if (planeConverter == null) {
+            planeConverter = new JavaYuvToRgbConverter();
+        }
+        Image.Plane[] planes = image.getPlanes();
+        planeConverter.convert(
+                planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride(),
+                width, height, rotation, pixels);
+        return updateBitmap();
+    }
+
+    private void prepare(int width, int height, int rotation) {
+        boolean swapSides = rotation == 90 || rotation == 270;
+        int outputWidth = swapSides ? height : width;
+        int outputHeight = swapSides ? width : height;
+
+        if (pixels == null || pixels.length != width * height) {
+            pixels = new int[width * height];
+        }
+        if (bitmap == null
+                || bitmap.getWidth() != outputWidth
+                || bitmap.getHeight() != outputHeight) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            bitmap = Bitmap.createBitmap(outputWidth, outputHeight, Bitmap.Config.ARGB_8888);
+        }
+    }
+
+    private Bitmap updateBitmap() {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        return bitmap;
+    }
+
+    /** Returns the ARGB pixels of the last converted frame, row by row and already rotated. */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public void release() {
+        if (bitmap != null) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+        pixels = null;
+    }
+}
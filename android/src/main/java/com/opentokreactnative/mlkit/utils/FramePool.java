@@ -0,0 +1,164 @@
+package com.opentokreactnative.mlkit.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size keyed pool of Bitmaps and pixel arrays shared by the video filter pipeline.
+ *
+ * Every filtered frame needs the same handful of buffers, so instead of allocating them per frame
+ * the overlays borrow them here and give them back once the frame is done. Retention is bounded:
+ * at most {@link #MAX_SIZES} distinct sizes are kept, each with at most {@link #MAX_PER_SIZE} idle
+ * buffers, and the least recently used size is evicted first. Lookups are linear scans over a
+ * handful of slots so that borrowing and returning do not allocate.
+ */
+public class FramePool {
+
+    private static final int MAX_SIZES = 8;
+    private static final int MAX_PER_SIZE = 3;
+
+    private final Slot[] bitmapSlots = new Slot[MAX_SIZES];
+    private final Slot[] intSlots = new Slot[MAX_SIZES];
+    private long useCounter = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public FramePool() {
+        for (int i = 0; i < MAX_SIZES; i++) {
+            bitmapSlots[i] = new Slot();
+            intSlots[i] = new Slot();
+        }
+    }
+
+    /** Borrows a mutable ARGB_8888 Bitmap. Its previous content is undefined. */
+    public synchronized Bitmap acquireBitmap(int width, int height) {
+        Slot slot = find(bitmapSlots, width, height);
+        if (slot != null && slot.count > 0) {
+            hits.incrementAndGet();
+            return (Bitmap) slot.take();
+        }
+        misses.incrementAndGet();
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public synchronized void releaseBitmap(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        Slot slot = findOrClaim(bitmapSlots, bitmap.getWidth(), bitmap.getHeight());
+        if (!slot.offer(bitmap)) {
+            bitmap.recycle();
+        }
+    }
+
+    /** Borrows an int array of exactly the given length. Its previous content is undefined. */
+    public synchronized int[] acquireInts(int length) {
+        Slot slot = find(intSlots, length, 1);
+        if (slot != null && slot.count > 0) {
+            hits.incrementAndGet();
+            return (int[]) slot.take();
+        }
+        misses.incrementAndGet();
+        return new int[length];
+    }
+
+    public synchronized void releaseInts(int[] array) {
+        if (array == null) {
+            return;
+        }
+        findOrClaim(intSlots, array.length, 1).offer(array);
+    }
+
+    /**
+     * Drops every idle buffer. Called when the preview size changes, since none of the buffers
+     * sized for the previous resolution will be asked for again.
+     */
+    public synchronized void evictAll() {
+        for (int i = 0; i < MAX_SIZES; i++) {
+            evict(bitmapSlots[i]);
+            evict(intSlots[i]);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private Slot find(Slot[] slots, int width, int height) {
+        for (Slot slot : slots) {
+            if (slot.width == width && slot.height == height) {
+                slot.lastUse = ++useCounter;
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private Slot findOrClaim(Slot[] slots, int width, int height) {
+        Slot slot = find(slots, width, height);
+        if (slot != null) {
+            return slot;
+        }
+
+        Slot leastRecent = slots[0];
+        for (Slot candidate : slots) {
+            if (candidate.width == 0) {
+                leastRecent = candidate;
+                break;
+            }
+            if (candidate.lastUse < leastRecent.lastUse) {
+                leastRecent = candidate;
+            }
+        }
+        evict(leastRecent);
+        leastRecent.width = width;
+        leastRecent.height = height;
+        leastRecent.lastUse = ++useCounter;
+        return leastRecent;
+    }
+
+    private void evict(Slot slot) {
+        while (slot.count > 0) {
+            Object item = slot.take();
+            if (item instanceof Bitmap) {
+                ((Bitmap) item).recycle();
+            }
+            evictions.incrementAndGet();
+        }
+        slot.width = 0;
+        slot.height = 0;
+    }
+
+    private static class Slot {
+        int width;
+        int height;
+        long lastUse;
+        final Object[] items = new Object[MAX_PER_SIZE];
+        int count;
+
+        Object take() {
+            Object item = items[--count];
+            items[count] = null;
+            return item;
+        }
+
+        boolean offer(Object item) {
+            if (count == items.length) {
+                return false;
+            }
+            items[count++] = item;
+            return true;
+        }
+    }
+}
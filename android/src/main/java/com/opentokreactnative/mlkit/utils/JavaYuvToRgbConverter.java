@@ -0,0 +1,175 @@
+package com.opentokreactnative.mlkit.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Table driven NV21 to ARGB converter written in plain Java. It also reads YUV_420_888 planes
+ * as they come from Camera2, strides included, so those frames never need flattening to NV21.
+ *
+ * Uses the BT.601 limited range coefficients, the same ones {@link android.graphics.YuvImage}
+ * uses, in 16.16 fixed point. Every per-channel multiplication is looked up from a table built
+ * once, so the inner loop only adds, shifts and clamps.
+ */
+public class JavaYuvToRgbConverter implements YuvToRgbConverter {
+
+    private static final int SHIFT = 16;
+
+    private static final int[] Y_TABLE = new int[256];
+    private static final int[] RV_TABLE = new int[256];
+    private static final int[] GU_TABLE = new int[256];
+    private static final int[] GV_TABLE = new int[256];
+    private static final int[] BU_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            Y_TABLE[i] = (int) (1.164f * 65536 * Math.max(i - 16, 0));
+            RV_TABLE[i] = (int) (1.596f * 65536 * (i - 128));
+            GU_TABLE[i] = (int) (0.391f * 65536 * (i - 128));
+            GV_TABLE[i] = (int) (0.813f * 65536 * (i - 128));
+            BU_TABLE[i] = (int) (2.018f * 65536 * (i - 128));
+        }
+    }
+
+    // Destination index of the source pixel (x, y) is base + x * stepX + y * stepY.
+    private int base;
+    private int stepX;
+    private int stepY;
+
+    @Override
+    public void convert(ByteBuffer nv21, int width, int height, int rotationDegrees, int[] out) {
+        setRotation(width, height, rotationDegrees);
+        if (nv21.hasArray()) {
+            convert(nv21.array(), nv21.arrayOffset(), width, height, base, stepX, stepY, out);
+        } else {
+            convert(nv21, width, height, base, stepX, stepY, out);
+        }
+    }
+
+    /**
+     * Converts a frame given as separate Y, U and V planes into ARGB pixels. The Y plane must
+     * have a pixel stride of 1, which YUV_420_888 guarantees; the chroma planes share their row
+     * and pixel strides.
+     */
+    public void convert(
+            ByteBuffer yPlane, int yRowStride,
+            ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+            int width, int height, int rotationDegrees, int[] out) {
+        setRotation(width, height, rotationDegrees);
+
+        for (int y = 0; y < height; y++) {
+            int yIndex = y * yRowStride;
+            int uvIndex = (y >> 1) * uvRowStride;
+            int outIndex = base + y * stepY;
+            for (int x = 0; x < width; x += 2) {
+                int u = uPlane.get(uvIndex) & 0xff;
+                int v = vPlane.get(uvIndex) & 0xff;
+                uvIndex += uvPixelStride;
+                int r = RV_TABLE[v];
+                int g = -GU_TABLE[u] - GV_TABLE[v];
+                int b = BU_TABLE[u];
+
+                int luma = Y_TABLE[yPlane.get(yIndex++) & 0xff];
+                out[outIndex] = pack(luma + r, luma + g, luma + b);
+                outIndex += stepX;
+
+                if (x + 1 < width) {
+                    luma = Y_TABLE[yPlane.get(yIndex++) & 0xff];
+                    out[outIndex] = pack(luma + r, luma + g, luma + b);
+                    outIndex += stepX;
+                }
+            }
+        }
+    }
+
+    private void setRotation(int width, int height, int rotationDegrees) {
+        switch (rotationDegrees) {
+            case 90:
+                base = height - 1;
+                stepX = height;
+                stepY = -1;
+                break;
+            case 180:
+                base = width * height - 1;
+                stepX = -1;
+                stepY = -width;
+                break;
+            case 270:
+                base = (width - 1) * height;
+                stepX = -height;
+                stepY = 1;
+                break;
+            default:
+                base = 0;
+                stepX = 1;
+                stepY = width;
+                break;
+        }
+    }
+
+    private static void convert(
+            byte[] data, int offset, int width, int height,
+            int base, int stepX, int stepY, int[] out) {
+        int uvStart = offset + width * height;
+        for (int y = 0; y < height; y++) {
+            int yIndex = offset + y * width;
+            int uvIndex = uvStart + (y >> 1) * width;
+            int outIndex = base + y * stepY;
+            for (int x = 0; x < width; x += 2) {
+                int v = data[uvIndex++] & 0xff;
+                int u = data[uvIndex++] & 0xff;
+                int r = RV_TABLE[v];
+                int g = -GU_TABLE[u] - GV_TABLE[v];
+                int b = BU_TABLE[u];
+
+                int luma = Y_TABLE[data[yIndex++] & 0xff];
+                out[outIndex] = pack(luma + r, luma + g, luma + b);
+                outIndex += stepX;
+
+                if (x + 1 < width) {
+                    luma = Y_TABLE[data[yIndex++] & 0xff];
+                    out[outIndex] = pack(luma + r, luma + g, luma + b);
+                    outIndex += stepX;
+                }
+            }
+        }
+    }
+
+    private static void convert(
+            ByteBuffer data, int width, int height,
+            int base, int stepX, int stepY, int[] out) {
+        int uvStart = width * height;
+        for (int y = 0; y < height; y++) {
+            int yIndex = y * width;
+            int uvIndex = uvStart + (y >> 1) * width;
+            int outIndex = base + y * stepY;
+            for (int x = 0; x < width; x += 2) {
+                int v = data.get(uvIndex++) & 0xff;
+                int u = data.get(uvIndex++) & 0xff;
+                int r = RV_TABLE[v];
+                int g = -GU_TABLE[u] - GV_TABLE[v];
+                int b = BU_TABLE[u];
+
+                int luma = Y_TABLE[data.get(yIndex++) & 0xff];
+                out[outIndex] = pack(luma + r, luma + g, luma + b);
+                outIndex += stepX;
+
+                if (x + 1 < width) {
+                    luma = Y_TABLE[data.get(yIndex++) & 0xff];
+                    out[outIndex] = pack(luma + r, luma + g, luma + b);
+                    outIndex += stepX;
+                }
+            }
+        }
+    }
+
+    private static int pack(int r, int g, int b) {
+        r = clamp(r >> SHIFT);
+        g = clamp(g >> SHIFT);
+        b = clamp(b >> SHIFT);
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
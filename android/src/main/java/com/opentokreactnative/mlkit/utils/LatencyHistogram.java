@@ -0,0 +1,98 @@
+package com.opentokreactnative.mlkit.utils;
+
+import java.util.Arrays;
+
+/**
+ * Rolling window of latency samples, in microseconds.
+ *
+ * Recording only writes into a fixed ring of primitives, so it can be called from the frame loop.
+ * Percentiles are computed on demand from a sorted copy of the window, which is the only place
+ * that allocates.
+ */
+public class LatencyHistogram {
+
+    private static final int DEFAULT_WINDOW = 256;
+
+    private final long[] samples;
+    private int next = 0;
+    private int size = 0;
+    private long count = 0;
+    private long dropped = 0;
+    private long lastMicros = 0;
+    private long maxMicros = 0;
+
+    public LatencyHistogram() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public LatencyHistogram(int window) {
+        samples = new long[window];
+    }
+
+    public synchronized void record(long micros) {
+        samples[next] = micros;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+        count++;
+        lastMicros = micros;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+    }
+
+    public synchronized void recordDrop() {
+        dropped++;
+    }
+
+    public synchronized void reset() {
+        next = 0;
+        size = 0;
+        count = 0;
+        dropped = 0;
+        lastMicros = 0;
+        maxMicros = 0;
+    }
+
+    /** Total number of samples recorded, including the ones that left the window. */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getLastMicros() {
+        return lastMicros;
+    }
+
+    /** Largest sample recorded since the last reset. */
+    public synchronized long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /** Returns the given percentile, in [0, 100], of the samples in the window. */
+    public long getPercentileMicros(double percentile) {
+        return getPercentilesMicros(percentile)[0];
+    }
+
+    /** Returns several percentiles of the same window at once, in the order they are asked for. */
+    public long[] getPercentilesMicros(double... percentiles) {
+        long[] window;
+        synchronized (this) {
+            window = Arrays.copyOf(samples, size);
+        }
+        long[] result = new long[percentiles.length];
+        if (window.length == 0) {
+            return result;
+        }
+        Arrays.sort(window);
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100.0 * window.length) - 1;
+            result[i] = window[Math.max(0, Math.min(index, window.length - 1))];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+package com.opentokreactnative.mlkit.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps a temporally smoothed segmentation mask.
+ *
+ * Every new mask is blended straight from its buffer into the smoothed mask with an exponential
+ * moving average, which keeps mask edges from flickering between frames. Frames composited while
+ * segmentation is skipped keep using the smoothed mask as it is. The smoothed mask is only
+ * reallocated when the mask size changes, so feeding masks does not allocate.
+ */
+public class MaskCache {
+
+    /** Weight of the newest mask in the smoothed one. */
+    public static final float DEFAULT_SMOOTHING = 0.6f;
+
+    private float[] smoothed;
+    private boolean empty = true;
+    private int width = 0;
+    private int height = 0;
+    private volatile float smoothing = DEFAULT_SMOOTHING;
+
+    /**
+     * Sets the weight of the newest mask, in (0, 1]. 1 disables smoothing, lower values react
+     * slower to movement but hide more of the segmentation noise.
+     */
+    public void setSmoothing(float smoothing) {
+        this.smoothing = Math.max(0.01f, Math.min(1f, smoothing));
+    }
+
+    /**
+     * Adds a mask of {@code width * height} floats, read with absolute indexes so the buffer
+     * position is left alone.
+     */
+    public void update(ByteBuffer mask, int width, int height) {
+        int length = width * height;
+        if (width != this.width || height != this.height) {
+            resize(width, height);
+        }
+
+        if (empty) {
+            for (int i = 0; i < length; i++) {
+                smoothed[i] = mask.getFloat(i * 4);
+            }
+            empty = false;
+        } else {
+            float weight = smoothing;
+            float keep = 1f - weight;
+            for (int i = 0; i < length; i++) {
+                smoothed[i] = mask.getFloat(i * 4) * weight + smoothed[i] * keep;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /** The smoothed mask, row by row. Only valid until the next update. */
+    public float[] getSmoothed() {
+        return smoothed;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void clear() {
+        empty = true;
+    }
+
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        smoothed = new float[width * height];
+        // Masks of another size can't be blended with the new ones.
+        clear();
+    }
+}
@@ -0,0 +1,99 @@
+package com.opentokreactnative.mlkit.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Shrinks camera frames into a small NV21 proxy for the detectors.
+ *
+ * Each luma sample averages the 2x2 source pixels around its position and each chroma sample is
+ * picked from the nearest source one, all in 16.16 fixed point. That is far cheaper than a real
+ * resampling filter and good enough for inference, which only needs the proxy to keep the shapes
+ * of the scene. The output buffer is kept between calls and reallocated when the size grows.
+ */
+public class Nv21Downscaler {
+
+    private ByteBuffer output;
+    private int outputWidth;
+    private int outputHeight;
+
+    /** Downscales an NV21 frame, see {@link #getOutput()} for the result. */
+    public ByteBuffer downscale(ByteBuffer nv21, int width, int height, int outputWidth, int outputHeight) {
+        int frameSize = width * height;
+        return downscale(nv21, width, nv21, nv21, width, 2, frameSize + 1, frameSize,
+                width, height, outputWidth, outputHeight);
+    }
+
+    /**
+     * Downscales YUV_420_888 planes into an NV21 proxy. The Y plane must have a pixel stride of 1,
+     * the chroma planes share their row and pixel strides.
+     */
+    public ByteBuffer downscale(
+            ByteBuffer yPlane, int yRowStride,
+            ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+            int width, int height, int outputWidth, int outputHeight) {
+        return downscale(yPlane, yRowStride, uPlane, vPlane, uvRowStride, uvPixelStride, 0, 0,
+                width, height, outputWidth, outputHeight);
+    }
+
+    public ByteBuffer getOutput() {
+        return output;
+    }
+
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    public int getOutputHeight() {
+        return outputHeight;
+    }
+
+    private ByteBuffer downscale(
+            ByteBuffer yPlane, int yRowStride,
+            ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride,
+            int uOffset, int vOffset,
+            int width, int height, int outputWidth, int outputHeight) {
+        // NV21 chroma is subsampled by two, so the proxy keeps even sides.
+        outputWidth = Math.max(outputWidth & ~1, 2);
+        outputHeight = Math.max(outputHeight & ~1, 2);
+        this.outputWidth = outputWidth;
+        this.outputHeight = outputHeight;
+
+        int outputSize = outputWidth * outputHeight * 3 / 2;
+        if (output == null || output.capacity() < outputSize) {
+            output = ByteBuffer.allocateDirect(outputSize);
+        }
+
+        int stepX = (width << 16) / outputWidth;
+        int stepY = (height << 16) / outputHeight;
+        int lastX = width - 1;
+        int lastY = height - 1;
+
+        int index = 0;
+        for (int y = 0, sy = stepY >> 1; y < outputHeight; y++, sy += stepY) {
+            int y0 = Math.min(sy >> 16, lastY);
+            int row0 = y0 * yRowStride;
+            int row1 = Math.min(y0 + 1, lastY) * yRowStride;
+            for (int x = 0, sx = stepX >> 1; x < outputWidth; x++, sx += stepX) {
+                int x0 = Math.min(sx >> 16, lastX);
+                int x1 = Math.min(x0 + 1, lastX);
+                int sum = (yPlane.get(row0 + x0) & 0xff) + (yPlane.get(row0 + x1) & 0xff)
+                        + (yPlane.get(row1 + x0) & 0xff) + (yPlane.get(row1 + x1) & 0xff);
+                output.put(index++, (byte) (sum >> 2));
+            }
+        }
+
+        // Interleaved VU, one pair per 2x2 block of the proxy.
+        for (int y = 0, sy = stepY; y < outputHeight; y += 2, sy += stepY * 2) {
+            int uvRow = (Math.min(sy >> 16, lastY) >> 1) * uvRowStride;
+            for (int x = 0, sx = stepX; x < outputWidth; x += 2, sx += stepX * 2) {
+                int uvIndex = uvRow + (Math.min(sx >> 16, lastX) >> 1) * uvPixelStride;
+                output.put(index++, vPlane.get(vOffset + uvIndex));
+                output.put(index++, uPlane.get(uOffset + uvIndex));
+            }
+        }
+
+        output.position(0);
+        output.limit(outputSize);
+        return output;
+    }
+}
@@ -0,0 +1,60 @@
+package com.opentokreactnative.mlkit.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latency histograms for every stage of the video filter pipeline, kept in the order the stages
+ * were first asked for. Components register the stages they time themselves, so the set of
+ * stages follows whatever the pipeline is actually made of.
+ */
+public class PipelineStats {
+
+    /** Copying the camera preview into the pipeline. */
+    public static final String CAPTURE = "capture";
+    /** NV21 to ARGB conversion. */
+    public static final String CONVERT = "convert";
+    /** Waiting for detectInImage. */
+    public static final String DETECT = "detect";
+    /** Pixelating faces. */
+    public static final String FACE_OVERLAY = "faceOverlay";
+    /** Blurring or replacing the background. */
+    public static final String BACKGROUND_OVERLAY = "backgroundOverlay";
+    /** Pixelating faces and blurring the background together, when rendered on the GPU. */
+    public static final String GPU_FILTERS = "gpuFilters";
+    /** The whole compositing stage, overlays and output included. */
+    public static final String COMPOSITE = "composite";
+    /** Handing the filtered frame to the publisher through provideIntArrayFrame. */
+    public static final String OUTPUT = "output";
+    /** From the pipeline taking a camera frame to the filtered frame being handed over. */
+    public static final String TOTAL = "total";
+    /** From filters being turned on to their first results. */
+    public static final String WARM_UP = "warmUp";
+    /** From filters being turned on or off to the crossfade being complete. */
+    public static final String TRANSITION = "transition";
+    /** From the capture being started to its first frame being handed to the publisher. */
+    public static final String FIRST_FRAME = "firstFrame";
+
+    private final Map<String, LatencyHistogram> stages = new LinkedHashMap<>();
+
+    /** Returns the histogram of the given stage, creating it the first time. */
+    public synchronized LatencyHistogram stage(String name) {
+        LatencyHistogram histogram = stages.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            stages.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /** Returns a snapshot of the stages registered so far, in pipeline order. */
+    public synchronized Map<String, LatencyHistogram> getStages() {
+        return new LinkedHashMap<>(stages);
+    }
+
+    public synchronized void reset() {
+        for (LatencyHistogram histogram : stages.values()) {
+            histogram.reset();
+        }
+    }
+}
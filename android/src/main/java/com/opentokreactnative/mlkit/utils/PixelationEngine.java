@@ -0,0 +1,184 @@
+package com.opentokreactnative.mlkit.utils;
+
+import java.util.Arrays;
+
+/**
+ * Pixelates regions of an ARGB frame in place.
+ *
+ * Regions are collected with {@link #addRegion} and applied together by {@link #apply}, so any
+ * number of faces costs a single walk over their rectangles and never a copy of the frame. Each
+ * block is averaged from every pixel it covers using per-block running sums that are filled row
+ * by row, which keeps memory access sequential. A region can be clipped to a circle, in which case
+ * only the pixels inside it receive the block color.
+ *
+ * All scratch storage is kept between frames, so steady state use does not allocate.
+ */
+public class PixelationEngine {
+
+    private static final int REGION_STRIDE = 7;
+
+    private int[] regions = new int[REGION_STRIDE * 4];
+    private int regionCount = 0;
+
+    private int[] sumRed = new int[0];
+    private int[] sumGreen = new int[0];
+    private int[] sumBlue = new int[0];
+    private int[] sumCount = new int[0];
+    private int[] blockColor = new int[0];
+
+    private final int blockSize;
+
+    public PixelationEngine(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void clear() {
+        regionCount = 0;
+    }
+
+    /** Adds a rectangle, right and bottom exclusive, that is pixelated as a whole. */
+    public void addRegion(int left, int top, int right, int bottom) {
+        addRegion(left, top, right, bottom, 0, 0, 0);
+    }
+
+    /**
+     * Adds a rectangle, right and bottom exclusive, in which only the pixels inside the circle
+     * centered on (centerX, centerY) are pixelated. A radius of zero disables the clipping.
+     */
+    public void addRegion(int left, int top, int right, int bottom, int centerX, int centerY, int radius) {
+        if (right <= left || bottom <= top) {
+            return;
+        }
+        if ((regionCount + 1) * REGION_STRIDE > regions.length) {
+            int[] grown = new int[regions.length * 2];
+            System.arraycopy(regions, 0, grown, 0, regions.length);
+            regions = grown;
+        }
+        int offset = regionCount * REGION_STRIDE;
+        regions[offset] = left;
+        regions[offset + 1] = top;
+        regions[offset + 2] = right;
+        regions[offset + 3] = bottom;
+        regions[offset + 4] = centerX;
+        regions[offset + 5] = centerY;
+        regions[offset + 6] = radius;
+        regionCount++;
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * Copies a region as added, unclamped, into {@code out}: left, top, right, bottom, centerX,
+     * centerY and radius.
+     */
+    public void getRegion(int index, int[] out) {
+        System.arraycopy(regions, index * REGION_STRIDE, out, 0, REGION_STRIDE);
+    }
+
+    /** Pixelates every added region of the frame. Regions are clamped to the frame bounds. */
+    public void apply(int[] frame, int width, int height) {
+        for (int i = 0; i < regionCount; i++) {
+            int offset = i * REGION_STRIDE;
+            int left = Math.max(regions[offset], 0);
+            int top = Math.max(regions[offset + 1], 0);
+            int right = Math.min(regions[offset + 2], width);
+            int bottom = Math.min(regions[offset + 3], height);
+            if (right <= left || bottom <= top) {
+                continue;
+            }
+            pixelateRegion(frame, width, left, top, right, bottom,
+                    regions[offset + 4], regions[offset + 5], regions[offset + 6]);
+        }
+    }
+
+    private void pixelateRegion(
+            int[] frame, int width, int left, int top, int right, int bottom,
+            int centerX, int centerY, int radius) {
+        int blocksX = (right - left + blockSize - 1) / blockSize;
+        ensureCapacity(blocksX);
+        long radiusSquared = (long) radius * radius;
+
+        for (int blockTop = top; blockTop < bottom; blockTop += blockSize) {
+            int blockBottom = Math.min(blockTop + blockSize, bottom);
+
+            for (int bx = 0; bx < blocksX; bx++) {
+                sumRed[bx] = 0;
+                sumGreen[bx] = 0;
+                sumBlue[bx] = 0;
+                sumCount[bx] = 0;
+            }
+
+            // Accumulate every pixel of this row of blocks.
+            for (int y = blockTop; y < blockBottom; y++) {
+                int rowStart = y * width;
+                int x = left;
+                for (int bx = 0; bx < blocksX; bx++) {
+                    int blockRight = Math.min(x + blockSize, right);
+                    int red = 0;
+                    int green = 0;
+                    int blue = 0;
+                    for (int i = rowStart + x, end = rowStart + blockRight; i < end; i++) {
+                        int pixel = frame[i];
+                        red += (pixel >> 16) & 0xff;
+                        green += (pixel >> 8) & 0xff;
+                        blue += pixel & 0xff;
+                    }
+                    sumRed[bx] += red;
+                    sumGreen[bx] += green;
+                    sumBlue[bx] += blue;
+                    sumCount[bx] += blockRight - x;
+                    x = blockRight;
+                }
+            }
+
+            for (int bx = 0; bx < blocksX; bx++) {
+                int count = sumCount[bx];
+                blockColor[bx] = 0xff000000
+                        | ((sumRed[bx] / count) << 16)
+                        | ((sumGreen[bx] / count) << 8)
+                        | (sumBlue[bx] / count);
+            }
+
+            // Fill the row of blocks, restricted to the circle span of each row when clipping.
+            for (int y = blockTop; y < blockBottom; y++) {
+                int spanLeft = left;
+                int spanRight = right;
+                if (radius > 0) {
+                    long dy = y - centerY;
+                    long remaining = radiusSquared - dy * dy;
+                    if (remaining < 0) {
+                        continue;
+                    }
+                    int halfSpan = (int) Math.sqrt(remaining);
+                    spanLeft = Math.max(left, centerX - halfSpan);
+                    spanRight = Math.min(right, centerX + halfSpan + 1);
+                    if (spanRight <= spanLeft) {
+                        continue;
+                    }
+                }
+
+                int rowStart = y * width;
+                int x = spanLeft;
+                while (x < spanRight) {
+                    int bx = (x - left) / blockSize;
+                    int blockRight = Math.min(left + (bx + 1) * blockSize, spanRight);
+                    Arrays.fill(frame, rowStart + x, rowStart + blockRight, blockColor[bx]);
+                    x = blockRight;
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity(int blocks) {
+        if (sumRed.length >= blocks) {
+            return;
+        }
+        sumRed = new int[blocks];
+        sumGreen = new int[blocks];
+        sumBlue = new int[blocks];
+        sumCount = new int[blocks];
+        blockColor = new int[blocks];
+    }
+}
@@ -0,0 +1,48 @@
+package com.opentokreactnative.mlkit.utils;
+
+import android.graphics.Bitmap;
+
+import com.google.android.renderscript.Toolkit;
+import com.google.android.renderscript.YuvFormat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * NV21 to ARGB converter backed by the RenderScript Intrinsics Replacement Toolkit.
+ *
+ * The Toolkit runs the conversion with SIMD on its own thread pool, but it always returns a new
+ * unrotated Bitmap, so the pixels are read back into a reusable buffer and rotated from there.
+ */
+public class ToolkitYuvToRgbConverter implements YuvToRgbConverter {
+
+    private byte[] input;
+    private int[] unrotated;
+
+    @Override
+    public void convert(ByteBuffer nv21, int width, int height, int rotationDegrees, int[] out) {
+        byte[] data;
+        if (nv21.hasArray() && nv21.arrayOffset() == 0) {
+            data = nv21.array();
+        } else {
+            int size = width * height * 3 / 2;
+            if (input == null || input.length < size) {
+                input = new byte[size];
+            }
+            nv21.rewind();
+            nv21.get(input, 0, size);
+            data = input;
+        }
+
+        Bitmap bitmap = Toolkit.INSTANCE.yuvToRgbBitmap(data, width, height, YuvFormat.NV21);
+        if (rotationDegrees == 0) {
+            bitmap.getPixels(out, 0, width, 0, 0, width, height);
+        } else {
+            if (unrotated == null || unrotated.length < width * height) {
+                unrotated = new int[width * height];
+            }
+            bitmap.getPixels(unrotated, 0, width, 0, 0, width, height);
+            BitmapUtils.rotatePixels(unrotated, width, height, rotationDegrees, out);
+        }
+        bitmap.recycle();
+    }
+}
@@ -0,0 +1,20 @@
+package com.opentokreactnative.mlkit.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts NV21 camera frames into ARGB_8888 pixels, rotating them upright on the way.
+ */
+public interface YuvToRgbConverter {
+
+    /**
+     * Converts an NV21 frame into ARGB pixels.
+     *
+     * @param nv21            frame data, Y plane followed by interleaved VU samples
+     * @param width           width of the frame as delivered by the camera
+     * @param height          height of the frame as delivered by the camera
+     * @param rotationDegrees clockwise rotation to apply, one of 0, 90, 180 or 270
+     * @param out             destination pixels, must hold at least width * height values
+     */
+    void convert(ByteBuffer nv21, int width, int height, int rotationDegrees, int[] out);
+}
@@ -0,0 +1,110 @@
+package com.opentokreactnative.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer single-consumer ring of direct ByteBuffers, which hands audio chunks
+ * from the thread that records them to the thread that consumes them.
+ *
+ * The producer claims the next free slot, fills it and publishes it with its sample count and
+ * capture time. The consumer peeks at the oldest published slot and releases it once done with
+ * it. Each position is only written by its own side and published with an ordered write, so
+ * neither side takes a lock or allocates.
+ */
+public class AudioChunkRing {
+
+    private final ByteBuffer[] slots;
+    private final int[] sampleCounts;
+    private final long[] timesNanos;
+    private final int mask;
+
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+    // Only written by the producer.
+    private volatile long overflows;
+
+    /**
+     * @param capacity   number of chunks, a power of two
+     * @param chunkBytes size of the largest chunk
+     */
+    public AudioChunkRing(int capacity, int chunkBytes) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        slots = new ByteBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = ByteBuffer.allocateDirect(chunkBytes);
+        }
+        sampleCounts = new int[capacity];
+        timesNanos = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    // Producer side.
+
+    /**
+     * Returns the cleared slot to fill next, or null when the consumer is a whole ring behind,
+     * in which case the chunk is counted as an overflow.
+     */
+    public ByteBuffer claim() {
+        long write = writePosition.get();
+        if (write - readPosition.get() >= slots.length) {
+            overflows++;
+            return null;
+        }
+        ByteBuffer slot = slots[(int) write & mask];
+        slot.clear();
+        return slot;
+    }
+
+    /** Hands the claimed slot to the consumer. */
+    public void publish(int samples, long timeNanos) {
+        long write = writePosition.get();
+        int index = (int) write & mask;
+        sampleCounts[index] = samples;
+        timesNanos[index] = timeNanos;
+        writePosition.lazySet(write + 1);
+    }
+
+    // Consumer side.
+
+    /** Returns the oldest published slot, or null if there is none. */
+    public ByteBuffer peek() {
+        long read = readPosition.get();
+        if (read == writePosition.get()) {
+            return null;
+        }
+        return slots[(int) read & mask];
+    }
+
+    /** Samples in the slot returned by {@link #peek()}. */
+    public int peekSamples() {
+        return sampleCounts[(int) readPosition.get() & mask];
+    }
+
+    /** Capture time of the slot returned by {@link #peek()}, in System.nanoTime() time. */
+    public long peekTimeNanos() {
+        return timesNanos[(int) readPosition.get() & mask];
+    }
+
+    /** Gives the slot returned by {@link #peek()} back to the producer. */
+    public void release() {
+        readPosition.lazySet(readPosition.get() + 1);
+    }
+
+    // Either side.
+
+    public int size() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /** Chunks dropped because the ring was full. */
+    public long getOverflows() {
+        return overflows;
+    }
+}
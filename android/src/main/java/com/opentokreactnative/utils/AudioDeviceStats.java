@@ -0,0 +1,131 @@
+package com.opentokreactnative.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timing histograms and glitch counters of the custom audio driver, for both the capture and the
+ * render stream.
+ *
+ * The audio threads only record into the fixed, lock-free windows of the recorders and bump plain
+ * fields, so collecting costs them no allocation and never makes them wait on a reader. Counters
+ * are written by a single thread each and may be read from any thread.
+ */
+public class AudioDeviceStats {
+
+    /** AudioRecord.read() of a 10 ms chunk. */
+    public static final String CAPTURE_READ = "captureRead";
+    /** Handing a recorded chunk to the AudioBus through writeCaptureData(). */
+    public static final String CAPTURE_WRITE = "captureWrite";
+    /** From a chunk being recorded to it being handed to the AudioBus. */
+    public static final String CAPTURE_QUEUE = "captureQueue";
+    /** How far apart consecutive reads completed, off the 10 ms cadence. */
+    public static final String CAPTURE_JITTER = "captureJitter";
+    /** Capture delay reported to the AudioBus. */
+    public static final String CAPTURE_DELAY = "captureDelay";
+    /** Pulling a buffer from the AudioBus through readRenderData(). */
+    public static final String RENDER_READ = "renderRead";
+    /** AudioTrack.write() of a buffer. */
+    public static final String RENDER_WRITE = "renderWrite";
+    /** How far apart consecutive writes completed, off the cadence of the output buffer. */
+    public static final String RENDER_JITTER = "renderJitter";
+    /** Render delay reported to the AudioBus. */
+    public static final String RENDER_DELAY = "renderDelay";
+
+    private static final String[] HISTOGRAMS = {
+            CAPTURE_READ, CAPTURE_WRITE, CAPTURE_QUEUE, CAPTURE_JITTER, CAPTURE_DELAY,
+            RENDER_READ, RENDER_WRITE, RENDER_JITTER, RENDER_DELAY
+    };
+
+    // Filled once, never modified afterwards, so it is read without locking.
+    private final Map<String, AudioLatencyRecorder> histograms = new LinkedHashMap<>();
+
+    private volatile int captureSampleRate;
+    private volatile int renderSampleRate;
+    private volatile int renderFramesPerBuffer;
+    private volatile boolean lowLatencyRender;
+    private volatile long captureOverruns;
+    private volatile long captureMissedReads;
+    private volatile long captureMissedDeliveries;
+    private volatile long renderUnderruns;
+
+    public AudioDeviceStats() {
+        for (String name : HISTOGRAMS) {
+            histograms.put(name, new AudioLatencyRecorder());
+        }
+    }
+
+    /** Returns the histogram of the given name, the audio threads keep it rather than look it up. */
+    public AudioLatencyRecorder histogram(String name) {
+        return histograms.get(name);
+    }
+
+    /** Returns the histograms in the order above. */
+    public Map<String, AudioLatencyRecorder> getHistograms() {
+        return new LinkedHashMap<>(histograms);
+    }
+
+    public void setCaptureFormat(int sampleRate) {
+        captureSampleRate = sampleRate;
+    }
+
+    public void setRenderFormat(int sampleRate, int framesPerBuffer, boolean lowLatency) {
+        renderSampleRate = sampleRate;
+        renderFramesPerBuffer = framesPerBuffer;
+        lowLatencyRender = lowLatency;
+    }
+
+    public void setCaptureCounters(long overruns, long missedReads, long missedDeliveries) {
+        captureOverruns = overruns;
+        captureMissedReads = missedReads;
+        captureMissedDeliveries = missedDeliveries;
+    }
+
+    public void addRenderUnderruns(int underruns) {
+        renderUnderruns += underruns;
+    }
+
+    public int getCaptureSampleRate() {
+        return captureSampleRate;
+    }
+
+    public int getRenderSampleRate() {
+        return renderSampleRate;
+    }
+
+    public int getRenderFramesPerBuffer() {
+        return renderFramesPerBuffer;
+    }
+
+    /** Whether the render track got the low latency output path. */
+    public boolean isLowLatencyRender() {
+        return lowLatencyRender;
+    }
+
+    /** Recorded chunks dropped because the AudioBus fell behind. */
+    public long getCaptureOverruns() {
+        return captureOverruns;
+    }
+
+    /** Reads that took longer than the capture deadline. */
+    public long getCaptureMissedReads() {
+        return captureMissedReads;
+    }
+
+    /** Chunks that reached the AudioBus later than the capture deadline. */
+    public long getCaptureMissedDeliveries() {
+        return captureMissedDeliveries;
+    }
+
+    /** Underruns reported by the render tracks, on Android 7.0 and later. */
+    public long getRenderUnderruns() {
+        return renderUnderruns;
+    }
+
+    /** Clears the histograms, the counters keep counting over the life of the driver. */
+    public void reset() {
+        for (AudioLatencyRecorder histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.opentokreactnative.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free rolling window of latency samples, in microseconds, for the audio threads.
+ *
+ * Unlike LatencyHistogram, recording never takes a lock, so a stats reader can't hold up a
+ * real-time audio thread. Samples are only recorded by one thread at a time, which writes them
+ * into a ring and then publishes its position with an ordered write. Readers copy the window
+ * without stopping the writer, so a window read while it is being written may mix in a few of the
+ * newest samples. Drops may be counted from any thread.
+ *
+ * A reset is only requested by the reader and carried out by the writer on its next sample, so
+ * the writer stays the only one touching the ring.
+ */
+public class AudioLatencyRecorder {
+
+    private static final int DEFAULT_WINDOW = 256;
+
+    private final AtomicLongArray samples;
+    private final int mask;
+    // Samples recorded since the last reset, the index of the next one in the ring.
+    private final AtomicLong position = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Only written by the recording thread.
+    private volatile long lastMicros;
+    private volatile long maxMicros;
+    private volatile boolean resetRequested;
+
+    public AudioLatencyRecorder() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /** @param window number of samples kept for the percentiles, a power of two */
+    public AudioLatencyRecorder(int window) {
+        if (window <= 0 || (window & (window - 1)) != 0) {
+            throw new IllegalArgumentException("Window must be a power of two: " + window);
+        }
+        samples = new AtomicLongArray(window);
+        mask = window - 1;
+    }
+
+    public void record(long micros) {
+        clearIfResetRequested();
+        long next = position.get();
+        samples.lazySet((int) next & mask, micros);
+        lastMicros = micros;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+        position.lazySet(next + 1);
+    }
+
+    public void recordDrop() {
+        dropped.incrementAndGet();
+    }
+
+    /** Clears the recorder before the next sample is recorded, it reads as empty until then. */
+    public void reset() {
+        dropped.set(0);
+        resetRequested = true;
+    }
+
+    /** Total number of samples recorded, including the ones that left the window. */
+    public long getCount() {
+        return resetRequested ? 0 : position.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getLastMicros() {
+        return resetRequested ? 0 : lastMicros;
+    }
+
+    /** Largest sample recorded since the last reset. */
+    public long getMaxMicros() {
+        return resetRequested ? 0 : maxMicros;
+    }
+
+    /** Returns several percentiles of the same window at once, in the order they are asked for. */
+    public long[] getPercentilesMicros(double... percentiles) {
+        long[] result = new long[percentiles.length];
+        long end = getCount();
+        int size = (int) Math.min(end, samples.length());
+        if (size == 0) {
+            return result;
+        }
+        long[] window = new long[size];
+        for (int i = 0; i < size; i++) {
+            window[i] = samples.get((int) (end - size + i) & mask);
+        }
+        Arrays.sort(window);
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100.0 * size) - 1;
+            result[i] = window[Math.max(0, Math.min(index, size - 1))];
+        }
+        return result;
+    }
+
+    private void clearIfResetRequested() {
+        if (!resetRequested) {
+            return;
+        }
+        position.lazySet(0);
+        lastMicros = 0;
+        maxMicros = 0;
+        resetRequested = false;
+    }
+}
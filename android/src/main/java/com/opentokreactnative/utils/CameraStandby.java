@@ -0,0 +1,63 @@
+package com.opentokreactnative.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.opentokreactnative.mlkit.camera.FrameSource;
+
+/**
+ * Keeps the camera of a destroyed publisher open and paused, so that the next publisher can
+ * start capturing without opening and configuring a camera again.
+ *
+ * A single camera is kept, for {@link #STANDBY_TIMEOUT_MS} at most. Parking another camera, or
+ * asking for one on another backend, closes it.
+ */
+public final class CameraStandby {
+
+    static final long STANDBY_TIMEOUT_MS = 30_000;
+
+    private static final Handler handler = new Handler(Looper.getMainLooper());
+    private static final Runnable expire = CameraStandby::release;
+
+    private static FrameSource parked;
+    private static CustomVideoCapturer.CameraBackend parkedBackend;
+
+    private CameraStandby() {
+    }
+
+    /** Pauses a running camera and keeps it for the next capturer. */
+    static synchronized void park(CustomVideoCapturer.CameraBackend backend, FrameSource source) {
+        if (parked != null && parked != source) {
+            parked.release();
+        }
+        source.setPaused(true);
+        parked = source;
+        parkedBackend = backend;
+        handler.removeCallbacks(expire);
+        handler.postDelayed(expire, STANDBY_TIMEOUT_MS);
+    }
+
+    /**
+     * Returns the parked camera, still paused, if it runs on the given backend. A camera on
+     * another backend is closed and null is returned.
+     */
+    static synchronized FrameSource take(CustomVideoCapturer.CameraBackend backend) {
+        FrameSource source = parked;
+        parked = null;
+        handler.removeCallbacks(expire);
+        if (source != null && parkedBackend != backend) {
+            source.release();
+            return null;
+        }
+        return source;
+    }
+
+    /** Closes the camera on standby, if any. */
+    public static synchronized void release() {
+        handler.removeCallbacks(expire);
+        if (parked != null) {
+            parked.release();
+            parked = null;
+        }
+    }
+}
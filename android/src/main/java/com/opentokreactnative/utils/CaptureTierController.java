@@ -0,0 +1,212 @@
+package com.opentokreactnative.utils;
+
+import android.os.SystemClock;
+
+import com.opentokreactnative.mlkit.camera.CameraSource;
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
+
+import java.util.Locale;
+
+/**
+ * Steps the capture resolution and frame rate down when the video filters can't keep up with the
+ * camera, and back up once they have headroom again.
+ *
+ * Every frame handed to the publisher is counted in windows of {@link #WINDOW_MS}. At the end of
+ * a window, the mean pipeline latency of its filtered frames and the share of camera frames the
+ * pipeline dropped decide whether the window was under pressure, had headroom, or neither. The
+ * tier only moves after several windows in a row agree, stepping up takes longer than stepping
+ * down, and the window following a change is ignored while the camera restarts. Frames that
+ * bypass the filters count as headroom, so the capture goes back to the top tier when filters
+ * are turned off.
+ */
+public class CaptureTierController {
+
+    public enum Tier {
+        HIGH(CameraSource.DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH,
+                CameraSource.DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT, 30),
+        MEDIUM(CameraSource.DEFAULT_REQUESTED_CAMERA_PREVIEW_WIDTH,
+                CameraSource.DEFAULT_REQUESTED_CAMERA_PREVIEW_HEIGHT, 20),
+        LOW(320, 240, 20),
+        MINIMUM(320, 240, 15);
+
+        public final int width;
+        public final int height;
+        public final int fps;
+
+        Tier(int width, int height, int fps) {
+            this.width = width;
+            this.height = height;
+            this.fps = fps;
+        }
+
+        public String getName() {
+            return name().toLowerCase(Locale.US);
+        }
+    }
+
+    /** Source of the time windows are measured in, in milliseconds. */
+    interface Clock {
+        long elapsedRealtime();
+    }
+
+    public interface Listener {
+        /** Called on the thread of the frame that closed the window, outside of any lock. */
+        void onTierChanged(Tier previous, Tier tier, String reason);
+    }
+
+    public static final String REASON_LATENCY = "latency";
+    public static final String REASON_DROPPED_FRAMES = "droppedFrames";
+    public static final String REASON_HEADROOM = "headroom";
+
+    static final long WINDOW_MS = 2000;
+    static final long STEP_DOWN_LATENCY_MICROS = 150_000;
+    static final long STEP_UP_LATENCY_MICROS = 60_000;
+    static final float STEP_DOWN_DROP_RATIO = 0.15f;
+    static final float STEP_UP_DROP_RATIO = 0.03f;
+    static final int STEP_DOWN_WINDOWS = 2;
+    static final int STEP_UP_WINDOWS = 5;
+
+    private final LatencyHistogram captureLatency;
+    private final LatencyHistogram totalLatency;
+    private final Listener listener;
+    private final Clock clock;
+
+    private boolean enabled = true;
+    private Tier tier = Tier.HIGH;
+
+    private long windowStartMs = 0;
+    private long windowCaptured;
+    private int windowFiltered;
+    private long windowLatencySumMicros;
+    private boolean settling = false;
+    private int pressureWindows = 0;
+    private int headroomWindows = 0;
+
+    public CaptureTierController(PipelineStats stats, Listener listener) {
+        this(stats, listener, SystemClock::elapsedRealtime);
+    }
+
+    CaptureTierController(PipelineStats stats, Listener listener, Clock clock) {
+        captureLatency = stats.stage(PipelineStats.CAPTURE);
+        totalLatency = stats.stage(PipelineStats.TOTAL);
+        this.listener = listener;
+        this.clock = clock;
+    }
+
+    /** Disabling goes back to the top tier. */
+    public void setEnabled(boolean enabled) {
+        Tier previous;
+        synchronized (this) {
+            this.enabled = enabled;
+            previous = tier;
+            resetWindows();
+            if (enabled || tier == Tier.HIGH) {
+                return;
+            }
+            tier = Tier.HIGH;
+        }
+        listener.onTierChanged(previous, Tier.HIGH, REASON_HEADROOM);
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Counts a frame handed to the publisher.
+     *
+     * @param filtered whether the frame went through the filter pipeline
+     */
+    public void onFrame(boolean filtered) {
+        Tier previous;
+        Tier next;
+        String reason;
+        synchronized (this) {
+            if (!enabled) {
+                return;
+            }
+            long nowMs = clock.elapsedRealtime();
+            if (windowStartMs == 0) {
+                startWindow(nowMs);
+            }
+            if (filtered) {
+                windowFiltered++;
+                // Composited frames record their total latency right after being handed over,
+                // so this is the previous one. That lag doesn't matter over a window.
+                windowLatencySumMicros += totalLatency.getLastMicros();
+            }
+            if (nowMs - windowStartMs < WINDOW_MS) {
+                return;
+            }
+
+            reason = evaluateWindow();
+            startWindow(nowMs);
+            if (reason == null) {
+                return;
+            }
+            Tier[] tiers = Tier.values();
+            int step = REASON_HEADROOM.equals(reason) ? -1 : 1;
+            previous = tier;
+            next = tiers[Math.max(0, Math.min(tier.ordinal() + step, tiers.length - 1))];
+            if (next == previous) {
+                return;
+            }
+            tier = next;
+            pressureWindows = 0;
+            headroomWindows = 0;
+            settling = true;
+        }
+        listener.onTierChanged(previous, next, reason);
+    }
+
+    /** Returns the reason to change tiers after this window, or null to stay. */
+    private String evaluateWindow() {
+        if (settling) {
+            settling = false;
+            return null;
+        }
+
+        long captured = captureLatency.getCount() + captureLatency.getDropped() - windowCaptured;
+        long meanLatencyMicros = windowFiltered > 0 ? windowLatencySumMicros / windowFiltered : 0;
+        float dropRatio = captured > 0 && windowFiltered > 0
+                ? Math.max(0f, 1f - (float) windowFiltered / captured)
+                : 0f;
+
+        String pressure = null;
+        if (meanLatencyMicros > STEP_DOWN_LATENCY_MICROS) {
+            pressure = REASON_LATENCY;
+        } else if (dropRatio > STEP_DOWN_DROP_RATIO) {
+            pressure = REASON_DROPPED_FRAMES;
+        }
+
+        if (pressure != null) {
+            headroomWindows = 0;
+            return ++pressureWindows >= STEP_DOWN_WINDOWS ? pressure : null;
+        }
+        pressureWindows = 0;
+        if (meanLatencyMicros < STEP_UP_LATENCY_MICROS && dropRatio < STEP_UP_DROP_RATIO) {
+            return ++headroomWindows >= STEP_UP_WINDOWS ? REASON_HEADROOM : null;
+        }
+        headroomWindows = 0;
+        return null;
+    }
+
+    private void startWindow(long nowMs) {
+        windowStartMs = nowMs;
+        windowCaptured = captureLatency.getCount() + captureLatency.getDropped();
+        windowFiltered = 0;
+        windowLatencySumMicros = 0;
+    }
+
+    private void resetWindows() {
+        windowStartMs = 0;
+        pressureWindows = 0;
+        headroomWindows = 0;
+        settling = false;
+    }
+}
@@ -2,39 +2,279 @@ package com.opentokreactnative.utils;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.media.Image;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.opentok.android.BaseVideoCapturer;
+import com.opentokreactnative.mlkit.camera.Camera2Source;
 import com.opentokreactnative.mlkit.camera.CameraSource;
+import com.opentokreactnative.mlkit.camera.DualCameraSource;
+import com.opentokreactnative.mlkit.camera.FrameSource;
+import com.opentokreactnative.mlkit.camera.PreviewQueue;
+import com.opentokreactnative.mlkit.graphics.VideoOverlay;
+import com.opentokreactnative.mlkit.processors.FaceDetectorProfile;
 import com.opentokreactnative.mlkit.processors.VideoFiltersProcessor;
+import com.opentokreactnative.mlkit.processors.base.DetectionCadence;
 import com.opentokreactnative.mlkit.processors.base.ProcessorFrameListener;
+import com.opentokreactnative.mlkit.utils.FrameConverter;
+import com.opentokreactnative.mlkit.utils.FramePool;
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 public class CustomVideoCapturer extends BaseVideoCapturer implements BaseVideoCapturer.CaptureSwitch, ProcessorFrameListener {
 
     final private String TAG = "CustomVideoCapturer";
 
+    public enum CameraBackend {
+        CAMERA1,
+        CAMERA2,
+        /** Camera2 with both cameras kept open, see {@link DualCameraSource}. */
+        DUAL_CAMERA2
+    }
+
+    private final Activity activity;
     private final VideoFiltersProcessor videoFiltersProcessor;
-    private CameraSource cameraSource;
+    private final LatencyHistogram outputLatency;
+    private final LatencyHistogram firstFrameLatency;
+    private final CaptureTierController tierController;
+    // Tier changes restart the camera, which can't happen on the thread delivering its frames.
+    private final ExecutorService tierExecutor = Executors.newSingleThreadExecutor();
+    private volatile CaptureTierController.Listener tierListener;
+    private FrameSource cameraSource;
+    private CameraBackend cameraBackend = CameraBackend.CAMERA1;
+    private boolean pictureInPicture = false;
+    private boolean cameraStandbyEnabled = false;
+    private int previewQueueCapacity = 1;
+    private PreviewQueue.Policy previewQueuePolicy = PreviewQueue.Policy.DROP_OLDEST;
+    private boolean cameraStarted = false;
     private boolean isCapturing = false;
-    private final int fps = 30;
+    // Start of the capture still waiting for its first frame, 0 once that frame is out.
+    private volatile long firstFrameStartNanos = 0;
+    private volatile int fps = CaptureTierController.Tier.HIGH.fps;
     private int width = 0;
     private int height = 0;
 
     public CustomVideoCapturer(Activity activity) {
-        cameraSource = new CameraSource(activity);
-        cameraSource.setFacing(CameraSource.CAMERA_FACING_FRONT);
-
+        this.activity = activity;
         videoFiltersProcessor = new VideoFiltersProcessor(activity, this);
+        outputLatency = videoFiltersProcessor.getPipelineStats().stage(PipelineStats.OUTPUT);
+        firstFrameLatency = videoFiltersProcessor.getPipelineStats().stage(PipelineStats.FIRST_FRAME);
+        tierController = new CaptureTierController(
+                videoFiltersProcessor.getPipelineStats(), this::onCaptureTierChanged);
+
+        cameraSource = createCameraSource(cameraBackend, CameraSource.CAMERA_FACING_FRONT);
+    }
+
+    /**
+     * Switches between the Camera1 source and the Camera2 one, which hands YUV_420_888 planes to
+     * the filters and the publisher without an NV21 copy. Camera2 needs Lollipop, older devices
+     * stay on Camera1. A running capture is restarted on the new source.
+     *
+     * DUAL_CAMERA2 keeps the front and back cameras open together where the device allows it,
+     * so that swapping cameras doesn't stop the capture.
+     */
+    public synchronized void setCameraBackend(CameraBackend backend) {
+        if (backend != CameraBackend.CAMERA1 && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            Log.w(TAG, "Camera2 is not available, staying on Camera1.");
+            return;
+        }
+        if (backend == cameraBackend) {
+            return;
+        }
+
+        int facing = cameraSource != null
+                ? cameraSource.getCameraFacing()
+                : CameraSource.CAMERA_FACING_FRONT;
+        if (cameraSource != null) {
+            stopCameraSource();
+        }
+        cameraBackend = backend;
+        cameraSource = createCameraSource(backend, facing);
+        if (isCapturing) {
+            startCameraSource();
+        }
+    }
+
+    public CameraBackend getCameraBackend() {
+        return cameraBackend;
+    }
+
+    private FrameSource createCameraSource(CameraBackend backend, int facing) {
+        FrameSource source;
+        if (backend == CameraBackend.DUAL_CAMERA2) {
+            DualCameraSource dualSource = new DualCameraSource(activity);
+            dualSource.setPictureInPicture(pictureInPicture);
+            source = dualSource;
+        } else if (backend == CameraBackend.CAMERA2) {
+            source = new Camera2Source(activity);
+        } else {
+            CameraSource cameraOneSource = new CameraSource(activity);
+            cameraOneSource.setPreviewQueue(previewQueueCapacity, previewQueuePolicy);
+            source = cameraOneSource;
+        }
+        source.setFacing(facing);
+        CaptureTierController.Tier tier = tierController.getTier();
+        source.setRequestedPreview(tier.width, tier.height, tier.fps);
+        source.setMachineLearningFrameProcessor(videoFiltersProcessor);
+        source.setFrameListener(this);
+        return source;
+    }
+
+    /**
+     * Draws the camera that isn't published into a corner of the published frames. Only the
+     * DUAL_CAMERA2 backend has both cameras open, the others ignore it.
+     */
+    public synchronized void setPictureInPicture(boolean enabled) {
+        pictureInPicture = enabled;
+        if (cameraSource instanceof DualCameraSource) {
+            ((DualCameraSource) cameraSource).setPictureInPicture(enabled);
+        }
+    }
 
-        cameraSource.setMachineLearningFrameProcessor(videoFiltersProcessor);
-        cameraSource.setFrameListener(this);
+    /**
+     * Keeps the camera open and paused while the capture is stopped, and hands it to the next
+     * publisher's capturer once this one is destroyed, for up to
+     * {@link CameraStandby#STANDBY_TIMEOUT_MS}. Starting the capture then resumes the camera
+     * instead of opening it, see the firstFrame stage of the pipeline stats.
+     */
+    public synchronized void setCameraStandbyEnabled(boolean enabled) {
+        cameraStandbyEnabled = enabled;
+    }
+
+    /**
+     * Lets up to {@code capacity} Camera1 frames wait for the filters, with the given policy for
+     * the frames arriving while they are all taken. Applies from the next camera start, the
+     * Camera2 backends always keep the latest image only.
+     */
+    public synchronized void setPreviewQueue(int capacity, PreviewQueue.Policy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid preview queue capacity: " + capacity);
+        }
+        previewQueueCapacity = capacity;
+        previewQueuePolicy = policy;
+        if (cameraSource instanceof CameraSource) {
+            ((CameraSource) cameraSource).setPreviewQueue(capacity, policy);
+        }
+    }
+
+    /** Drop counters of the Camera1 preview queue, or null on the Camera2 backends. */
+    public synchronized PreviewQueue getPreviewQueue() {
+        return cameraSource instanceof CameraSource
+                ? ((CameraSource) cameraSource).getPreviewQueue()
+                : null;
     }
 
     public void enableBackgroundBlur(boolean enable) {
-        videoFiltersProcessor.enableBackgroundBlur = enable;
+        videoFiltersProcessor.setBackgroundBlurEnabled(enable);
+    }
+
+    /** Replaces the background with the image at the given uri, null or empty to stop. */
+    public void setBackgroundReplacement(String uri) {
+        videoFiltersProcessor.setBackgroundReplacement(uri);
     }
 
     public void enablePixelatedFace(boolean enable) {
-        videoFiltersProcessor.enablePixelatedFace = enable;
+        videoFiltersProcessor.setPixelatedFaceEnabled(enable);
+    }
+
+    public void setFaceDetectorProfile(FaceDetectorProfile profile) {
+        videoFiltersProcessor.setFaceDetectorProfile(profile);
+    }
+
+    public void setFrameConverterBackend(FrameConverter.Backend backend) {
+        videoFiltersProcessor.setFrameConverterBackend(backend);
+    }
+
+    /**
+     * Runs face detection on a proxy {@code faceWidth} pixels wide and the segmentation on a
+     * {@code segmentationWidth} x {@code segmentationHeight} one, whatever the capture size.
+     * Use 0 to run a detector on the full frame.
+     */
+    public void setInferenceResolution(int faceWidth, int segmentationWidth, int segmentationHeight) {
+        videoFiltersProcessor.setInferenceResolution(faceWidth, segmentationWidth, segmentationHeight);
+    }
+
+    /** Weight of each new segmentation mask against the previous ones, in (0, 1]. */
+    public void setMaskSmoothing(float smoothing) {
+        videoFiltersProcessor.setMaskSmoothing(smoothing);
+    }
+
+    /** Renders the filters on the CPU or with OpenGL ES, which falls back to the CPU if needed. */
+    public void setFilterBackend(VideoOverlay.Backend backend) {
+        videoFiltersProcessor.setFilterBackend(backend);
+    }
+
+    /**
+     * Runs the face and segmentation detectors every {@code interval} frames at most, reusing
+     * the last results for the frames in between. An interval of 1 runs them as often as they
+     * keep up with, and 0 goes back to detecting on, and waiting for, every filtered frame.
+     */
+    public void setDetectionInterval(int interval) {
+        videoFiltersProcessor.setDetectionCadence(interval > 0 ? new DetectionCadence(interval) : null);
+    }
+
+    /**
+     * Pool the filters borrow their per-frame buffers from, along with its hit, miss and eviction
+     * counts.
+     */
+    public FramePool getFramePool() {
+        return videoFiltersProcessor.getFramePool();
+    }
+
+    /**
+     * Lets the capture resolution and frame rate follow how well the filters keep up, which is
+     * the default. Disabling it goes back to the top tier.
+     */
+    public void setAdaptiveCaptureEnabled(boolean enabled) {
+        tierController.setEnabled(enabled);
+    }
+
+    public CaptureTierController.Tier getCaptureTier() {
+        return tierController.getTier();
+    }
+
+    /** Notified after the camera has been asked for the settings of a new tier. */
+    public void setCaptureTierListener(CaptureTierController.Listener listener) {
+        tierListener = listener;
+    }
+
+    private void onCaptureTierChanged(
+            CaptureTierController.Tier previous, CaptureTierController.Tier tier, String reason) {
+        Log.d(TAG, "Capture tier " + previous.getName() + " -> " + tier.getName() + " (" + reason + ")");
+        try {
+            tierExecutor.execute(() -> {
+                applyCaptureTier(tier);
+                CaptureTierController.Listener listener = tierListener;
+                if (listener != null) {
+                    listener.onTierChanged(previous, tier, reason);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Destroyed while the frame was being handed over.
+        }
+    }
+
+    private synchronized void applyCaptureTier(CaptureTierController.Tier tier) {
+        fps = tier.fps;
+        if (cameraSource == null) {
+            return;
+        }
+        cameraSource.setRequestedPreview(tier.width, tier.height, tier.fps);
+        if (isCapturing) {
+            stopCameraSource();
+            startCameraSource();
+        }
+    }
+
+    /** Per-stage latencies and drop counts of the video filter pipeline. */
+    public PipelineStats getPipelineStats() {
+        return videoFiltersProcessor.getPipelineStats();
     }
 
     @Override
@@ -42,32 +282,81 @@ public class CustomVideoCapturer extends BaseVideoCapturer implements BaseVideoC
     }
 
     @Override
-    public int startCapture() {
+    public synchronized int startCapture() {
         isCapturing = true;
-        cameraSource.stop();
+        firstFrameStartNanos = SystemClock.elapsedRealtimeNanos();
+        if (cameraStandbyEnabled && resumeWarmCamera()) {
+            return 0;
+        }
+        stopCameraSource();
         startCameraSource();
         return 0;
     }
 
     @Override
-    public int stopCapture() {
+    public synchronized int stopCapture() {
         isCapturing = false;
-        cameraSource.stop();
+        firstFrameStartNanos = 0;
+        if (cameraStandbyEnabled && cameraStarted) {
+            cameraSource.setPaused(true);
+            return 0;
+        }
+        stopCameraSource();
         return 0;
     }
 
+    /**
+     * Resumes the camera paused by stopCapture, or the one a destroyed capturer left on standby.
+     * Returns false when there is no open camera to resume.
+     */
+    private boolean resumeWarmCamera() {
+        if (!cameraStarted) {
+            FrameSource warm = CameraStandby.take(cameraBackend);
+            if (warm == null) {
+                return false;
+            }
+            // The source of this capturer hasn't been started, so it has nothing to close.
+            int facing = cameraSource.getCameraFacing();
+            warm.setMachineLearningFrameProcessor(videoFiltersProcessor);
+            warm.setFrameListener(this);
+            CaptureTierController.Tier tier = tierController.getTier();
+            warm.setRequestedPreview(tier.width, tier.height, tier.fps);
+            if (warm instanceof DualCameraSource) {
+                ((DualCameraSource) warm).setPictureInPicture(pictureInPicture);
+            }
+            cameraSource = warm;
+            cameraStarted = true;
+            if (warm.getCameraFacing() != facing) {
+                warm.setPaused(false);
+                swapCamera(facing);
+                return true;
+            }
+        }
+        cameraSource.setPaused(false);
+        return true;
+    }
+
     @SuppressLint("MissingPermission")
     private void startCameraSource() {
         if (cameraSource != null) {
             try {
                 cameraSource.start();
+                cameraStarted = true;
             } catch (Exception e) {
-                cameraSource.release();
-                cameraSource = null;
+                // Keeps the source, so the capturer can be stopped, swapped or destroyed as usual
+                // and the next start tries again.
+                Log.e(TAG, "Failed to start the camera", e);
+                cameraSource.stop();
+                cameraStarted = false;
             }
         }
     }
 
+    private void stopCameraSource() {
+        cameraSource.stop();
+        cameraStarted = false;
+    }
+
     private int currentVideFormat() {
         return videoFiltersProcessor.active() ? ARGB : NV21;
     }
@@ -115,15 +404,33 @@ public class CustomVideoCapturer extends BaseVideoCapturer implements BaseVideoC
     }
 
     @Override
-    public void swapCamera(int i) {
+    public synchronized void swapCamera(int i) {
         cameraSource.setFacing(i);
-        cameraSource.stop();
+        if (cameraSource.switchesFacingWhileRunning()) {
+            return;
+        }
+        stopCameraSource();
         startCameraSource();
     }
 
     @Override
-    public void destroy() {
-        cameraSource.stop();
+    public synchronized void destroy() {
+        tierExecutor.shutdownNow();
+        if (cameraStandbyEnabled && cameraStarted) {
+            // The next capturer owns the parked camera, this one keeps an unopened source.
+            CameraStandby.park(cameraBackend, cameraSource);
+            cameraStarted = false;
+            cameraSource = createCameraSource(cameraBackend, cameraSource.getCameraFacing());
+            return;
+        }
+        // Releasing the source also stops the filters, ending their stage threads. A parked
+        // camera stops them once it is taken by the next capturer or expires.
+        if (cameraSource != null) {
+            cameraSource.release();
+            cameraStarted = false;
+        } else {
+            videoFiltersProcessor.stop();
+        }
     }
 
     @Override
@@ -139,6 +446,33 @@ public class CustomVideoCapturer extends BaseVideoCapturer implements BaseVideoC
                 rotation,
                 getCameraIndex() == CameraSource.CAMERA_FACING_FRONT
         );
+        tierController.onFrame(false);
+        recordFirstFrame();
+    }
+
+    @Override
+    public void onFrame(Image image, int rotation) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+
+        Image.Plane[] planes = image.getPlanes();
+        provideBufferFramePlanar(
+                planes[0].getBuffer(),
+                planes[1].getBuffer(),
+                planes[2].getBuffer(),
+                planes[0].getPixelStride(),
+                planes[0].getRowStride(),
+                planes[1].getPixelStride(),
+                planes[1].getRowStride(),
+                planes[2].getPixelStride(),
+                planes[2].getRowStride(),
+                width,
+                height,
+                rotation,
+                getCameraIndex() == CameraSource.CAMERA_FACING_FRONT
+        );
+        tierController.onFrame(false);
+        recordFirstFrame();
     }
 
     @Override
@@ -146,6 +480,7 @@ public class CustomVideoCapturer extends BaseVideoCapturer implements BaseVideoC
         this.width = width;
         this.height = height;
 
+        long startNanos = SystemClock.elapsedRealtimeNanos();
         provideIntArrayFrame(
                 frame,
                 ARGB,
@@ -154,5 +489,16 @@ public class CustomVideoCapturer extends BaseVideoCapturer implements BaseVideoC
                 0,
                 getCameraIndex() == CameraSource.CAMERA_FACING_FRONT
         );
+        outputLatency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+        tierController.onFrame(true);
+        recordFirstFrame();
+    }
+
+    private void recordFirstFrame() {
+        long startNanos = firstFrameStartNanos;
+        if (startNanos != 0) {
+            firstFrameStartNanos = 0;
+            firstFrameLatency.record((SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+        }
     }
 }
@@ -10,6 +10,11 @@ import com.opentok.android.Session;
 import com.opentok.android.Stream;
 import com.opentok.android.SubscriberKit;
 import com.opentok.android.PublisherKit;
+import com.opentokreactnative.mlkit.utils.FramePool;
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
+
+import java.util.Map;
 
 public final class EventUtils {
 
@@ -180,6 +185,83 @@ public final class EventUtils {
         return codecsMap;
     }
 
+    public static WritableMap prepareVideoFilterStatsMap(PipelineStats stats, FramePool framePool) {
+        WritableMap stagesMap = Arguments.createMap();
+        for (Map.Entry<String, LatencyHistogram> stage : stats.getStages().entrySet()) {
+            stagesMap.putMap(stage.getKey(), prepareLatencyMap(stage.getValue()));
+        }
+
+        WritableMap framePoolMap = Arguments.createMap();
+        framePoolMap.putDouble("hits", framePool.getHits());
+        framePoolMap.putDouble("misses", framePool.getMisses());
+        framePoolMap.putDouble("evictions", framePool.getEvictions());
+
+        WritableMap statsMap = Arguments.createMap();
+        statsMap.putMap("stages", stagesMap);
+        statsMap.putMap("framePool", framePoolMap);
+        return statsMap;
+    }
+
+    public static WritableMap prepareAudioDeviceStatsMap(AudioDeviceStats stats) {
+        WritableMap captureMap = Arguments.createMap();
+        captureMap.putInt("sampleRate", stats.getCaptureSampleRate());
+        captureMap.putDouble("overruns", stats.getCaptureOverruns());
+        captureMap.putDouble("missedReads", stats.getCaptureMissedReads());
+        captureMap.putDouble("missedDeliveries", stats.getCaptureMissedDeliveries());
+
+        WritableMap renderMap = Arguments.createMap();
+        renderMap.putInt("sampleRate", stats.getRenderSampleRate());
+        renderMap.putInt("framesPerBuffer", stats.getRenderFramesPerBuffer());
+        renderMap.putBoolean("lowLatency", stats.isLowLatencyRender());
+        renderMap.putDouble("underruns", stats.getRenderUnderruns());
+
+        WritableMap histogramsMap = Arguments.createMap();
+        for (Map.Entry<String, AudioLatencyRecorder> histogram : stats.getHistograms().entrySet()) {
+            histogramsMap.putMap(histogram.getKey(), prepareLatencyMap(histogram.getValue()));
+        }
+
+        WritableMap statsMap = Arguments.createMap();
+        statsMap.putMap("capture", captureMap);
+        statsMap.putMap("render", renderMap);
+        statsMap.putMap("histograms", histogramsMap);
+        return statsMap;
+    }
+
+    private static WritableMap prepareLatencyMap(LatencyHistogram latency) {
+        return prepareLatencyMap(latency.getCount(), latency.getDropped(), latency.getLastMicros(),
+                latency.getMaxMicros(), latency.getPercentilesMicros(50, 90, 99));
+    }
+
+    private static WritableMap prepareLatencyMap(AudioLatencyRecorder latency) {
+        return prepareLatencyMap(latency.getCount(), latency.getDropped(), latency.getLastMicros(),
+                latency.getMaxMicros(), latency.getPercentilesMicros(50, 90, 99));
+    }
+
+    private static WritableMap prepareLatencyMap(
+            long count, long dropped, long lastMicros, long maxMicros, long[] percentiles) {
+        WritableMap latencyMap = Arguments.createMap();
+        latencyMap.putDouble("count", count);
+        latencyMap.putDouble("dropped", dropped);
+        latencyMap.putDouble("last", lastMicros / 1000.0);
+        latencyMap.putDouble("max", maxMicros / 1000.0);
+        latencyMap.putDouble("p50", percentiles[0] / 1000.0);
+        latencyMap.putDouble("p90", percentiles[1] / 1000.0);
+        latencyMap.putDouble("p99", percentiles[2] / 1000.0);
+        return latencyMap;
+    }
+
+    public static WritableMap prepareCaptureTierMap(
+            CaptureTierController.Tier previous, CaptureTierController.Tier tier, String reason) {
+        WritableMap tierInfo = Arguments.createMap();
+        tierInfo.putString("tier", tier.getName());
+        tierInfo.putString("previousTier", previous.getName());
+        tierInfo.putString("reason", reason);
+        tierInfo.putInt("width", tier.width);
+        tierInfo.putInt("height", tier.height);
+        tierInfo.putInt("frameRate", tier.fps);
+        return tierInfo;
+    }
+
     public static WritableMap createError(String message) {
 
         WritableMap errorInfo = Arguments.createMap();
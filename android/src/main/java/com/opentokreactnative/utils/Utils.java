@@ -12,7 +12,11 @@ import com.opentok.android.Session.Builder.IceServer;
 import com.opentok.android.BaseVideoCapturer.VideoContentHint;
 import com.opentokreactnative.OTRN;
 
+import com.facebook.react.bridge.Dynamic;
 import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.opentokreactnative.mlkit.processors.FaceDetectorProfile;
 
 import java.util.ArrayList;
 import java.util.Map;
@@ -116,6 +120,31 @@ public final class Utils {
         return nativeVideoTransformers;
     }
 
+    /** The pixelatedFace property is either a boolean or a face detector profile object. */
+    public static boolean isPixelatedFaceEnabled(Dynamic pixelatedFace) {
+        if (pixelatedFace == null || pixelatedFace.isNull()) {
+            return false;
+        }
+        if (pixelatedFace.getType() == ReadableType.Boolean) {
+            return pixelatedFace.asBoolean();
+        }
+        return pixelatedFace.getType() == ReadableType.Map;
+    }
+
+    public static FaceDetectorProfile sanitizeFaceDetectorProfile(Dynamic pixelatedFace) {
+        if (pixelatedFace == null || pixelatedFace.getType() != ReadableType.Map) {
+            return FaceDetectorProfile.DEFAULT;
+        }
+        ReadableMap profile = pixelatedFace.asMap();
+        boolean fast = profile.hasKey("performanceMode")
+                && "fast".equals(profile.getString("performanceMode"));
+        float minFaceSize = profile.hasKey("minFaceSize")
+                ? (float) profile.getDouble("minFaceSize")
+                : FaceDetectorProfile.DEFAULT_MIN_FACE_SIZE;
+        boolean tracking = profile.hasKey("tracking") && profile.getBoolean("tracking");
+        return new FaceDetectorProfile(fast, minFaceSize, tracking);
+    }
+
     public static VideoContentHint convertVideoContentHint(String videoContentHint) {
 
         switch (videoContentHint) {
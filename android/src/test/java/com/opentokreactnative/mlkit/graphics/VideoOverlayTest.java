@@ -0,0 +1,78 @@
+package com.opentokreactnative.mlkit.graphics;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.opentokreactnative.mlkit.utils.FramePool;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
+import com.opentokreactnative.mlkit.utils.PixelationEngine;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+public class VideoOverlayTest {
+
+    private static final int WIDTH = 120;
+    private static final int HEIGHT = 90;
+    private static final int BLOCK_SIZE = 15;
+
+    private static final List<Rect> FACES = Arrays.asList(
+            new Rect(10, 10, 50, 55),
+            // Overlaps the first face, so the crossfade must blend the shared pixels once.
+            new Rect(35, 30, 80, 80),
+            // Partly outside of the frame.
+            new Rect(100, 60, 140, 110));
+
+    private final int[] pixels = randomPixels();
+    private final Bitmap bitmap = Bitmap.createBitmap(pixels, WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+
+    @Test
+    public void facesArePixelatedLikeTheEngineDoes() {
+        int[] expected = pixels.clone();
+        PixelationEngine engine = new PixelationEngine(BLOCK_SIZE);
+        FaceOverlay faceOverlay = new FaceOverlay(engine);
+        faceOverlay.setFaces(FACES);
+        faceOverlay.drawPixelatedFaces(expected, WIDTH, HEIGHT);
+
+        assertArrayEquals(expected, render(1f));
+    }
+
+    @Test
+    public void regionCrossfadeMatchesFullFrameCrossfade() {
+        int[] filtered = render(1f);
+        for (float strength : new float[] {0f, 0.25f, 0.5f, 0.9f}) {
+            int weight = Math.round(strength * 256f);
+            int[] expected = new int[pixels.length];
+            for (int i = 0; i < pixels.length; i++) {
+                expected[i] = BackgroundOverlay.lerp(pixels[i], filtered[i], weight);
+            }
+            assertArrayEquals("strength " + strength, expected, render(strength));
+        }
+    }
+
+    private int[] render(float strength) {
+        VideoOverlay overlay = new VideoOverlay(new FramePool(), new PipelineStats());
+        overlay.setBitmap(bitmap);
+        overlay.setFaces(FACES);
+        overlay.setStrength(strength);
+        int[] frame = overlay.getFrame();
+        return Arrays.copyOf(frame, frame.length);
+    }
+
+    private static int[] randomPixels() {
+        Random random = new Random(5);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+}
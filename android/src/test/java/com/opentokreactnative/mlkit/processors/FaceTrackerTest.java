@@ -0,0 +1,102 @@
+package com.opentokreactnative.mlkit.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class FaceTrackerTest {
+
+    private final FaceTracker tracker = new FaceTracker();
+
+    @Test
+    public void extrapolatesTrackedFacesLinearly() {
+        detect(1000, 1, new Rect(0, 0, 100, 100));
+        detect(1100, 1, new Rect(10, 0, 110, 100));
+
+        List<Rect> boxes = tracker.boxesAt(1150);
+
+        assertEquals(1, boxes.size());
+        assertEquals(new Rect(15, 0, 115, 100), boxes.get(0));
+    }
+
+    @Test
+    public void boxAtItsOwnDetectionTimeDoesNotMove() {
+        detect(1000, 1, new Rect(0, 0, 100, 100));
+        detect(1100, 1, new Rect(10, 0, 110, 100));
+
+        // The frame composited with its own detection results, however late it is composited.
+        assertEquals(new Rect(10, 0, 110, 100), tracker.boxesAt(1100).get(0));
+    }
+
+    @Test
+    public void capsExtrapolation() {
+        detect(1000, 1, new Rect(0, 0, 100, 100));
+        detect(1100, 1, new Rect(10, 0, 110, 100));
+
+        // Only 250 ms worth of motion, however long the face has not been detected.
+        assertEquals(new Rect(35, 0, 135, 100), tracker.boxesAt(5000).get(0));
+    }
+
+    @Test
+    public void keepsASingleDetectionWhereItIs() {
+        detect(1000, 1, new Rect(20, 30, 60, 80));
+
+        assertEquals(new Rect(20, 30, 60, 80), tracker.boxesAt(1200).get(0));
+    }
+
+    @Test
+    public void returnsUntrackedFacesAsDetected() {
+        detect(1000, null, new Rect(0, 0, 50, 50));
+        detect(1100, null, new Rect(40, 0, 90, 50));
+
+        List<Rect> boxes = tracker.boxesAt(1200);
+
+        assertEquals(1, boxes.size());
+        assertEquals(new Rect(40, 0, 90, 50), boxes.get(0));
+    }
+
+    @Test
+    public void dropsFacesThatWereNotDetectedAgain() {
+        tracker.beginUpdate();
+        tracker.addFace(1, new Rect(0, 0, 50, 50), 1000);
+        tracker.addFace(2, new Rect(100, 0, 150, 50), 1000);
+        tracker.endUpdate();
+        detect(1100, 2, new Rect(100, 0, 150, 50));
+
+        List<Rect> boxes = tracker.boxesAt(1100);
+
+        assertEquals(1, boxes.size());
+        assertEquals(new Rect(100, 0, 150, 50), boxes.get(0));
+    }
+
+    @Test
+    public void regionStaysPutWhileTheFaceMovesALittle() {
+        detect(1000, 1, new Rect(100, 100, 200, 200));
+        tracker.boxesAt(1000);
+        Rect region = new Rect(tracker.getRegions().get(0));
+
+        detect(1100, 1, new Rect(103, 101, 203, 201));
+        tracker.boxesAt(1100);
+        assertEquals(region, tracker.getRegions().get(0));
+
+        // Far enough that the padded face leaves the region, which then follows it.
+        detect(1200, 1, new Rect(160, 100, 260, 200));
+        tracker.boxesAt(1200);
+        Rect moved = tracker.getRegions().get(0);
+        assertTrue(moved.contains(new Rect(140, 80, 280, 220)));
+    }
+
+    private void detect(long timeMs, Integer trackingId, Rect box) {
+        tracker.beginUpdate();
+        tracker.addFace(trackingId, box, timeMs);
+        tracker.endUpdate();
+    }
+}
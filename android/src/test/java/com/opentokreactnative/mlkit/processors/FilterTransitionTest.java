@@ -0,0 +1,92 @@
+package com.opentokreactnative.mlkit.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+
+import com.opentokreactnative.mlkit.processors.FilterTransition.State;
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class FilterTransitionTest {
+
+    private static final float DELTA = 1e-6f;
+
+    private int warmUps = 0;
+    private final LatencyHistogram transitionLatency = new LatencyHistogram();
+    private final FilterTransition transition = new FilterTransition(
+            () -> warmUps++, new LatencyHistogram(), transitionLatency);
+
+    @Test
+    public void fadesInOnTheFirstResults() {
+        transition.onFiltersChanged(true);
+        assertEquals(1, warmUps);
+        assertEquals(0f, transition.update(), DELTA);
+
+        transition.onResults();
+        assertEquals(State.FADING_IN, transition.getState());
+        SystemClock.sleep(FilterTransition.FADE_MS / 2);
+        assertEquals(0.5f, transition.update(), DELTA);
+
+        SystemClock.sleep(FilterTransition.FADE_MS / 2);
+        assertEquals(1f, transition.update(), DELTA);
+        assertEquals(State.FILTERED, transition.getState());
+    }
+
+    @Test
+    public void keepsRoutingUntilTheLastFadedFrameIsDelivered() {
+        filter();
+        transition.onFiltersChanged(false);
+        SystemClock.sleep(FilterTransition.FADE_MS);
+
+        assertEquals(0f, transition.update(), DELTA);
+        // The last frame of the fade is not delivered yet, newer camera frames must wait for it.
+        assertTrue(transition.isRouting());
+        assertTrue(transition.isFadingOut());
+        assertEquals(2, transitionLatency.getCount());
+
+        transition.completeFadeOut();
+        assertFalse(transition.isRouting());
+        assertEquals(State.PASSTHROUGH, transition.getState());
+        assertTrue(transition.update() < 0f);
+    }
+
+    @Test
+    public void framesBeforeTheEndOfTheFadeKeepRouting() {
+        filter();
+        transition.onFiltersChanged(false);
+        SystemClock.sleep(FilterTransition.FADE_MS / 2);
+
+        assertEquals(0.5f, transition.update(), DELTA);
+        transition.completeFadeOut();
+        assertEquals(State.FADING_OUT, transition.getState());
+    }
+
+    @Test
+    public void turningFiltersBackOnCancelsTheEndOfTheFade() {
+        filter();
+        transition.onFiltersChanged(false);
+        SystemClock.sleep(FilterTransition.FADE_MS);
+        transition.update();
+
+        transition.onFiltersChanged(true);
+        transition.completeFadeOut();
+
+        assertEquals(State.FADING_IN, transition.getState());
+        assertTrue(transition.isRouting());
+    }
+
+    private void filter() {
+        transition.onFiltersChanged(true);
+        transition.onResults();
+        SystemClock.sleep(FilterTransition.FADE_MS);
+        transition.update();
+        assertEquals(State.FILTERED, transition.getState());
+    }
+}
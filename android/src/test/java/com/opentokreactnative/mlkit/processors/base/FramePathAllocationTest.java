@@ -0,0 +1,139 @@
+package com.opentokreactnative.mlkit.processors.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import android.graphics.Rect;
+
+import com.opentokreactnative.mlkit.camera.FrameMetadata;
+import com.opentokreactnative.mlkit.graphics.VideoOverlay;
+import com.opentokreactnative.mlkit.utils.FrameConverter;
+import com.opentokreactnative.mlkit.utils.FramePool;
+import com.opentokreactnative.mlkit.utils.MaskCache;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Checks that the per-frame filter path stops allocating once warm, by counting the bytes the
+ * test thread allocates with the JVM's thread allocation counter. Every frame goes through the
+ * same steps as in the pipeline: a pooled {@link PipelineFrame} copies the camera image and its
+ * reused metadata, converts it, and a single {@link VideoOverlay} composites it with new faces
+ * and a new segmentation mask.
+ *
+ * <p>Native graphics, so that drawing on a Canvas doesn't go through Robolectric's recording
+ * shadows, which allocate on every call.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 33)
+public class FramePathAllocationTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int MASK_WIDTH = 96;
+    private static final int MASK_HEIGHT = 72;
+    private static final int WARM_UP_FRAMES = 100;
+    private static final int FRAMES = 50;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    private final ByteBuffer nv21 = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 / 2);
+    private final ByteBuffer mask = ByteBuffer.allocateDirect(MASK_WIDTH * MASK_HEIGHT * 4)
+            .order(ByteOrder.nativeOrder());
+    // The Camera1 processing loop reuses a single instance for every preview buffer.
+    private final FrameMetadata cameraMetadata = new FrameMetadata();
+    private final BlockingQueue<PipelineFrame<Object>> frames = new ArrayBlockingQueue<>(2);
+    private final FramePool pool = new FramePool();
+    private final MaskCache maskCache = new MaskCache();
+    private final List<Rect> faces = new ArrayList<>();
+    private VideoOverlay overlay;
+    private long sequence = 0;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        for (int i = 0; i < nv21.capacity(); i++) {
+            nv21.put(i, (byte) (i * 31));
+        }
+        for (int i = 0; i < MASK_WIDTH * MASK_HEIGHT; i++) {
+            mask.putFloat(i * 4, (i % MASK_WIDTH) / (float) MASK_WIDTH);
+        }
+        frames.offer(new PipelineFrame<>(frames));
+        frames.offer(new PipelineFrame<>(frames));
+        faces.add(new Rect());
+        faces.add(new Rect());
+        overlay = new VideoOverlay(pool, new PipelineStats());
+    }
+
+    @Test
+    public void facesAndBlurredBackgroundDoNotAllocateOnceWarm() {
+        assertEquals(0, allocatedBytes(true));
+    }
+
+    @Test
+    public void facesOnlyDoNotAllocateOnceWarm() {
+        assertEquals(0, allocatedBytes(false));
+    }
+
+    @Test
+    public void crossfadeDoesNotAllocateOnceWarm() {
+        overlay.setStrength(0.5f);
+        assertEquals(0, allocatedBytes(true));
+    }
+
+    private void filterFrame(boolean segmenting) {
+        PipelineFrame<Object> frame = frames.poll();
+        frame.set(nv21, cameraMetadata.set(WIDTH, HEIGHT, 0), sequence, sequence * 33, 0);
+        frame.convert(FrameConverter.Backend.JAVA);
+
+        // Faces that move a little on every frame, the second one partly outside of it.
+        int offset = (int) (sequence++ % 16);
+        faces.get(0).set(40 + offset, 30, 140 + offset, 150);
+        faces.get(1).set(260, 100 + offset, 360, 220 + offset);
+
+        overlay.setBitmap(frame.bitmap);
+        overlay.setFaces(faces);
+        if (segmenting) {
+            maskCache.update(mask, MASK_WIDTH, MASK_HEIGHT);
+            overlay.setSegmentationMask(
+                    maskCache.getSmoothed(), maskCache.getWidth(), maskCache.getHeight());
+        } else {
+            overlay.setSegmentationMask(null, 0, 0);
+        }
+        overlay.getFrame();
+        frame.release();
+    }
+
+    private long allocatedBytes(boolean segmenting) {
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            filterFrame(segmenting);
+        }
+        long threadId = Thread.currentThread().getId();
+        // Calibrates out whatever reading the counter itself allocates.
+        long calibration = threads.getThreadAllocatedBytes(threadId);
+        long start = threads.getThreadAllocatedBytes(threadId);
+        long overhead = start - calibration;
+        for (int i = 0; i < FRAMES; i++) {
+            filterFrame(segmenting);
+        }
+        return threads.getThreadAllocatedBytes(threadId) - start - overhead;
+    }
+}
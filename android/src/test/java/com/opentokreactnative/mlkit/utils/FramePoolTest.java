@@ -0,0 +1,61 @@
+package com.opentokreactnative.mlkit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class FramePoolTest {
+
+    private final FramePool pool = new FramePool();
+
+    @Test
+    public void countsHitsAndMisses() {
+        int[] first = pool.acquireInts(64);
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        pool.releaseInts(first);
+        assertSame(first, pool.acquireInts(64));
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    @Test
+    public void otherSizesAreMisses() {
+        pool.releaseInts(pool.acquireInts(64));
+
+        assertEquals(32, pool.acquireInts(32).length);
+        assertEquals(0, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void countsEvictedBuffers() {
+        int[] first = pool.acquireInts(64);
+        int[] second = pool.acquireInts(64);
+        pool.releaseInts(first);
+        pool.releaseInts(second);
+
+        pool.evictAll();
+
+        assertEquals(2, pool.getEvictions());
+        assertNotSame(first, pool.acquireInts(64));
+        assertEquals(3, pool.getMisses());
+    }
+
+    @Test
+    public void countsBuffersOfTheLeastRecentSizeWhenFull() {
+        for (int length = 1; length <= 8; length++) {
+            pool.releaseInts(new int[length]);
+        }
+        assertEquals(0, pool.getEvictions());
+
+        pool.releaseInts(new int[9]);
+
+        assertEquals(1, pool.getEvictions());
+        pool.acquireInts(1);
+        assertEquals(1, pool.getMisses());
+    }
+}
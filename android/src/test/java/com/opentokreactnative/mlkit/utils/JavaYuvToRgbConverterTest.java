@@ -0,0 +1,163 @@
+package com.opentokreactnative.mlkit.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class JavaYuvToRgbConverterTest {
+
+    // The tables truncate in 16.16 fixed point where the reference rounds.
+    private static final int TOLERANCE = 1;
+    private static final int WIDTH = 38;
+    private static final int HEIGHT = 22;
+
+    private final JavaYuvToRgbConverter converter = new JavaYuvToRgbConverter();
+
+    @Test
+    public void matchesFloatingPointReference() {
+        Random random = new Random(1);
+        for (int frame = 0; frame < 20; frame++) {
+            byte[] nv21 = randomFrame(random, WIDTH, HEIGHT);
+            int[] out = new int[WIDTH * HEIGHT];
+            converter.convert(ByteBuffer.wrap(nv21), WIDTH, HEIGHT, 0, out);
+            assertWithin(reference(nv21, WIDTH, HEIGHT), out);
+        }
+    }
+
+    @Test
+    public void coversTheWholeRange() {
+        // Every Y with every extreme and neutral chroma, so the clamping is exercised too.
+        int width = 256;
+        int height = 6;
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                nv21[y * width + x] = (byte) x;
+            }
+        }
+        int[] chroma = {0, 128, 255};
+        for (int row = 0; row < height / 2; row++) {
+            for (int x = 0; x < width; x += 2) {
+                nv21[width * height + row * width + x] = (byte) chroma[row];
+                nv21[width * height + row * width + x + 1] = (byte) chroma[(x / 2) % 3];
+            }
+        }
+        int[] out = new int[width * height];
+        converter.convert(ByteBuffer.wrap(nv21), width, height, 0, out);
+        assertWithin(reference(nv21, width, height), out);
+    }
+
+    @Test
+    public void directBuffersMatchArrays() {
+        byte[] nv21 = randomFrame(new Random(2), WIDTH, HEIGHT);
+        int[] expected = new int[WIDTH * HEIGHT];
+        int[] actual = new int[WIDTH * HEIGHT];
+        converter.convert(ByteBuffer.wrap(nv21), WIDTH, HEIGHT, 0, expected);
+        converter.convert(direct(nv21), WIDTH, HEIGHT, 0, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void rotatesClockwise() {
+        byte[] nv21 = randomFrame(new Random(3), WIDTH, HEIGHT);
+        int[] upright = new int[WIDTH * HEIGHT];
+        converter.convert(ByteBuffer.wrap(nv21), WIDTH, HEIGHT, 0, upright);
+
+        for (int rotation : new int[] {90, 180, 270}) {
+            int[] rotated = new int[WIDTH * HEIGHT];
+            converter.convert(ByteBuffer.wrap(nv21), WIDTH, HEIGHT, rotation, rotated);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int index;
+                    if (rotation == 90) {
+                        index = x * HEIGHT + (HEIGHT - 1 - y);
+                    } else if (rotation == 180) {
+                        index = (HEIGHT - 1 - y) * WIDTH + (WIDTH - 1 - x);
+                    } else {
+                        index = (WIDTH - 1 - x) * HEIGHT + y;
+                    }
+                    assertEquals("rotation " + rotation, upright[y * WIDTH + x], rotated[index]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void planesMatchNv21() {
+        byte[] nv21 = randomFrame(new Random(4), WIDTH, HEIGHT);
+        int[] expected = new int[WIDTH * HEIGHT];
+        converter.convert(ByteBuffer.wrap(nv21), WIDTH, HEIGHT, 90, expected);
+
+        // Semi-planar chroma with padded rows, as most Camera2 devices deliver it.
+        int yRowStride = WIDTH + 10;
+        int uvRowStride = WIDTH + 6;
+        byte[] yPlane = new byte[yRowStride * HEIGHT];
+        byte[] uPlane = new byte[uvRowStride * HEIGHT / 2];
+        byte[] vPlane = new byte[uvRowStride * HEIGHT / 2];
+        for (int y = 0; y < HEIGHT; y++) {
+            System.arraycopy(nv21, y * WIDTH, yPlane, y * yRowStride, WIDTH);
+        }
+        for (int row = 0; row < HEIGHT / 2; row++) {
+            for (int x = 0; x < WIDTH; x += 2) {
+                int source = WIDTH * HEIGHT + row * WIDTH + x;
+                vPlane[row * uvRowStride + x] = nv21[source];
+                uPlane[row * uvRowStride + x] = nv21[source + 1];
+            }
+        }
+        int[] actual = new int[WIDTH * HEIGHT];
+        converter.convert(direct(yPlane), yRowStride, direct(uPlane), direct(vPlane),
+                uvRowStride, 2, WIDTH, HEIGHT, 90, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    /** BT.601 limited range, in floating point and rounded. */
+    private static int[] reference(byte[] nv21, int width, int height) {
+        int[] out = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int uvIndex = width * height + (y / 2) * width + (x & ~1);
+                double luma = 1.164 * Math.max((nv21[y * width + x] & 0xff) - 16, 0);
+                int v = (nv21[uvIndex] & 0xff) - 128;
+                int u = (nv21[uvIndex + 1] & 0xff) - 128;
+                int r = clamp(luma + 1.596 * v);
+                int g = clamp(luma - 0.391 * u - 0.813 * v);
+                int b = clamp(luma + 2.018 * u);
+                out[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return out;
+    }
+
+    private static void assertWithin(int[] expected, int[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(0xff, actual[i] >>> 24);
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int difference = Math.abs(((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff));
+                if (difference > TOLERANCE) {
+                    throw new AssertionError(String.format("Pixel %d channel %d: expected %08x, got %08x",
+                            i, shift / 8, expected[i], actual[i]));
+                }
+            }
+        }
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static byte[] randomFrame(Random random, int width, int height) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        random.nextBytes(nv21);
+        return nv21;
+    }
+
+    private static ByteBuffer direct(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,85 @@
+package com.opentokreactnative.mlkit.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class MaskCacheTest {
+
+    private static final float DELTA = 1e-6f;
+
+    private final MaskCache cache = new MaskCache();
+
+    @Test
+    public void firstMaskIsTakenAsItIs() {
+        assertTrue(cache.isEmpty());
+
+        cache.update(mask(0.2f, 0.4f, 0.6f, 0.8f), 2, 2);
+
+        assertFalse(cache.isEmpty());
+        assertEquals(2, cache.getWidth());
+        assertEquals(2, cache.getHeight());
+        assertArrayEquals(new float[] {0.2f, 0.4f, 0.6f, 0.8f}, cache.getSmoothed(), DELTA);
+    }
+
+    @Test
+    public void newMasksAreBlendedIn() {
+        cache.setSmoothing(0.25f);
+        cache.update(mask(0f, 1f), 2, 1);
+        cache.update(mask(1f, 0f), 2, 1);
+
+        assertArrayEquals(new float[] {0.25f, 0.75f}, cache.getSmoothed(), DELTA);
+    }
+
+    @Test
+    public void leavesTheBufferPositionAlone() {
+        ByteBuffer mask = mask(0.5f, 0.5f);
+        mask.position(4);
+
+        cache.update(mask, 2, 1);
+
+        assertEquals(4, mask.position());
+    }
+
+    @Test
+    public void reusesTheSmoothedMask() {
+        cache.update(mask(0f, 1f), 2, 1);
+        float[] smoothed = cache.getSmoothed();
+
+        cache.update(mask(1f, 0f), 2, 1);
+        assertSame(smoothed, cache.getSmoothed());
+
+        cache.update(mask(1f, 0f), 1, 2);
+        assertNotSame(smoothed, cache.getSmoothed());
+    }
+
+    @Test
+    public void startsOverAfterAResizeOrAClear() {
+        cache.update(mask(0f, 1f), 2, 1);
+        cache.update(mask(1f, 0f), 1, 2);
+        assertArrayEquals(new float[] {1f, 0f}, cache.getSmoothed(), DELTA);
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        cache.update(mask(0.3f, 0.7f), 1, 2);
+        assertArrayEquals(new float[] {0.3f, 0.7f}, cache.getSmoothed(), DELTA);
+    }
+
+    private static ByteBuffer mask(float... confidences) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(confidences.length * 4)
+                .order(ByteOrder.nativeOrder());
+        for (float confidence : confidences) {
+            buffer.putFloat(confidence);
+        }
+        buffer.rewind();
+        return buffer;
+    }
+}
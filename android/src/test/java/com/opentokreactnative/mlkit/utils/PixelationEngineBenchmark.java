@@ -0,0 +1,119 @@
+package com.opentokreactnative.mlkit.utils;
+
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times PixelationEngine against the per-face pixelation it replaced, at several frame sizes and
+ * face counts. Only runs when asked for, with {@code ./gradlew test -Dbenchmark=true}.
+ */
+public class PixelationEngineBenchmark {
+
+    private static final int BLOCK_SIZE = 15;
+    private static final int[][] SIZES = {{480, 360}, {1280, 720}, {1920, 1080}};
+    private static final int[] FACE_COUNTS = {1, 4, 10};
+    private static final int WARM_UP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+
+    @Test
+    public void compareWithPerFacePixelation() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+
+        Random random = new Random(7);
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            int[] frame = new int[width * height];
+            for (int i = 0; i < frame.length; i++) {
+                frame[i] = 0xff000000 | random.nextInt(0x1000000);
+            }
+            for (int faceCount : FACE_COUNTS) {
+                int[][] faces = faces(width, height, faceCount);
+                PixelationEngine engine = new PixelationEngine(BLOCK_SIZE);
+                int[] work = new int[frame.length];
+
+                double engineMicros = time(() -> {
+                    System.arraycopy(frame, 0, work, 0, frame.length);
+                    engine.clear();
+                    for (int[] face : faces) {
+                        engine.addRegion(face[0], face[1], face[2], face[3]);
+                    }
+                    engine.apply(work, width, height);
+                });
+                double legacyMicros = time(() -> {
+                    int[] result = frame;
+                    for (int[] face : faces) {
+                        result = legacyPixelate(result, width, face[0], face[1], face[2], face[3]);
+                    }
+                });
+
+                System.out.println(String.format(Locale.US,
+                        "%dx%d, %d faces: engine %.0f us, per face copy %.0f us, %.1fx",
+                        width, height, faceCount, engineMicros, legacyMicros,
+                        legacyMicros / engineMicros));
+            }
+        }
+    }
+
+    private static double time(Runnable frame) {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            frame.run();
+        }
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            frame.run();
+        }
+        return (System.nanoTime() - startNanos) / 1000.0 / ITERATIONS;
+    }
+
+    /** Faces of a fifth of the frame height, spread over the frame. */
+    private static int[][] faces(int width, int height, int count) {
+        int side = height / 5;
+        int[][] faces = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int left = (i % 5) * (width - side) / 4;
+            int top = (i / 5) * (height - side) / 2;
+            faces[i] = new int[] {left, top, left + side, top + side};
+        }
+        return faces;
+    }
+
+    /**
+     * The pixelation BitmapEffects used to do, on ints rather than a Bitmap: a copy of the whole
+     * frame per face, and every pixel of a block read and written one by one.
+     */
+    private static int[] legacyPixelate(int[] source, int width, int left, int top, int right, int bottom) {
+        int[] result = Arrays.copyOf(source, source.length);
+        for (int x = left; x < right; x += BLOCK_SIZE) {
+            for (int y = top; y < bottom; y += BLOCK_SIZE) {
+                int maxBlockX = Math.min(x + BLOCK_SIZE, right);
+                int maxBlockY = Math.min(y + BLOCK_SIZE, bottom);
+                int red = 0;
+                int green = 0;
+                int blue = 0;
+                int count = 0;
+                for (int blockX = x; blockX < maxBlockX; blockX++) {
+                    for (int blockY = y; blockY < maxBlockY; blockY++) {
+                        int pixel = source[blockY * width + blockX];
+                        red += (pixel >> 16) & 0xff;
+                        green += (pixel >> 8) & 0xff;
+                        blue += pixel & 0xff;
+                        count++;
+                    }
+                }
+                int color = 0xff000000 | ((red / count) << 16) | ((green / count) << 8) | (blue / count);
+                for (int blockX = x; blockX < maxBlockX; blockX++) {
+                    for (int blockY = y; blockY < maxBlockY; blockY++) {
+                        result[blockY * width + blockX] = color;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package com.opentokreactnative.mlkit.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class PixelationEngineTest {
+
+    private static final int WIDTH = 97;
+    private static final int HEIGHT = 61;
+    private static final int BLOCK_SIZE = 15;
+
+    @Test
+    public void averagesEveryPixelOfABlock() {
+        int[] frame = new int[4 * 4];
+        // Only the top left pixel is bright, an average of the block origin alone would be white.
+        Arrays.fill(frame, 0xff000000);
+        frame[0] = 0xffffffff;
+
+        PixelationEngine engine = new PixelationEngine(4);
+        engine.addRegion(0, 0, 4, 4);
+        engine.apply(frame, 4, 4);
+
+        int[] expected = new int[4 * 4];
+        Arrays.fill(expected, 0xff0f0f0f);
+        assertArrayEquals(expected, frame);
+    }
+
+    @Test
+    public void matchesDirectComputationForRectangles() {
+        int[][] regions = {
+                {5, 7, 50, 40},
+                // Partly outside of the frame, clamped to it.
+                {-10, 30, 20, 80},
+                {80, -5, 120, 20},
+        };
+        assertMatchesReference(regions);
+    }
+
+    @Test
+    public void matchesDirectComputationForCirclesAndOverlaps() {
+        int[][] regions = {
+                {10, 5, 60, 55, 35, 30, 22},
+                // Overlaps the first one, so it averages the blocks the first one left.
+                {40, 20, 90, 61, 65, 40, 18},
+                {0, 0, 30, 30, 15, 15, 0},
+        };
+        assertMatchesReference(regions);
+    }
+
+    @Test
+    public void ignoresEmptyRegions() {
+        int[] frame = randomFrame(new Random(1));
+        int[] original = frame.clone();
+
+        PixelationEngine engine = new PixelationEngine(BLOCK_SIZE);
+        engine.addRegion(10, 10, 10, 30);
+        engine.addRegion(WIDTH + 5, 0, WIDTH + 20, 10);
+        engine.apply(frame, WIDTH, HEIGHT);
+
+        assertEquals(1, engine.getRegionCount());
+        assertArrayEquals(original, frame);
+    }
+
+    @Test
+    public void reusesItsScratchBetweenFrames() {
+        PixelationEngine engine = new PixelationEngine(BLOCK_SIZE);
+        for (int i = 0; i < 3; i++) {
+            int[] frame = randomFrame(new Random(i));
+            int[] expected = frame.clone();
+            reference(expected, new int[][] {{i, i, 40 + i * 20, 50}});
+
+            engine.clear();
+            engine.addRegion(i, i, 40 + i * 20, 50);
+            engine.apply(frame, WIDTH, HEIGHT);
+            assertArrayEquals(expected, frame);
+        }
+    }
+
+    private static void assertMatchesReference(int[][] regions) {
+        int[] frame = randomFrame(new Random(42));
+        int[] expected = frame.clone();
+        reference(expected, regions);
+
+        PixelationEngine engine = new PixelationEngine(BLOCK_SIZE);
+        for (int[] region : regions) {
+            if (region.length == 4) {
+                engine.addRegion(region[0], region[1], region[2], region[3]);
+            } else {
+                engine.addRegion(region[0], region[1], region[2], region[3],
+                        region[4], region[5], region[6]);
+            }
+        }
+        engine.apply(frame, WIDTH, HEIGHT);
+
+        assertArrayEquals(expected, frame);
+    }
+
+    /** Pixelates the regions one after the other, block by block and pixel by pixel. */
+    private static void reference(int[] frame, int[][] regions) {
+        for (int[] region : regions) {
+            int left = Math.max(region[0], 0);
+            int top = Math.max(region[1], 0);
+            int right = Math.min(region[2], WIDTH);
+            int bottom = Math.min(region[3], HEIGHT);
+            int radius = region.length > 4 ? region[6] : 0;
+            for (int blockTop = top; blockTop < bottom; blockTop += BLOCK_SIZE) {
+                for (int blockLeft = left; blockLeft < right; blockLeft += BLOCK_SIZE) {
+                    int blockRight = Math.min(blockLeft + BLOCK_SIZE, right);
+                    int blockBottom = Math.min(blockTop + BLOCK_SIZE, bottom);
+                    int red = 0;
+                    int green = 0;
+                    int blue = 0;
+                    int count = 0;
+                    for (int y = blockTop; y < blockBottom; y++) {
+                        for (int x = blockLeft; x < blockRight; x++) {
+                            int pixel = frame[y * WIDTH + x];
+                            red += (pixel >> 16) & 0xff;
+                            green += (pixel >> 8) & 0xff;
+                            blue += pixel & 0xff;
+                            count++;
+                        }
+                    }
+                    int color = 0xff000000 | ((red / count) << 16) | ((green / count) << 8) | (blue / count);
+                    for (int y = blockTop; y < blockBottom; y++) {
+                        for (int x = blockLeft; x < blockRight; x++) {
+                            if (radius == 0 || insideCircle(x, y, region[4], region[5], radius)) {
+                                frame[y * WIDTH + x] = color;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean insideCircle(int x, int y, int centerX, int centerY, int radius) {
+        long dx = x - centerX;
+        long dy = y - centerY;
+        return dx * dx + dy * dy <= (long) radius * radius;
+    }
+
+    private static int[] randomFrame(Random random) {
+        int[] frame = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,69 @@
+package com.opentokreactnative.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AudioLatencyRecorderTest {
+
+    @Test
+    public void keepsCountsAndPercentilesOfTheWindow() {
+        AudioLatencyRecorder recorder = new AudioLatencyRecorder(4);
+        for (long micros = 1; micros <= 6; micros++) {
+            recorder.record(micros * 100);
+        }
+        recorder.recordDrop();
+
+        assertEquals(6, recorder.getCount());
+        assertEquals(1, recorder.getDropped());
+        assertEquals(600, recorder.getLastMicros());
+        assertEquals(600, recorder.getMaxMicros());
+        // Only the last four samples are left in the window.
+        assertArrayEquals(new long[] {300, 400, 600}, recorder.getPercentilesMicros(0, 50, 100));
+    }
+
+    @Test
+    public void resetTakesEffectRightAwayForReaders() {
+        AudioLatencyRecorder recorder = new AudioLatencyRecorder(4);
+        recorder.record(900);
+        recorder.recordDrop();
+
+        recorder.reset();
+
+        assertEquals(0, recorder.getCount());
+        assertEquals(0, recorder.getDropped());
+        assertEquals(0, recorder.getMaxMicros());
+        assertArrayEquals(new long[] {0}, recorder.getPercentilesMicros(50));
+
+        recorder.record(100);
+        assertEquals(1, recorder.getCount());
+        assertEquals(100, recorder.getMaxMicros());
+        assertArrayEquals(new long[] {100}, recorder.getPercentilesMicros(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWindowsThatAreNotPowersOfTwo() {
+        new AudioLatencyRecorder(100);
+    }
+
+    @Test
+    public void readerSeesOnlyRecordedSamplesWhileTheWriterRuns() throws InterruptedException {
+        AudioLatencyRecorder recorder = new AudioLatencyRecorder(64);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                recorder.record(1000 + i % 7);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            for (long micros : recorder.getPercentilesMicros(0, 100)) {
+                assertTrue(micros == 0 || (micros >= 1000 && micros < 1007));
+            }
+        }
+        writer.join();
+        assertEquals(20000, recorder.getCount());
+        assertEquals(1006, recorder.getMaxMicros());
+    }
+}
@@ -0,0 +1,144 @@
+package com.opentokreactnative.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.opentokreactnative.mlkit.utils.LatencyHistogram;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
+import com.opentokreactnative.utils.CaptureTierController.Tier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CaptureTierControllerTest {
+
+    private static final int FRAMES_PER_WINDOW = 20;
+    private static final long SLOW_MICROS = CaptureTierController.STEP_DOWN_LATENCY_MICROS + 10_000;
+    private static final long FAST_MICROS = CaptureTierController.STEP_UP_LATENCY_MICROS - 10_000;
+    // Neither pressure nor headroom.
+    private static final long STEADY_MICROS = (CaptureTierController.STEP_DOWN_LATENCY_MICROS
+            + CaptureTierController.STEP_UP_LATENCY_MICROS) / 2;
+
+    private final List<String> changes = new ArrayList<>();
+    private long nowMs = 1000;
+    private LatencyHistogram captureLatency;
+    private LatencyHistogram totalLatency;
+    private CaptureTierController controller;
+
+    @Before
+    public void setUp() {
+        PipelineStats stats = new PipelineStats();
+        captureLatency = stats.stage(PipelineStats.CAPTURE);
+        totalLatency = stats.stage(PipelineStats.TOTAL);
+        controller = new CaptureTierController(stats,
+                (previous, tier, reason) ->
+                        changes.add(previous.getName() + ">" + tier.getName() + ":" + reason),
+                () -> nowMs);
+        // Opens the first window, unfiltered frames add nothing to it.
+        controller.onFrame(false);
+    }
+
+    @Test
+    public void stepsDownAfterTwoWindowsUnderPressure() {
+        window(SLOW_MICROS, 0);
+        assertTrue(changes.isEmpty());
+
+        window(SLOW_MICROS, 0);
+        assertEquals(Tier.MEDIUM, controller.getTier());
+        assertEquals("high>medium:latency", changes.get(0));
+    }
+
+    @Test
+    public void windowsInBetweenResetThePressure() {
+        window(SLOW_MICROS, 0);
+        window(STEADY_MICROS, 0);
+        window(SLOW_MICROS, 0);
+
+        assertEquals(Tier.HIGH, controller.getTier());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void droppedFramesAreAlsoPressure() {
+        window(FAST_MICROS, 10);
+        window(FAST_MICROS, 10);
+
+        assertEquals("high>medium:droppedFrames", changes.get(0));
+    }
+
+    @Test
+    public void ignoresTheWindowAfterAChange() {
+        window(SLOW_MICROS, 0);
+        window(SLOW_MICROS, 0);
+        assertEquals(1, changes.size());
+
+        // The camera restarts during this window, whatever it measured doesn't count.
+        window(SLOW_MICROS, 0);
+        window(SLOW_MICROS, 0);
+        assertEquals(1, changes.size());
+
+        window(SLOW_MICROS, 0);
+        assertEquals(Tier.LOW, controller.getTier());
+    }
+
+    @Test
+    public void stepsUpAfterFiveWindowsOfHeadroom() {
+        window(SLOW_MICROS, 0);
+        window(SLOW_MICROS, 0);
+        window(FAST_MICROS, 0);
+        changes.clear();
+
+        for (int i = 0; i < CaptureTierController.STEP_UP_WINDOWS - 1; i++) {
+            window(FAST_MICROS, 0);
+        }
+        assertTrue(changes.isEmpty());
+
+        window(FAST_MICROS, 0);
+        assertEquals("medium>high:headroom", changes.get(0));
+    }
+
+    @Test
+    public void neverGoesPastTheLastTier() {
+        for (int i = 0; i < 20; i++) {
+            window(SLOW_MICROS, 0);
+        }
+
+        assertEquals(Tier.MINIMUM, controller.getTier());
+        assertEquals(Tier.values().length - 1, changes.size());
+    }
+
+    @Test
+    public void disablingGoesBackToTheTopTier() {
+        window(SLOW_MICROS, 0);
+        window(SLOW_MICROS, 0);
+        changes.clear();
+
+        controller.setEnabled(false);
+        assertEquals(Tier.HIGH, controller.getTier());
+        assertEquals("medium>high:headroom", changes.get(0));
+
+        // Frames are not counted while disabled.
+        window(SLOW_MICROS, 0);
+        window(SLOW_MICROS, 0);
+        assertEquals(1, changes.size());
+    }
+
+    /**
+     * Runs one window of filtered frames, 100 ms apart, after the given number of captured
+     * frames that the pipeline dropped.
+     */
+    private void window(long latencyMicros, int dropped) {
+        for (int i = 0; i < dropped; i++) {
+            captureLatency.record(1000);
+        }
+        for (int i = 0; i < FRAMES_PER_WINDOW; i++) {
+            nowMs += CaptureTierController.WINDOW_MS / FRAMES_PER_WINDOW;
+            captureLatency.record(1000);
+            totalLatency.record(latencyMicros);
+            controller.onFrame(true);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.opentokreactnative.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import android.app.Activity;
+
+import com.google.mlkit.common.sdkinternal.MlKitContext;
+import com.opentokreactnative.mlkit.utils.PipelineStats;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@RunWith(RobolectricTestRunner.class)
+public class CustomVideoCapturerTest {
+
+    private static final List<String> STAGES =
+            Arrays.asList(PipelineStats.CONVERT, PipelineStats.DETECT, PipelineStats.COMPOSITE);
+
+    private Activity activity;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(Activity.class).setup().get();
+        MlKitContext.initializeIfNeeded(activity);
+    }
+
+    @Test
+    public void destroyEndsPipelineStageThreads() throws InterruptedException {
+        Set<Thread> before = stageThreads();
+        CustomVideoCapturer capturer = new CustomVideoCapturer(activity);
+        Set<Thread> started = stageThreads();
+        started.removeAll(before);
+        assertEquals(STAGES.size(), started.size());
+
+        capturer.destroy();
+
+        for (Thread thread : started) {
+            thread.join(2000);
+            assertFalse(thread.getName() + " stage still running", thread.isAlive());
+        }
+    }
+
+    @Test
+    public void destroyWithStandbyEnabledButNoCameraEndsPipelineStageThreads()
+            throws InterruptedException {
+        Set<Thread> before = stageThreads();
+        CustomVideoCapturer capturer = new CustomVideoCapturer(activity);
+        capturer.setCameraStandbyEnabled(true);
+        Set<Thread> started = stageThreads();
+        started.removeAll(before);
+
+        // Nothing was started, so there is no camera to park and the filters must stop.
+        capturer.destroy();
+
+        for (Thread thread : started) {
+            thread.join(2000);
+            assertFalse(thread.getName() + " stage still running", thread.isAlive());
+        }
+    }
+
+    private static Set<Thread> stageThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> STAGES.contains(thread.getName()) && thread.isAlive())
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+}
@@ -0,0 +1,52 @@
+package com.opentokreactnative.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.react.bridge.DynamicFromObject;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.opentokreactnative.mlkit.processors.FaceDetectorProfile;
+
+import org.junit.Test;
+
+public class UtilsTest {
+
+    @Test
+    public void pixelatedFaceTakesABoolean() {
+        assertTrue(Utils.isPixelatedFaceEnabled(new DynamicFromObject(true)));
+        assertFalse(Utils.isPixelatedFaceEnabled(new DynamicFromObject(false)));
+        assertFalse(Utils.isPixelatedFaceEnabled(new DynamicFromObject(null)));
+        assertSame(FaceDetectorProfile.DEFAULT,
+                Utils.sanitizeFaceDetectorProfile(new DynamicFromObject(true)));
+    }
+
+    @Test
+    public void pixelatedFaceTakesAProfile() {
+        DynamicFromObject pixelatedFace = new DynamicFromObject(JavaOnlyMap.of(
+                "performanceMode", "fast",
+                "minFaceSize", 0.25,
+                "tracking", true));
+
+        assertTrue(Utils.isPixelatedFaceEnabled(pixelatedFace));
+        assertEquals(new FaceDetectorProfile(true, 0.25f, true),
+                Utils.sanitizeFaceDetectorProfile(pixelatedFace));
+    }
+
+    @Test
+    public void missingProfileFieldsKeepTheirDefaults() {
+        DynamicFromObject pixelatedFace = new DynamicFromObject(new JavaOnlyMap());
+
+        assertTrue(Utils.isPixelatedFaceEnabled(pixelatedFace));
+        assertEquals(FaceDetectorProfile.DEFAULT, Utils.sanitizeFaceDetectorProfile(pixelatedFace));
+    }
+
+    @Test
+    public void unknownPerformanceModeIsAccurate() {
+        DynamicFromObject pixelatedFace = new DynamicFromObject(
+                JavaOnlyMap.of("performanceMode", "fastest"));
+
+        assertFalse(Utils.sanitizeFaceDetectorProfile(pixelatedFace).isFast());
+    }
+}
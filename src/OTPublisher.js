@@ -10,6 +10,8 @@ import {
   setNativeEvents,
 } from './OT';
 import {
+  sanitizeBackgroundReplacement,
+  sanitizePixelatedFace,
   sanitizeProperties,
   sanitizePublisherEvents,
 } from './helpers/OTPublisherHelper';
@@ -70,6 +72,16 @@ class OTPublisher extends Component {
           OT.changeCameraPosition(this.state.publisherId, value);
         } else if (key === 'videoContentHint') {
           OT.changeVideoContentHint(this.state.publisherId, value);
+        } else if (key === 'pixelatedFace') {
+          OT.pixelatedFace(this.state.publisherId, sanitizePixelatedFace(value));
+        } else if (key === 'backgroundReplacement') {
+          // Background replacement is only supported in Android.
+          if (Platform.OS === 'android') {
+            OT.backgroundReplacement(
+              this.state.publisherId,
+              sanitizeBackgroundReplacement(value),
+            );
+          }
         } else {
           OT[key](this.state.publisherId, value);
         }
@@ -81,6 +93,7 @@ class OTPublisher extends Component {
     updatePublisherProperty('publishCaptions', false);
     updatePublisherProperty('backgroundBlur', false);
     updatePublisherProperty('pixelatedFace', false);
+    updatePublisherProperty('backgroundReplacement', '');
     updatePublisherProperty('cameraPosition', 'front');
     updatePublisherProperty('videoContentHint', '');
   }
@@ -159,6 +172,13 @@ class OTPublisher extends Component {
     OT.getRtcStatsReport(this.state.publisherId);
   }
 
+  getVideoFilterStats() {
+    if (Platform.OS !== 'android') {
+      return Promise.resolve({});
+    }
+    return OT.getVideoFilterStats(this.state.publisherId);
+  }
+
   setVideoTransformers(videoTransformers) {
     OT.setVideoTransformers(this.state.publisherId, videoTransformers);
   }
@@ -1,5 +1,5 @@
 import React, { Component, Children, cloneElement } from 'react';
-import { View } from 'react-native';
+import { Platform, View } from 'react-native';
 import { ViewPropTypes } from 'deprecated-react-native-prop-types';
 import PropTypes from 'prop-types';
 import { pick, isNull } from 'underscore';
@@ -103,6 +103,12 @@ export default class OTSession extends Component {
   getSessionInfo() {
     return this.state.sessionInfo;
   }
+  getAudioDeviceStats() {
+    if (Platform.OS !== 'android') {
+      return Promise.resolve({});
+    }
+    return OT.getAudioDeviceStats(this.props.sessionId);
+  }
   getCapabilities() {
     return new Promise((resolve, reject ) => {
       OT.getSessionCapabilities(this.props.sessionId, (sessionCapabilities) => {
@@ -1,3 +1,4 @@
+import { Platform } from 'react-native';
 import { sanitizeBooleanProperty, reassignEvents } from './OTHelper';
 
 const sanitizeResolution = (resolution) => {
@@ -73,6 +74,24 @@ const sanitizeVideoContentHint = (sanitizeVideoContentHint = '') => {
   }
 };
 
+const sanitizePixelatedFace = (pixelatedFace = false) => {
+  if (typeof pixelatedFace !== 'object' || pixelatedFace === null) {
+    return Boolean(pixelatedFace);
+  }
+  // Face detector profiles are only supported in Android.
+  if (Platform.OS !== 'android') {
+    return true;
+  }
+  return {
+    performanceMode: pixelatedFace.performanceMode === 'fast' ? 'fast' : 'accurate',
+    minFaceSize: typeof pixelatedFace.minFaceSize === 'number' ? pixelatedFace.minFaceSize : 0.1,
+    tracking: Boolean(pixelatedFace.tracking),
+  };
+};
+
+const sanitizeBackgroundReplacement = (backgroundReplacement) =>
+  (typeof backgroundReplacement === 'string' ? backgroundReplacement : '');
+
 const sanitizeProperties = (properties) => {
   if (typeof properties !== 'object') {
     return {
@@ -83,6 +102,8 @@ const sanitizeProperties = (properties) => {
       publishCaptions: false,
       backgroundBlur: false,
       pixelatedFace: false,
+      backgroundReplacement: '',
+      cameraStandby: false,
       name: '',
       cameraPosition: 'front',
       publisherAudioFallback: false,
@@ -111,7 +132,9 @@ const sanitizeProperties = (properties) => {
     publishVideo: sanitizeBooleanProperty(properties.publishVideo),
     publishCaptions: sanitizeBooleanProperty(properties.publishCaptions),
     backgroundBlur: sanitizeBooleanProperty(properties.backgroundBlur, false),
-    pixelatedFace: sanitizeBooleanProperty(properties.pixelatedFace, false),
+    pixelatedFace: sanitizePixelatedFace(properties.pixelatedFace),
+    backgroundReplacement: sanitizeBackgroundReplacement(properties.backgroundReplacement),
+    cameraStandby: sanitizeBooleanProperty(properties.cameraStandby, false),
     name: properties.name ? properties.name : '',
     cameraPosition: sanitizeCameraPosition(properties.cameraPosition),
     publisherAudioFallback: sanitizePublisherAudioFallback(
@@ -167,12 +190,15 @@ const sanitizePublisherEvents = (publisherId, events) => {
       videoEnabled: 'onVideoEnabled',
       videoDisableWarning: 'onVideoDisableWarning',
       videoDisableWarningLifted: 'onVideoDisableWarningLifted',
+      captureTierChanged: 'onCaptureTierChanged',
     },
   };
   return reassignEvents('publisher', customEvents, events, publisherId);
 };
 
 export {
+  sanitizeBackgroundReplacement,
+  sanitizePixelatedFace,
   sanitizeProperties,
   sanitizePublisherEvents,
 };
@@ -55,6 +55,7 @@ const sanitizeSessionEvents = (sessionId, events) => {
       archiveStopped: 'onArchiveStopped',
       streamPropertyChanged: 'onStreamPropertyChanged',
       muteForced: 'onMuteForced',
+      audioDeviceStats: 'onAudioDeviceStats',
     }
   };
   return reassignEvents('session', customEvents, events, sessionId);
@@ -104,6 +105,7 @@ const sanitizeSessionOptions = (options) => {
       proxyUrl: '',
       useTextureViews: false,
       enableStereoOutput: false,
+      lowLatencyAudio: false,
       androidOnTop: '', // 'publisher' || 'subscriber'
       androidZOrder: '', // 'mediaOverlay' || 'onTop'
     };
@@ -138,6 +140,7 @@ const sanitizeSessionOptions = (options) => {
       iceConfig: 'object',
       proxyUrl: 'string',
       enableStereoOutput: 'boolean',
+      lowLatencyAudio: 'boolean',
     },
   };
 